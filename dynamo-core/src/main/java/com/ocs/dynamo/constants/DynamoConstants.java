@@ -94,6 +94,12 @@ public final class DynamoConstants {
      */
     public static final String SELECTED_TAB = "selectedTab";
 
+    /**
+     * Name of the system property that is used to determine if tables can also be exported as
+     * (compressed) CSV files
+     */
+    public static final String SP_ALLOW_CSV_EXPORT = "ocs.allow.csv.export";
+
     /**
      * Name of the system property that is used to determine if table export is allowed
      */
@@ -135,11 +141,65 @@ public final class DynamoConstants {
      */
     public static final String SP_DEFAULT_LISTSELECT_ROWS = "ocs.default.listselect.rows";
 
+    /**
+     * Name of the system property that is used to determine the default fetch size when streaming
+     * query results
+     */
+    public static final String SP_DEFAULT_FETCH_SIZE = "ocs.default.fetch.size";
+
+    /**
+     * Name of the system property that is used to determine the maximum number of values in a
+     * single "in" clause
+     */
+    public static final String SP_MAX_IN_SIZE = "ocs.max.in.size";
+
+    /**
+     * Name of the system property that is used to determine the maximum number of queries that are
+     * kept in the query cache
+     */
+    public static final String SP_QUERY_CACHE_SIZE = "ocs.query.cache.size";
+
     /**
      * Name of the system property that is used to determine the default time format
      */
     public static final String SP_DEFAULT_TIME_FORMAT = "ocs.default.time.format";
 
+    /**
+     * Name of the system property that is used to determine whether to construct all entity models
+     * at startup
+     */
+    public static final String SP_ENTITY_MODEL_WARM_UP = "ocs.entity.model.warmup";
+
+    /**
+     * Name of the system property that is used to determine the file in which a snapshot of the
+     * constructed entity models is stored between restarts
+     */
+    public static final String SP_ENTITY_MODEL_SNAPSHOT = "ocs.entity.model.snapshot";
+
+    /**
+     * Name of the system property that is used to determine whether table exports are run as
+     * background jobs
+     */
+    public static final String SP_EXPORT_ASYNC = "ocs.export.async";
+
+    /**
+     * Name of the system property that is used to determine the number of rows that are kept in
+     * memory during a streaming Excel export
+     */
+    public static final String SP_EXPORT_ROW_WINDOW_SIZE = "ocs.export.row.window.size";
+
+    /**
+     * Name of the system property that is used to determine the number of rows above which an
+     * Excel export is streamed to disk
+     */
+    public static final String SP_EXPORT_STREAMING_THRESHOLD = "ocs.export.streaming.threshold";
+
+    /**
+     * Name of the system property that is used to determine the maximum number of table exports
+     * that run concurrently on a single node
+     */
+    public static final String SP_EXPORT_THREADS = "ocs.export.threads";
+
     /**
      * Name of the system property that indicates the maximum number of items to display in an
      * entity lookup field in multiple select mode
@@ -151,6 +211,12 @@ public final class DynamoConstants {
      */
     public static final String SP_THOUSAND_GROUPING = "ocs.edit.thousands.grouping";
 
+    /**
+     * Name of the system property that is used to determine the number of rows that are kept in
+     * memory when streaming an Excel file
+     */
+    public static final String SP_XLS_ROW_CACHE_SIZE = "ocs.xls.row.cache.size";
+
     /**
      * The name of the variable that is used to store the user
      */
@@ -0,0 +1,89 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.dao;
+
+/**
+ * Paging information for keyset (seek) pagination. Instead of skipping a number of rows, the next
+ * page is retrieved by selecting the rows that come after the last row of the previous page. This
+ * keeps the cost of retrieving a page constant regardless of how deep the page is.
+ * 
+ * The sort orders must define a total ordering (e.g. by including the primary key as the last sort
+ * order) and the sort properties may not contain <code>null</code> values
+ * 
+ * @author bas.rutten
+ *
+ */
+public class KeysetPageable implements Pageable {
+
+    private final int pageSize;
+
+    private final SortOrders sortOrders;
+
+    private final Object[] lastValues;
+
+    /**
+     * Constructor
+     * 
+     * @param pageSize
+     *            the page size
+     * @param sortOrders
+     *            the sort orders
+     * @param lastValues
+     *            the values of the sort properties of the last row of the previous page, in the
+     *            same order as the sort orders. Leave empty to retrieve the first page
+     */
+    public KeysetPageable(int pageSize, SortOrders sortOrders, Object... lastValues) {
+        this.pageSize = pageSize;
+        this.sortOrders = sortOrders;
+        this.lastValues = lastValues;
+    }
+
+    /**
+     * The page number is not known when using keyset pagination, so this always returns 0
+     */
+    @Override
+    public int getPageNumber() {
+        return 0;
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * The rows are skipped by means of a predicate, so the offset is always 0
+     */
+    @Override
+    public int getOffset() {
+        return 0;
+    }
+
+    @Override
+    public SortOrders getSortOrders() {
+        return sortOrders;
+    }
+
+    public Object[] getLastValues() {
+        return lastValues;
+    }
+
+    /**
+     * @return whether this is a request for the first page
+     */
+    public boolean isFirstPage() {
+        return lastValues == null || lastValues.length == 0;
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.dao;
+
+/**
+ * Paging information for a window of rows that does not have to be aligned with a page boundary
+ * 
+ * @author bas.rutten
+ *
+ */
+public class OffsetPageable implements Pageable {
+
+    private final int offset;
+
+    private final int pageSize;
+
+    private final SortOrders sortOrders;
+
+    /**
+     * Constructor
+     * 
+     * @param offset
+     *            the index of the first row to retrieve
+     * @param pageSize
+     *            the number of rows to retrieve
+     * @param sortOrders
+     *            the sort orders
+     */
+    public OffsetPageable(int offset, int pageSize, SortOrders sortOrders) {
+        this.offset = offset;
+        this.pageSize = pageSize;
+        this.sortOrders = sortOrders;
+    }
+
+    /**
+     * The number of the page that contains the first row
+     */
+    @Override
+    public int getPageNumber() {
+        return pageSize == 0 ? 0 : offset / pageSize;
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public SortOrders getSortOrders() {
+        return sortOrders;
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.domain.model;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base class for generated entity model descriptors
+ * 
+ * @author bas.rutten
+ */
+public abstract class AbstractEntityModelDescriptor implements EntityModelDescriptor {
+
+    private final Map<String, Set<String>> annotations = new HashMap<>();
+
+    /**
+     * Registers a property along with the fully qualified names of the annotations that are
+     * present on it
+     * 
+     * @param property
+     *            the name of the property
+     * @param annotationNames
+     *            the names of the annotations
+     */
+    protected final void add(String property, String... annotationNames) {
+        Set<String> names = annotations.get(property);
+        if (names == null) {
+            names = new HashSet<>();
+            annotations.put(property, names);
+        }
+        names.addAll(Arrays.asList(annotationNames));
+    }
+
+    @Override
+    public boolean isDescribed(String property) {
+        return annotations.containsKey(property);
+    }
+
+    @Override
+    public boolean hasAnnotation(String property, Class<? extends Annotation> annotationClass) {
+        Set<String> names = annotations.get(property);
+        return names != null && names.contains(annotationClass.getName());
+    }
+}
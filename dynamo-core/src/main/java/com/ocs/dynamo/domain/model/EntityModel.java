@@ -32,6 +32,10 @@ public interface EntityModel<T> {
 
     String ATTRIBUTE_ORDER = "attributeOrder";
 
+    String CACHE_EXPIRY = "cacheExpiry";
+
+    String CACHE_SIZE = "cacheSize";
+
     String COMPLEX_EDITABLE = "complexEditable";
 
     String CURRENCY = "currency";
@@ -214,6 +218,21 @@ public interface EntityModel<T> {
      */
     List<AttributeModel> getAttributeModelsForType(AttributeType attributeType, Class<?> type);
 
+    /**
+     * The number of seconds after which an entity that was cached by the service expires
+     * 
+     * @return the expiry in seconds, or 0 if cached entities never expire
+     */
+    int getCacheExpiry();
+
+    /**
+     * The maximum number of read results that are cached by the service. Cached results are
+     * returned as detached copies
+     * 
+     * @return the maximum number of cached results, or 0 if caching is disabled
+     */
+    int getCacheSize();
+
     /**
      * Textual description of the entity
      * 
@@ -0,0 +1,47 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.domain.model;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Describes, for every property of an entity, which annotations are present on it. Descriptors
+ * are generated at compile time by the EntityModelProcessor so that the entity model factory does
+ * not have to look up every annotation type for every property using reflection
+ * 
+ * @author bas.rutten
+ */
+public interface EntityModelDescriptor {
+
+    /**
+     * Indicates whether the descriptor contains information about a property
+     * 
+     * @param property
+     *            the name of the property
+     * @return
+     */
+    boolean isDescribed(String property);
+
+    /**
+     * Indicates whether a certain annotation is present on a property (either on the field or on
+     * the getter method)
+     * 
+     * @param property
+     *            the name of the property
+     * @param annotationClass
+     *            the class of the annotation
+     * @return
+     */
+    boolean hasAnnotation(String property, Class<? extends Annotation> annotationClass);
+}
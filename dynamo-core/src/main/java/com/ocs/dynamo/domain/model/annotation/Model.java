@@ -41,4 +41,10 @@ public @interface Model {
 
     // the default sort order for this entity
     String sortOrder() default "";
+
+    // the maximum number of entities that are cached by the service (0 disables caching)
+    int cacheSize() default 0;
+
+    // the number of seconds after which a cached entity expires (0 means no expiry)
+    int cacheExpiry() default 0;
 }
@@ -0,0 +1,182 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.domain.model.apt;
+
+import java.beans.Introspector;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+import com.ocs.dynamo.domain.model.AbstractEntityModelDescriptor;
+
+/**
+ * Annotation processor that generates an entity model descriptor for every entity and embeddable
+ * class. The descriptor records which annotations are present on each property, so that the
+ * entity model factory only has to use reflection for annotations that are actually there. The
+ * generated class is placed in the package of the entity and is named after the entity, with
+ * "ModelDescriptor" appended to it
+ * 
+ * @author bas.rutten
+ */
+@SupportedAnnotationTypes({ "javax.persistence.Entity", "javax.persistence.Embeddable" })
+public class EntityModelProcessor extends AbstractProcessor {
+
+    public static final String SUFFIX = "ModelDescriptor";
+
+    private static final String GET = "get";
+
+    private static final String IS = "is";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS
+                        && ((TypeElement) element).getNestingKind() == NestingKind.TOP_LEVEL) {
+                    generate((TypeElement) element);
+                }
+            }
+        }
+        // do not claim the annotations, the QueryDSL processor needs them as well
+        return false;
+    }
+
+    /**
+     * Collects the annotations on the properties of a class and all of its superclasses
+     * 
+     * @param type
+     *            the class
+     * @param properties
+     *            the map to which to add the properties
+     */
+    private void collect(TypeElement type, Map<String, Set<String>> properties) {
+        for (Element member : type.getEnclosedElements()) {
+            String property = null;
+            if (member.getKind() == ElementKind.FIELD
+                    && !member.getModifiers().contains(Modifier.STATIC)) {
+                property = member.getSimpleName().toString();
+            } else if (member.getKind() == ElementKind.METHOD
+                    && ((ExecutableElement) member).getParameters().isEmpty()
+                    && !member.getModifiers().contains(Modifier.STATIC)) {
+                property = getPropertyName(member.getSimpleName().toString());
+            }
+
+            if (property != null) {
+                Set<String> names = properties.get(property);
+                if (names == null) {
+                    names = new TreeSet<>();
+                    properties.put(property, names);
+                }
+                for (AnnotationMirror mirror : member.getAnnotationMirrors()) {
+                    names.add(((TypeElement) mirror.getAnnotationType().asElement())
+                            .getQualifiedName().toString());
+                }
+            }
+        }
+
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() == TypeKind.DECLARED) {
+            TypeElement superType = (TypeElement) ((DeclaredType) superclass).asElement();
+            if (!Object.class.getName().equals(superType.getQualifiedName().toString())) {
+                collect(superType, properties);
+            }
+        }
+    }
+
+    /**
+     * Generates the descriptor for an entity class
+     * 
+     * @param type
+     *            the entity class
+     */
+    private void generate(TypeElement type) {
+        Map<String, Set<String>> properties = new TreeMap<>();
+        collect(type, properties);
+
+        PackageElement pack = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pack.isUnnamed() ? null : pack.getQualifiedName().toString();
+        String simpleName = type.getSimpleName() + SUFFIX;
+        String name = packageName == null ? simpleName : packageName + "." + simpleName;
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(name, type);
+            try (PrintWriter writer = new PrintWriter(file.openWriter())) {
+                if (packageName != null) {
+                    writer.println("package " + packageName + ";");
+                    writer.println();
+                }
+                writer.println("@javax.annotation.Generated(\"" + getClass().getName() + "\")");
+                writer.println("public class " + simpleName + " extends "
+                        + AbstractEntityModelDescriptor.class.getName() + " {");
+                writer.println();
+                writer.println("    public " + simpleName + "() {");
+                for (Entry<String, Set<String>> entry : properties.entrySet()) {
+                    StringBuilder line = new StringBuilder("        add(\"" + entry.getKey() + "\"");
+                    for (String annotation : entry.getValue()) {
+                        line.append(", \"").append(annotation).append("\"");
+                    }
+                    writer.println(line.append(");"));
+                }
+                writer.println("    }");
+                writer.println("}");
+            }
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Kind.ERROR,
+                    "Could not generate " + name + ": " + ex.getMessage(), type);
+        }
+    }
+
+    /**
+     * Derives the name of a property from the name of a getter method
+     * 
+     * @param methodName
+     *            the name of the method
+     * @return the name of the property, or <code>null</code> if the method is not a getter
+     */
+    private static String getPropertyName(String methodName) {
+        if (methodName.startsWith(GET) && methodName.length() > GET.length()) {
+            return Introspector.decapitalize(methodName.substring(GET.length()));
+        } else if (methodName.startsWith(IS) && methodName.length() > IS.length()) {
+            return Introspector.decapitalize(methodName.substring(IS.length()));
+        }
+        return null;
+    }
+}
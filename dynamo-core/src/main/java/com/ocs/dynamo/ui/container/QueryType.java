@@ -20,5 +20,5 @@ package com.ocs.dynamo.ui.container;
  */
 public enum QueryType {
 
-    NONE, PAGING, ID_BASED;
+    NONE, PAGING, ID_BASED, KEYSET;
 }
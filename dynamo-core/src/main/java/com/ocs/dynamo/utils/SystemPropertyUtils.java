@@ -25,13 +25,36 @@ public final class SystemPropertyUtils {
 
     private static final int DEFAULT_DECIMAL_PRECISION = 2;
 
+    private static final int DEFAULT_EXPORT_ROW_WINDOW_SIZE = 100;
+
+    private static final int DEFAULT_EXPORT_STREAMING_THRESHOLD = 10000;
+
+    private static final int DEFAULT_EXPORT_THREADS = 2;
+
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+
     private static final int DEFAULT_LISTSELECT_ROWS = 3;
 
     private static final int DEFAULT_LOOKUP_FIELD_MAX_ITEMS = 3;
 
+    private static final int DEFAULT_MAX_IN_SIZE = 512;
+
+    private static final int DEFAULT_QUERY_CACHE_SIZE = 500;
+
+    private static final int DEFAULT_XLS_ROW_CACHE_SIZE = 100;
+
     private SystemPropertyUtils() {
     }
 
+    /**
+     * Whether to offer (compressed) CSV exports alongside the Excel export of tables
+     * 
+     * @return
+     */
+    public static boolean allowCsvExport() {
+        return Boolean.getBoolean(DynamoConstants.SP_ALLOW_CSV_EXPORT);
+    }
+
     /**
      * Whether to allow data export from tables
      * 
@@ -78,6 +101,15 @@ public final class SystemPropertyUtils {
         return Integer.getInteger(DynamoConstants.SP_DECIMAL_PRECISION, DEFAULT_DECIMAL_PRECISION);
     }
 
+    /**
+     * The default number of rows to retrieve in one go when streaming query results
+     * 
+     * @return
+     */
+    public static int getDefaultFetchSize() {
+        return Integer.getInteger(DynamoConstants.SP_DEFAULT_FETCH_SIZE, DEFAULT_FETCH_SIZE);
+    }
+
     /**
      * The default number of rows in a list select component
      * 
@@ -105,6 +137,46 @@ public final class SystemPropertyUtils {
         return System.getProperty(DynamoConstants.SP_DEFAULT_TIME_FORMAT, "HH:mm:ss");
     }
 
+    /**
+     * The file in which a snapshot of the constructed entity models is stored, or
+     * <code>null</code> if no snapshot is to be used
+     * 
+     * @return
+     */
+    public static String getEntityModelSnapshot() {
+        return System.getProperty(DynamoConstants.SP_ENTITY_MODEL_SNAPSHOT);
+    }
+
+    /**
+     * The number of rows that are kept in memory during a streaming Excel export
+     * 
+     * @return
+     */
+    public static int getExportRowWindowSize() {
+        return Integer.getInteger(DynamoConstants.SP_EXPORT_ROW_WINDOW_SIZE,
+                DEFAULT_EXPORT_ROW_WINDOW_SIZE);
+    }
+
+    /**
+     * The number of rows above which an Excel export is streamed to disk rather than built in
+     * memory
+     * 
+     * @return
+     */
+    public static int getExportStreamingThreshold() {
+        return Integer.getInteger(DynamoConstants.SP_EXPORT_STREAMING_THRESHOLD,
+                DEFAULT_EXPORT_STREAMING_THRESHOLD);
+    }
+
+    /**
+     * The maximum number of table exports that run concurrently on a single node
+     * 
+     * @return
+     */
+    public static int getExportThreads() {
+        return Integer.getInteger(DynamoConstants.SP_EXPORT_THREADS, DEFAULT_EXPORT_THREADS);
+    }
+
     /**
      * The default maximum number of items to display in an entity lookup field when it is in
      * multiple select mode
@@ -116,6 +188,44 @@ public final class SystemPropertyUtils {
                 DEFAULT_LOOKUP_FIELD_MAX_ITEMS);
     }
 
+    /**
+     * The maximum number of values in a single "in" clause. Larger sets of values are split into
+     * several queries
+     * 
+     * @return
+     */
+    public static int getMaxInSize() {
+        return Integer.getInteger(DynamoConstants.SP_MAX_IN_SIZE, DEFAULT_MAX_IN_SIZE);
+    }
+
+    /**
+     * The maximum number of queries that are kept in the query cache
+     * 
+     * @return
+     */
+    public static int getQueryCacheSize() {
+        return Integer.getInteger(DynamoConstants.SP_QUERY_CACHE_SIZE, DEFAULT_QUERY_CACHE_SIZE);
+    }
+
+    /**
+     * The number of rows that are kept in memory when streaming an Excel file
+     * 
+     * @return
+     */
+    public static int getXlsRowCacheSize() {
+        return Integer.getInteger(DynamoConstants.SP_XLS_ROW_CACHE_SIZE,
+                DEFAULT_XLS_ROW_CACHE_SIZE);
+    }
+
+    /**
+     * Whether to run table exports as background jobs
+     * 
+     * @return
+     */
+    public static boolean useAsyncExport() {
+        return Boolean.getBoolean(DynamoConstants.SP_EXPORT_ASYNC);
+    }
+
     /**
      * Whether to include thousands groupings in edit mode
      * 
@@ -125,4 +235,13 @@ public final class SystemPropertyUtils {
         return Boolean.getBoolean(DynamoConstants.SP_THOUSAND_GROUPING);
     }
 
+    /**
+     * Whether to construct the entity models of all entities at startup
+     * 
+     * @return
+     */
+    public static boolean warmUpEntityModels() {
+        return Boolean.getBoolean(DynamoConstants.SP_ENTITY_MODEL_WARM_UP);
+    }
+
 }
@@ -14,7 +14,10 @@
 package com.ocs.dynamo.dao;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.ocs.dynamo.dao.query.CloseableIterator;
 import com.ocs.dynamo.dao.query.FetchJoinInformation;
 import com.ocs.dynamo.domain.AbstractEntity;
 import com.ocs.dynamo.filter.Filter;
@@ -67,6 +70,20 @@ public interface BaseDao<ID, T extends AbstractEntity<ID>> {
      */
     long count(Predicate predicate);
 
+    /**
+     * Returns the number of entities that match the provided filter, but stops counting once the
+     * provided maximum has been exceeded. This is a lot cheaper than a full count for filters that
+     * match a huge number of rows
+     * 
+     * @param filter
+     *            the filter
+     * @param maxCount
+     *            the maximum number of entities to count
+     * @return the number of matching entities, or <code>maxCount + 1</code> if there are more than
+     *         <code>maxCount</code> matching entities
+     */
+    long countCapped(Filter filter, int maxCount);
+
     /**
      * Deletes all entities in the provided list
      * 
@@ -83,6 +100,17 @@ public interface BaseDao<ID, T extends AbstractEntity<ID>> {
      */
     void delete(T entity);
 
+    /**
+     * Deletes all entities that match the provided filter using a single bulk DELETE statement.
+     * Note that cascades and entity listeners are not applied. The persistence context is cleared
+     * and the entity class is evicted from the second-level cache afterwards
+     * 
+     * @param filter
+     *            the filter
+     * @return the number of deleted rows
+     */
+    int deleteByFilter(Filter filter);
+
     /**
      * Fetches entities that match the provided filter
      * 
@@ -95,7 +123,8 @@ public interface BaseDao<ID, T extends AbstractEntity<ID>> {
     List<T> fetch(Filter filter, FetchJoinInformation... joins);
 
     /**
-     * Fetches entities that match the provided filter
+     * Fetches entities that match the provided filter. When a {@link KeysetPageable} is provided,
+     * keyset pagination is used instead of an offset
      * 
      * @param filter
      *            the filter
@@ -132,7 +161,8 @@ public interface BaseDao<ID, T extends AbstractEntity<ID>> {
     T fetchById(ID id, FetchJoinInformation... joins);
 
     /**
-     * Fetches the entities identified by the provided IDs
+     * Fetches the entities identified by the provided IDs. Large lists of IDs are split into
+     * several queries; in that case the entities are returned in the order of the provided IDs
      * 
      * @param ids
      *            the IDs of the entities to fetch
@@ -254,6 +284,19 @@ public interface BaseDao<ID, T extends AbstractEntity<ID>> {
      */
     List<ID> findIds(Filter filter, SortOrder... orders);
 
+    /**
+     * Returns the IDs of the entities that match the provided filter as an array of primitive
+     * values. This takes a lot less memory than {@link #findIds(Filter, SortOrder...)} for large
+     * result sets. Only use this for entities that have an Integer or Long primary key
+     * 
+     * @param filter
+     *            the filter
+     * @param orders
+     *            the desired sorting
+     * @return
+     */
+    long[] findNumericIds(Filter filter, SortOrder... orders);
+
     /**
      * Flushes and clears the entity manager (useful after an explicit update or delete)
      */
@@ -275,6 +318,29 @@ public interface BaseDao<ID, T extends AbstractEntity<ID>> {
      */
     List<T> save(List<T> list);
 
+    /**
+     * Saves the provided list of entities in batches. The entity manager is flushed and cleared
+     * after every batch, so the persistence context does not grow without bound. New entities are
+     * persisted directly, existing entities are merged.
+     * <p>
+     * The batches are only sent to the database as JDBC batches when the persistence unit sets
+     * "hibernate.jdbc.batch_size" (e.g. to the batch size that is passed to this method) and
+     * "hibernate.order_inserts" and "hibernate.order_updates" to <code>true</code>. Without these
+     * properties every entity is still inserted or updated with a statement of its own
+     * 
+     * @param list
+     *            the list of entities
+     * @param batchSize
+     *            the number of entities after which to flush and clear the entity manager. A
+     *            value of zero or less means that the entity manager is only flushed and cleared
+     *            after the last entity
+     * @param counter
+     *            (optional) counter that is increased by the number of saved entities after every
+     *            batch, e.g. for displaying progress
+     * @return
+     */
+    List<T> save(List<T> list, int batchSize, AtomicInteger counter);
+
     /**
      * Saves the provided entity
      * 
@@ -284,4 +350,75 @@ public interface BaseDao<ID, T extends AbstractEntity<ID>> {
      */
     T save(T entity);
 
+    /**
+     * Streams the entities that match the provided filter using a forward-only database cursor.
+     * The entities loaded by the cursor are evicted periodically so that memory usage remains
+     * bounded; entities that were already managed by the caller are not affected. Must be called
+     * inside a transaction that stays open while iterating, and the returned iterator must be
+     * closed after use
+     * 
+     * @param filter
+     *            the filter
+     * @param sortOrders
+     *            the sort orders
+     * @param joins
+     *            the desired relations to fetch (relations to collections are not fetched)
+     * @return
+     */
+    CloseableIterator<T> stream(Filter filter, SortOrders sortOrders, FetchJoinInformation... joins);
+
+    /**
+     * Streams the entities that match the provided filter using a forward-only database cursor.
+     * The entities loaded by the cursor are evicted after every "fetchSize" entities
+     * 
+     * @param filter
+     *            the filter
+     * @param sortOrders
+     *            the sort orders
+     * @param fetchSize
+     *            the number of rows to retrieve from the database in one go
+     * @param joins
+     *            the desired relations to fetch (relations to collections are not fetched)
+     * @return
+     */
+    CloseableIterator<T> stream(Filter filter, SortOrders sortOrders, int fetchSize,
+            FetchJoinInformation... joins);
+
+    /**
+     * Streams the entities that match the provided filter using a forward-only database cursor.
+     * When "clear" is set, the entire persistence context is cleared after every "fetchSize"
+     * entities, so the entities that are fetched along with the results are removed as well. This
+     * detaches every entity that is managed by the entity manager, so it must only be used inside
+     * a transaction that has an entity manager of its own (e.g. one that is started with
+     * PROPAGATION_REQUIRES_NEW), and never on the entity manager of the current request
+     * 
+     * @param filter
+     *            the filter
+     * @param sortOrders
+     *            the sort orders
+     * @param fetchSize
+     *            the number of rows to retrieve from the database in one go
+     * @param clear
+     *            whether to clear the persistence context rather than evict the loaded entities
+     * @param joins
+     *            the desired relations to fetch. Collection relations are never fetched, since a
+     *            cursor would return an entity once for every element of the collection
+     * @return
+     */
+    CloseableIterator<T> stream(Filter filter, SortOrders sortOrders, int fetchSize,
+            boolean clear, FetchJoinInformation... joins);
+
+    /**
+     * Updates all entities that match the provided filter using a single bulk UPDATE statement.
+     * The persistence context is cleared and the entity class is evicted from the second-level
+     * cache afterwards
+     * 
+     * @param filter
+     *            the filter
+     * @param values
+     *            the new values, keyed by the name of the property to update
+     * @return the number of updated rows
+     */
+    int updateByFilter(Filter filter, Map<String, Object> values);
+
 }
@@ -14,16 +14,27 @@
 package com.ocs.dynamo.dao.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
 import javax.persistence.PersistenceContext;
-import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
 
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+
+import com.google.common.collect.Lists;
 import com.mysema.query.jpa.impl.JPAQuery;
 import com.mysema.query.types.Expression;
 import com.mysema.query.types.Order;
@@ -32,14 +43,18 @@ import com.mysema.query.types.Predicate;
 import com.mysema.query.types.path.EntityPathBase;
 import com.mysema.query.types.path.PathBuilder;
 import com.ocs.dynamo.dao.BaseDao;
+import com.ocs.dynamo.dao.KeysetPageable;
 import com.ocs.dynamo.dao.Pageable;
 import com.ocs.dynamo.dao.SortOrder;
 import com.ocs.dynamo.dao.SortOrders;
+import com.ocs.dynamo.dao.query.CloseableIterator;
 import com.ocs.dynamo.dao.query.FetchJoinInformation;
 import com.ocs.dynamo.dao.query.JpaQueryBuilder;
+import com.ocs.dynamo.dao.query.ScrollableResultsIterator;
 import com.ocs.dynamo.domain.AbstractEntity;
 import com.ocs.dynamo.exception.OCSRuntimeException;
 import com.ocs.dynamo.filter.Filter;
+import com.ocs.dynamo.utils.SystemPropertyUtils;
 
 /**
  * Base class for all DAO implementations
@@ -52,6 +67,11 @@ import com.ocs.dynamo.filter.Filter;
  */
 public abstract class BaseDaoImpl<ID, T extends AbstractEntity<ID>> implements BaseDao<ID, T> {
 
+    /**
+     * The initial capacity of the array that holds the numeric IDs
+     */
+    private static final int INITIAL_ID_CAPACITY = 256;
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -80,9 +100,8 @@ public abstract class BaseDaoImpl<ID, T extends AbstractEntity<ID>> implements B
 
     @Override
     public long count(Filter filter, boolean distinct) {
-        CriteriaQuery<Long> cq = JpaQueryBuilder.createCountQuery(entityManager, getEntityClass(),
-                filter, distinct);
-        TypedQuery<Long> query = entityManager.createQuery(cq);
+        TypedQuery<Long> query = JpaQueryBuilder.prepareCountQuery(entityManager,
+                getEntityClass(), filter, distinct);
         return query.getSingleResult();
     }
 
@@ -95,6 +114,15 @@ public abstract class BaseDaoImpl<ID, T extends AbstractEntity<ID>> implements B
         return query.count();
     }
 
+    @Override
+    public long countCapped(Filter filter, int maxCount) {
+        // retrieve at most one ID more than the maximum, so the database can stop early
+        TypedQuery<Object> query = JpaQueryBuilder.prepareIdQuery(entityManager,
+                getEntityClass(), filter);
+        query.setMaxResults(maxCount + 1);
+        return query.getResultList().size();
+    }
+
     /**
      * Creates a default query that simply retrieves instances of the domain class
      * 
@@ -119,6 +147,25 @@ public abstract class BaseDaoImpl<ID, T extends AbstractEntity<ID>> implements B
         entityManager.remove(t);
     }
 
+    @Override
+    public int deleteByFilter(Filter filter) {
+        entityManager.flush();
+        int result = entityManager.createQuery(
+                JpaQueryBuilder.createDeleteQuery(entityManager, getEntityClass(), filter))
+                .executeUpdate();
+        evictAll();
+        return result;
+    }
+
+    /**
+     * Removes all entities of the managed class from the persistence context and the second-level
+     * cache. This is needed after a bulk update or delete, which bypasses both
+     */
+    private void evictAll() {
+        entityManager.clear();
+        entityManager.getEntityManagerFactory().getCache().evict(getEntityClass());
+    }
+
     @Override
     public List<T> fetch(Filter filter, FetchJoinInformation... joins) {
         return fetch(filter, null, null, joins);
@@ -132,11 +179,11 @@ public abstract class BaseDaoImpl<ID, T extends AbstractEntity<ID>> implements B
     private List<T> fetch(Filter filter, Pageable pageable, SortOrders sortOrders,
             FetchJoinInformation... joins) {
         // Create select and where clauses
-        CriteriaQuery<T> cq = JpaQueryBuilder.createSelectQuery(filter, entityManager,
-                getEntityClass(), (joins == null || joins.length == 0) ? getFetchJoins() : joins,
-                sortOrders == null ? null : sortOrders.toArray());
-
-        TypedQuery<T> query = entityManager.createQuery(cq);
+        Object[] lastValues = pageable instanceof KeysetPageable ? ((KeysetPageable) pageable)
+                .getLastValues() : null;
+        TypedQuery<T> query = JpaQueryBuilder.prepareSelectQuery(entityManager, getEntityClass(),
+                filter, (joins == null || joins.length == 0) ? getFetchJoins() : joins,
+                sortOrders == null ? null : sortOrders.toArray(), lastValues);
 
         // Limit results
         if (pageable != null) {
@@ -163,9 +210,48 @@ public abstract class BaseDaoImpl<ID, T extends AbstractEntity<ID>> implements B
 
     @Override
     public List<T> fetchByIds(List<ID> ids, SortOrders sortOrders, FetchJoinInformation... joins) {
-        CriteriaQuery<T> cq = JpaQueryBuilder.createFetchQuery(entityManager, getEntityClass(),
-                ids, sortOrders, (joins != null && joins.length > 0) ? joins : getFetchJoins());
-        TypedQuery<T> query = entityManager.createQuery(cq);
+        FetchJoinInformation[] fetchJoins = (joins != null && joins.length > 0) ? joins
+                : getFetchJoins();
+        int maxInSize = SystemPropertyUtils.getMaxInSize();
+        if (ids.size() <= maxInSize) {
+            return fetchChunk(ids, sortOrders, fetchJoins);
+        }
+
+        // split the IDs into several "in" clauses
+        List<T> temp = new ArrayList<>();
+        for (List<ID> chunk : Lists.partition(ids, maxInSize)) {
+            temp.addAll(fetchChunk(chunk, sortOrders, fetchJoins));
+        }
+
+        // return the results in the order of the provided IDs
+        Map<ID, T> byId = new HashMap<>();
+        for (T t : temp) {
+            byId.put(t.getId(), t);
+        }
+        List<T> result = new ArrayList<>();
+        for (ID id : ids) {
+            T t = byId.remove(id);
+            if (t != null) {
+                result.add(t);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fetches the entities for a single chunk of IDs
+     * 
+     * @param ids
+     *            the IDs
+     * @param sortOrders
+     *            the sort orders
+     * @param joins
+     *            the fetch joins
+     * @return
+     */
+    private List<T> fetchChunk(List<ID> ids, SortOrders sortOrders, FetchJoinInformation[] joins) {
+        TypedQuery<T> query = JpaQueryBuilder.prepareFetchQuery(entityManager, getEntityClass(),
+                ids, sortOrders, joins);
         return query.getResultList();
     }
 
@@ -250,21 +336,42 @@ public abstract class BaseDaoImpl<ID, T extends AbstractEntity<ID>> implements B
     @Override
     @SuppressWarnings("unchecked")
     public List<ID> findIds(Filter filter, SortOrder... sortOrders) {
-        CriteriaQuery<Tuple> cq = JpaQueryBuilder.createIdQuery(entityManager, getEntityClass(),
-                filter, sortOrders);
-
-        TypedQuery<Tuple> query = entityManager.createQuery(cq);
-        List<Tuple> temp = query.getResultList();
+        TypedQuery<Object> query = JpaQueryBuilder.prepareIdQuery(entityManager,
+                getEntityClass(), filter, sortOrders);
+        List<Object> temp = query.getResultList();
         List<ID> result = new ArrayList<>();
 
-        for (Tuple t : temp) {
-            ID id = (ID) t.get(0);
-            result.add(id);
+        for (Object t : temp) {
+            result.add((ID) t);
         }
 
         return result;
     }
 
+    @Override
+    public long[] findNumericIds(Filter filter, SortOrder... sortOrders) {
+        TypedQuery<Object> query = JpaQueryBuilder.prepareIdQuery(entityManager,
+                getEntityClass(), filter, sortOrders);
+
+        // scroll through the IDs so that they never have to be held as a list of boxed values
+        ScrollableResults results = query.unwrap(Query.class)
+                .setFetchSize(SystemPropertyUtils.getDefaultFetchSize())
+                .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            long[] result = new long[INITIAL_ID_CAPACITY];
+            int size = 0;
+            while (results.next()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, 2 * size);
+                }
+                result[size++] = ((Number) results.get(0)).longValue();
+            }
+            return Arrays.copyOf(result, size);
+        } finally {
+            results.close();
+        }
+    }
+
     @Override
     public void flushAndClear() {
         entityManager.flush();
@@ -313,6 +420,29 @@ public abstract class BaseDaoImpl<ID, T extends AbstractEntity<ID>> implements B
         return list;
     }
 
+    @Override
+    public List<T> save(List<T> list, int batchSize, AtomicInteger counter) {
+        int flushed = 0;
+        for (int i = 0; i < list.size(); i++) {
+            T t = list.get(i);
+            if (t.getId() == null) {
+                entityManager.persist(t);
+            } else {
+                list.set(i, entityManager.merge(t));
+            }
+
+            boolean endOfBatch = batchSize > 0 && (i + 1) % batchSize == 0;
+            if (endOfBatch || i == list.size() - 1) {
+                flushAndClear();
+                if (counter != null) {
+                    counter.addAndGet(i + 1 - flushed);
+                }
+                flushed = i + 1;
+            }
+        }
+        return list;
+    }
+
     @Override
     public T save(T t) {
         if (t.getId() == null) {
@@ -322,4 +452,81 @@ public abstract class BaseDaoImpl<ID, T extends AbstractEntity<ID>> implements B
         }
         return t;
     }
+
+    @Override
+    public CloseableIterator<T> stream(Filter filter, SortOrders sortOrders,
+            FetchJoinInformation... joins) {
+        return stream(filter, sortOrders, SystemPropertyUtils.getDefaultFetchSize(), joins);
+    }
+
+    @Override
+    public CloseableIterator<T> stream(Filter filter, SortOrders sortOrders, int fetchSize,
+            FetchJoinInformation... joins) {
+        return stream(filter, sortOrders, fetchSize, false, joins);
+    }
+
+    @Override
+    public CloseableIterator<T> stream(Filter filter, SortOrders sortOrders, int fetchSize,
+            boolean clear, FetchJoinInformation... joins) {
+        TypedQuery<T> query = JpaQueryBuilder.prepareSelectQuery(entityManager, getEntityClass(),
+                filter, getStreamJoins(joins), sortOrders == null ? null : sortOrders.toArray(),
+                null);
+        return new ScrollableResultsIterator<>(entityManager, query, fetchSize, clear);
+    }
+
+    /**
+     * Returns the fetch joins that are used when streaming - the provided joins (or the default
+     * fetch joins), without the joins that fetch a collection
+     * 
+     * @param joins
+     *            the provided joins
+     * @return
+     */
+    private FetchJoinInformation[] getStreamJoins(FetchJoinInformation... joins) {
+        FetchJoinInformation[] candidates = (joins == null || joins.length == 0) ? getFetchJoins()
+                : joins;
+        if (candidates == null) {
+            return null;
+        }
+        List<FetchJoinInformation> result = new ArrayList<>();
+        for (FetchJoinInformation join : candidates) {
+            if (!isCollectionPath(join.getProperty())) {
+                result.add(join);
+            }
+        }
+        return result.toArray(new FetchJoinInformation[result.size()]);
+    }
+
+    /**
+     * Checks whether a (nested) property path passes through a collection
+     * 
+     * @param path
+     *            the path, e.g. "department.employees"
+     * @return
+     */
+    private boolean isCollectionPath(String path) {
+        Metamodel metamodel = entityManager.getMetamodel();
+        ManagedType<?> type = metamodel.managedType(getEntityClass());
+        String[] names = path.split("\\.");
+        for (int i = 0; i < names.length; i++) {
+            Attribute<?, ?> attribute = type.getAttribute(names[i]);
+            if (attribute.isCollection()) {
+                return true;
+            }
+            if (i < names.length - 1) {
+                type = metamodel.managedType(attribute.getJavaType());
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int updateByFilter(Filter filter, Map<String, Object> values) {
+        entityManager.flush();
+        int result = entityManager.createQuery(
+                JpaQueryBuilder.createUpdateQuery(entityManager, getEntityClass(), filter, values))
+                .executeUpdate();
+        evictAll();
+        return result;
+    }
 }
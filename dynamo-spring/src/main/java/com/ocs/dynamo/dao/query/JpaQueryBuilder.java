@@ -15,11 +15,17 @@ package com.ocs.dynamo.dao.query;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
 import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Fetch;
 import javax.persistence.criteria.FetchParent;
@@ -28,10 +34,15 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.persistence.metamodel.Attribute;
 
-import com.google.common.collect.Lists;
+import org.springframework.util.NumberUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.ocs.dynamo.constants.DynamoConstants;
 import com.ocs.dynamo.dao.SortOrder;
 import com.ocs.dynamo.dao.SortOrders;
+import com.ocs.dynamo.exception.OCSRuntimeException;
 import com.ocs.dynamo.filter.And;
 import com.ocs.dynamo.filter.Between;
 import com.ocs.dynamo.filter.Compare;
@@ -43,6 +54,7 @@ import com.ocs.dynamo.filter.Like;
 import com.ocs.dynamo.filter.Modulo;
 import com.ocs.dynamo.filter.Not;
 import com.ocs.dynamo.filter.Or;
+import com.ocs.dynamo.utils.SystemPropertyUtils;
 
 /**
  * @author patrick.deenen
@@ -50,6 +62,125 @@ import com.ocs.dynamo.filter.Or;
  */
 public final class JpaQueryBuilder {
 
+    /**
+     * The prefix of the names of the parameters that are used in cached queries
+     */
+    private static final String PARAMETER_PREFIX = "p";
+
+    /**
+     * The prefix that Hibernate uses for the parameters it generates for literal values
+     */
+    private static final String IMPLICIT_PARAMETER_PREFIX = ":param";
+
+    /**
+     * Cache of the query strings of previously constructed queries, keyed by the entity manager
+     * factory and the structure of the query (entity class, filter shape, sort orders and fetch
+     * joins). The filter values are bound as parameters, so queries that only differ in their
+     * values share a cache entry
+     */
+    private static final Cache<QueryKey, CachedQuery> QUERY_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(SystemPropertyUtils.getQueryCacheSize()).recordStats().build();
+
+    /**
+     * A cached query
+     * 
+     * @author bas.rutten
+     */
+    private static final class CachedQuery {
+
+        private final String queryString;
+
+        private final Class<?>[] parameterTypes;
+
+        private CachedQuery(String queryString, Class<?>[] parameterTypes) {
+            this.queryString = queryString;
+            this.parameterTypes = parameterTypes;
+        }
+    }
+
+    /**
+     * The key of a cached query. Entity manager factories are compared by identity, so that
+     * persistence units that map the same entity class differently never share a query
+     * 
+     * @author bas.rutten
+     */
+    private static final class QueryKey {
+
+        private final EntityManagerFactory entityManagerFactory;
+
+        private final String key;
+
+        private QueryKey(EntityManagerFactory entityManagerFactory, String key) {
+            this.entityManagerFactory = entityManagerFactory;
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(entityManagerFactory) + key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) obj;
+            return entityManagerFactory == other.entityManagerFactory && key.equals(other.key);
+        }
+    }
+
+    /**
+     * Keeps track of the parameters that are created while constructing a query. When a query is
+     * constructed without parameters, the values are passed to the criteria builder as literals
+     * 
+     * @author bas.rutten
+     */
+    private static final class QueryParameters {
+
+        private final List<Object> values;
+
+        private final List<Class<?>> types = new ArrayList<>();
+
+        private QueryParameters(List<Object> values) {
+            this.values = values;
+        }
+
+        /**
+         * Creates the next parameter
+         * 
+         * @param builder
+         *            the criteria builder
+         * @param javaType
+         *            the type of the expression the parameter is compared to
+         * @return
+         */
+        private Expression<?> next(CriteriaBuilder builder, Class<?> javaType) {
+            int index = types.size();
+            Object value = values.get(index);
+            Class<?> type = javaType == null ? Object.class : org.springframework.util.ClassUtils
+                    .resolvePrimitiveIfNecessary(javaType);
+            Object converted = convertValue(value, type);
+            if (converted != null && !type.isInstance(converted)) {
+                type = converted.getClass();
+            }
+            types.add(type);
+            return builder.parameter(type, PARAMETER_PREFIX + index);
+        }
+    }
+
+    /**
+     * Constructs a criteria query (used when a query is not yet cached)
+     * 
+     * @author bas.rutten
+     * @param <R>
+     *            the result type of the query
+     */
+    private abstract static class QueryCreator<R> {
+
+        abstract CriteriaQuery<R> create(CriteriaBuilder builder, QueryParameters parameters);
+    }
+
     private JpaQueryBuilder() {
         // hidden private constructor
     }
@@ -113,6 +244,147 @@ public final class JpaQueryBuilder {
         return cq;
     }
 
+    /**
+     * Appends a description of the structure of a filter to a cache key, and collects the values
+     * that are bound as parameters. The values must be collected in exactly the same order in which
+     * the parameters are created by the createPredicate method
+     * 
+     * @param filter
+     *            the filter
+     * @param key
+     *            the cache key
+     * @param values
+     *            the list of parameter values
+     */
+    private static void appendFilterShape(Filter filter, StringBuilder key, List<Object> values) {
+        if (filter == null) {
+            key.append('-');
+        } else if (filter instanceof And || filter instanceof Or) {
+            List<Filter> filters = filter instanceof And ? ((And) filter).getFilters()
+                    : ((Or) filter).getFilters();
+            key.append(filter instanceof And ? "and(" : "or(");
+            for (Filter f : filters) {
+                appendFilterShape(f, key, values);
+                key.append(',');
+            }
+            key.append(')');
+        } else if (filter instanceof Not) {
+            key.append("not(");
+            appendFilterShape(((Not) filter).getFilter(), key, values);
+            key.append(')');
+        } else if (filter instanceof Between) {
+            Between between = (Between) filter;
+            key.append("between:").append(between.getPropertyId());
+            values.add(between.getStartValue());
+            values.add(between.getEndValue());
+        } else if (filter instanceof Compare) {
+            Compare compare = (Compare) filter;
+            key.append(compare.getOperation()).append(':').append(compare.getPropertyId());
+            values.add(normalizeCompareValue(compare.getValue()));
+        } else if (filter instanceof IsNull) {
+            key.append("null:").append(((IsNull) filter).getPropertyId());
+        } else if (filter instanceof Like) {
+            Like like = (Like) filter;
+            key.append(like.isCaseSensitive() ? "like:" : "ilike:").append(like.getPropertyId());
+            values.add(getLikeValue(like));
+        } else if (filter instanceof Contains) {
+            Contains contains = (Contains) filter;
+            key.append("contains:").append(contains.getPropertyId());
+            values.add(contains.getValue());
+        } else if (filter instanceof In) {
+            In in = (In) filter;
+            List<Object> inValues = getInValues(in);
+            key.append("in:").append(in.getPropertyId()).append(':').append(inValues.size());
+            values.addAll(inValues);
+        } else if (filter instanceof Modulo) {
+            Modulo modulo = (Modulo) filter;
+            key.append("mod:").append(modulo.getPropertyId()).append(':')
+                    .append(modulo.getModExpression());
+            if (modulo.getModExpression() == null) {
+                values.add(modulo.getModValue().intValue());
+            }
+            values.add(modulo.getResult());
+        } else {
+            throw new UnsupportedOperationException("Filter: " + filter.getClass().getName()
+                    + " not recognized");
+        }
+    }
+
+    /**
+     * Appends the fetch joins to a cache key
+     * 
+     * @param key
+     *            the cache key
+     * @param fetchJoins
+     *            the fetch joins
+     */
+    private static void appendFetchJoins(StringBuilder key, FetchJoinInformation[] fetchJoins) {
+        key.append('|');
+        if (fetchJoins != null) {
+            for (FetchJoinInformation join : fetchJoins) {
+                key.append(join.getProperty()).append(':').append(join.getJoinType()).append(',');
+            }
+        }
+    }
+
+    /**
+     * Appends the sort orders to a cache key
+     * 
+     * @param key
+     *            the cache key
+     * @param sortOrders
+     *            the sort orders
+     */
+    private static void appendSortOrders(StringBuilder key, SortOrder[] sortOrders) {
+        key.append('|');
+        if (sortOrders != null) {
+            for (SortOrder order : sortOrders) {
+                key.append(order.getProperty()).append(':').append(order.getDirection())
+                        .append(',');
+            }
+        }
+    }
+
+    /**
+     * Removes all queries from the query cache
+     */
+    public static void clearQueryCache() {
+        QUERY_CACHE.invalidateAll();
+    }
+
+    /**
+     * Converts a numeric value (or a String that represents a number) to the type of the expression
+     * it is compared to
+     * 
+     * @param value
+     *            the value
+     * @param type
+     *            the desired type
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static Object convertValue(Object value, Class<?> type) {
+        if (value == null || type == null || type.isInstance(value)
+                || !Number.class.isAssignableFrom(type)) {
+            return value;
+        }
+        if (isFractional(value) && !isFractional(type)) {
+            // do not silently truncate the value
+            return value;
+        }
+        try {
+            if (value instanceof Number) {
+                return NumberUtils.convertNumberToTargetClass((Number) value,
+                        (Class<Number>) type);
+            } else if (value instanceof String) {
+                return NumberUtils.parseNumber((String) value, (Class<Number>) type);
+            }
+        } catch (IllegalArgumentException ex) {
+            // not convertible - leave it to the persistence provider
+        }
+        return value;
+    }
+
     /**
      * Creates a predicate based on an "And" filter
      * 
@@ -122,17 +394,20 @@ public final class JpaQueryBuilder {
      *            the root object
      * @param filter
      *            the "And" filter
+     * @param parameters
+     *            the query parameters (optional)
      * @return
      */
-    private static Predicate createAndPredicate(CriteriaBuilder builder, Root<?> root, Filter filter) {
+    private static Predicate createAndPredicate(CriteriaBuilder builder, Root<?> root,
+            Filter filter, QueryParameters parameters) {
         And and = (And) filter;
         List<Filter> filters = new ArrayList<>(and.getFilters());
 
         Predicate predicate = null;
         if (!filters.isEmpty()) {
-            predicate = createPredicate(filters.remove(0), builder, root);
+            predicate = createPredicate(filters.remove(0), builder, root, parameters);
             while (!filters.isEmpty()) {
-                Predicate next = createPredicate(filters.remove(0), builder, root);
+                Predicate next = createPredicate(filters.remove(0), builder, root, parameters);
                 if (next != null) {
                     predicate = builder.and(predicate, next);
                 }
@@ -147,48 +422,29 @@ public final class JpaQueryBuilder {
      * @param builder
      * @param root
      * @param filter
+     * @param parameters
      * @return
      */
     @SuppressWarnings({ "rawtypes", "unchecked" })
     private static Predicate createComparePredicate(CriteriaBuilder builder, Root<?> root,
-            Filter filter) {
+            Filter filter, QueryParameters parameters) {
         Compare compare = (Compare) filter;
-        Expression<Comparable> property = (Expression) getPropertyPath(root,
-                compare.getPropertyId());
-        Object value = compare.getValue();
-
-        // number representation may contain locale specific separators.
-        // Here, we remove
-        // those and make sure a period is used in all cases
-        if (value instanceof String) {
-
-            // strip out any "%" sign from decimal fields
-            value = ((String) value).replace('%', ' ').trim();
-
-            String str = (String) value;
-            if (str != null
-                    && org.apache.commons.lang.StringUtils.isNumeric(str.replaceAll("\\.", "")
-                            .replaceAll(",", ""))) {
-                // first remove all periods (which may be used as
-                // thousand
-                // separators), then replace comma by period
-                str = str.replaceAll("\\.", "").replace(',', '.');
-                value = str;
-            }
-
-        }
+        Path<Object> path = getPropertyPath(root, compare.getPropertyId());
+        Expression<Comparable> property = (Expression) path;
+        Expression<Comparable> value = (Expression) createValue(builder, parameters,
+                normalizeCompareValue(compare.getValue()), path.getJavaType());
 
         switch (compare.getOperation()) {
         case EQUAL:
             return builder.equal(property, value);
         case GREATER:
-            return builder.greaterThan(property, (Comparable) value);
+            return builder.greaterThan(property, value);
         case GREATER_OR_EQUAL:
-            return builder.greaterThanOrEqualTo(property, (Comparable) value);
+            return builder.greaterThanOrEqualTo(property, value);
         case LESS:
-            return builder.lessThan(property, (Comparable) value);
+            return builder.lessThan(property, value);
         case LESS_OR_EQUAL:
-            return builder.lessThanOrEqualTo(property, (Comparable) value);
+            return builder.lessThanOrEqualTo(property, value);
         default:
             return null;
         }
@@ -209,19 +465,48 @@ public final class JpaQueryBuilder {
      */
     public static <T> CriteriaQuery<Long> createCountQuery(EntityManager entityManager,
             Class<T> entityClass, Filter filter, boolean distinct) {
-        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        return createCountQuery(entityManager.getCriteriaBuilder(), entityClass, filter,
+                distinct, null);
+    }
+
+    private static <T> CriteriaQuery<Long> createCountQuery(CriteriaBuilder builder,
+            Class<T> entityClass, Filter filter, boolean distinct, QueryParameters parameters) {
         CriteriaQuery<Long> cq = builder.createQuery(Long.class);
         Root<T> root = cq.from(entityClass);
 
         cq.select(distinct ? builder.countDistinct(root) : builder.count(root));
 
-        Predicate p = createPredicate(filter, builder, root);
+        Predicate p = createPredicate(filter, builder, root, parameters);
         if (p != null) {
             cq.where(p);
         }
         return cq;
     }
 
+    /**
+     * Creates a bulk delete query that removes all entities that match the provided filter
+     * 
+     * @param entityManager
+     *            the entity manager
+     * @param entityClass
+     *            the entity class
+     * @param filter
+     *            the filter to apply
+     * @return
+     */
+    public static <T> CriteriaDelete<T> createDeleteQuery(EntityManager entityManager,
+            Class<T> entityClass, Filter filter) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaDelete<T> cd = builder.createCriteriaDelete(entityClass);
+        Root<T> root = cd.from(entityClass);
+
+        Predicate p = createPredicate(filter, builder, root, null);
+        if (p != null) {
+            cd.where(p);
+        }
+        return cd;
+    }
+
     /**
      * Creates a query that fetches objects based on their IDs
      * 
@@ -240,18 +525,22 @@ public final class JpaQueryBuilder {
     public static <ID, T> CriteriaQuery<T> createFetchQuery(EntityManager entityManager,
             Class<T> entityClass, List<ID> ids, SortOrders sortOrders,
             FetchJoinInformation[] fetchJoins) {
-        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        return createFetchQuery(entityManager.getCriteriaBuilder(), entityClass, ids,
+                sortOrders == null ? null : sortOrders.toArray(), fetchJoins, null);
+    }
+
+    private static <ID, T> CriteriaQuery<T> createFetchQuery(CriteriaBuilder builder,
+            Class<T> entityClass, List<ID> ids, SortOrder[] sortOrders,
+            FetchJoinInformation[] fetchJoins, QueryParameters parameters) {
         CriteriaQuery<T> cq = builder.createQuery(entityClass);
         Root<T> root = cq.from(entityClass);
 
         boolean distinct = addFetchJoinInformation(root, fetchJoins);
 
-        Expression<String> exp = root.get(DynamoConstants.ID);
-        cq.where(exp.in(ids));
+        cq.where(createPredicate(new In(DynamoConstants.ID, ids), builder, root, parameters));
         cq.distinct(distinct);
 
-        return addSortInformation(builder, cq, root,
-                sortOrders == null ? null : sortOrders.toArray());
+        return addSortInformation(builder, cq, root, sortOrders);
     }
 
     /**
@@ -303,7 +592,7 @@ public final class JpaQueryBuilder {
         cq.multiselect(root.get(DynamoConstants.ID));
 
         // Set where clause
-        Predicate p = createPredicate(filter, builder, root);
+        Predicate p = createPredicate(filter, builder, root, null);
         if (p != null) {
             cq.where(p);
         }
@@ -313,16 +602,111 @@ public final class JpaQueryBuilder {
         return addSortInformation(builder, cq, root, sortOrders);
     }
 
+    private static <T> CriteriaQuery<Object> createIdQuery(CriteriaBuilder builder,
+            Class<T> entityClass, Filter filter, SortOrder[] sortOrders,
+            QueryParameters parameters) {
+        CriteriaQuery<Object> cq = builder.createQuery(Object.class);
+        Root<T> root = cq.from(entityClass);
+
+        // select only the ID
+        cq.select(root.get(DynamoConstants.ID));
+
+        Predicate p = createPredicate(filter, builder, root, parameters);
+        if (p != null) {
+            cq.where(p);
+        }
+        return addSortInformation(builder, cq, root, sortOrders);
+    }
+
+    /**
+     * Creates a query that selects the page of objects that directly follows the row identified by
+     * the provided sort key values (keyset pagination)
+     * 
+     * @param filter
+     *            the filter
+     * @param entityManager
+     *            the entity manager
+     * @param entityClass
+     *            the entity class
+     * @param fetchJoins
+     *            the desired fetch joins
+     * @param sortOrders
+     *            the sorting information. Must define a total ordering
+     * @param lastValues
+     *            the values of the sort properties of the last row of the previous page. When
+     *            empty, the first page is selected
+     * @return
+     */
+    public static <T> CriteriaQuery<T> createKeysetSelectQuery(Filter filter,
+            EntityManager entityManager, Class<T> entityClass, FetchJoinInformation[] fetchJoins,
+            SortOrder[] sortOrders, Object[] lastValues) {
+        return createSelectQuery(entityManager.getCriteriaBuilder(), entityClass, filter,
+                fetchJoins, sortOrders, lastValues, null);
+    }
+
+    /**
+     * Creates the predicate that selects the rows that come after the row identified by the
+     * provided sort key values. For sort orders (a, b, c) this results in a compound predicate of
+     * the form "a > ?1 or (a = ?1 and b > ?2) or (a = ?1 and b = ?2 and c > ?3)", where "greater
+     * than" is replaced by "less than" for descending sort orders
+     * 
+     * @param builder
+     *            the criteria builder
+     * @param root
+     *            the query root
+     * @param sortOrders
+     *            the sort orders
+     * @param lastValues
+     *            the values of the sort properties of the last row of the previous page
+     * @param parameters
+     *            the query parameters (optional)
+     * @return the predicate, or <code>null</code> if no values were provided
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static Predicate createKeysetPredicate(CriteriaBuilder builder, Root<?> root,
+            SortOrder[] sortOrders, Object[] lastValues, QueryParameters parameters) {
+        if (lastValues == null || lastValues.length == 0) {
+            return null;
+        }
+        if (sortOrders == null || sortOrders.length != lastValues.length) {
+            throw new OCSRuntimeException(
+                    "Keyset pagination requires exactly one value for every sort order");
+        }
+
+        Expression<Comparable>[] properties = new Expression[sortOrders.length];
+        Expression<Comparable>[] values = new Expression[sortOrders.length];
+        for (int i = 0; i < sortOrders.length; i++) {
+            Path<Object> path = getPropertyPath(root, sortOrders[i].getProperty());
+            properties[i] = (Expression) path;
+            values[i] = (Expression) createValue(builder, parameters, lastValues[i],
+                    path.getJavaType());
+        }
+
+        Predicate result = null;
+        for (int i = 0; i < sortOrders.length; i++) {
+            Predicate next = sortOrders[i].isAscending() ? builder.greaterThan(properties[i],
+                    values[i]) : builder.lessThan(properties[i], values[i]);
+
+            // all preceding sort properties must be equal
+            for (int j = 0; j < i; j++) {
+                next = builder.and(builder.equal(properties[j], values[j]), next);
+            }
+            result = result == null ? next : builder.or(result, next);
+        }
+        return result;
+    }
+
     @SuppressWarnings({ "rawtypes", "unchecked" })
     private static Predicate createLikePredicate(CriteriaBuilder builder, Root<?> root,
-            Filter filter) {
+            Filter filter, QueryParameters parameters) {
         Like like = (Like) filter;
+        Expression<String> value = (Expression<String>) createValue(builder, parameters,
+                getLikeValue(like), String.class);
         if (like.isCaseSensitive()) {
-            return builder.like((Expression) getPropertyPath(root, like.getPropertyId()),
-                    like.getValue());
+            return builder.like((Expression) getPropertyPath(root, like.getPropertyId()), value);
         } else {
-            return builder.like(builder.lower((Expression) getPropertyPath(root,
-                    like.getPropertyId())), like.getValue().toLowerCase());
+            return builder.like(
+                    builder.lower((Expression) getPropertyPath(root, like.getPropertyId())), value);
         }
     }
 
@@ -331,35 +715,40 @@ public final class JpaQueryBuilder {
      * 
      * @param builder
      * @param filter
+     * @param parameters
      * @return
      */
     @SuppressWarnings({ "rawtypes", "unchecked" })
     private static Predicate createModuloPredicate(CriteriaBuilder builder, Root<?> root,
-            Filter filter) {
+            Filter filter, QueryParameters parameters) {
         Modulo modulo = (Modulo) filter;
+        Expression<Integer> property = (Expression) getPropertyPath(root, modulo.getPropertyId());
         if (modulo.getModExpression() != null) {
-            // compare to a literal expression
-            return builder.equal(builder.mod(
-                    (Expression) getPropertyPath(root, modulo.getPropertyId()),
-                    (Expression) getPropertyPath(root, modulo.getModExpression())), modulo
-                    .getResult());
-        } else {
             // compare to a property
-            return builder.equal(builder.mod(
-                    (Expression) getPropertyPath(root, modulo.getPropertyId()), modulo
-                            .getModValue().intValue()), modulo.getResult());
+            Expression<Integer> result = (Expression<Integer>) createValue(builder, parameters,
+                    modulo.getResult(), Integer.class);
+            return builder.equal(builder.mod(property,
+                    (Expression) getPropertyPath(root, modulo.getModExpression())), result);
+        } else {
+            // compare to a literal expression
+            Expression<Integer> modValue = (Expression<Integer>) createValue(builder,
+                    parameters, modulo.getModValue().intValue(), Integer.class);
+            Expression<Integer> result = (Expression<Integer>) createValue(builder, parameters,
+                    modulo.getResult(), Integer.class);
+            return builder.equal(builder.mod(property, modValue), result);
         }
     }
 
-    private static Predicate createOrPredicate(CriteriaBuilder builder, Root<?> root, Filter filter) {
+    private static Predicate createOrPredicate(CriteriaBuilder builder, Root<?> root,
+            Filter filter, QueryParameters parameters) {
         Or or = (Or) filter;
         List<Filter> filters = new ArrayList<>(or.getFilters());
 
         Predicate predicate = null;
         if (!filters.isEmpty()) {
-            predicate = createPredicate(filters.remove(0), builder, root);
+            predicate = createPredicate(filters.remove(0), builder, root, parameters);
             while (!filters.isEmpty()) {
-                Predicate next = createPredicate(filters.remove(0), builder, root);
+                Predicate next = createPredicate(filters.remove(0), builder, root, parameters);
                 if (next != null) {
                     predicate = builder.or(predicate, next);
                 }
@@ -378,48 +767,57 @@ public final class JpaQueryBuilder {
      *            the criteria builder
      * @param root
      *            the entity root
+     * @param parameters
+     *            the query parameters. When <code>null</code>, the values are passed as literals
      * @return
      */
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    private static Predicate createPredicate(Filter filter, CriteriaBuilder builder, Root<?> root) {
+    private static Predicate createPredicate(Filter filter, CriteriaBuilder builder, Root<?> root,
+            QueryParameters parameters) {
         if (filter == null) {
             return null;
         }
 
         if (filter instanceof And) {
-            return createAndPredicate(builder, root, filter);
+            return createAndPredicate(builder, root, filter, parameters);
         } else if (filter instanceof Or) {
-            return createOrPredicate(builder, root, filter);
+            return createOrPredicate(builder, root, filter, parameters);
         } else if (filter instanceof Not) {
             Not not = (Not) filter;
-            return builder.not(createPredicate(not.getFilter(), builder, root));
+            return builder.not(createPredicate(not.getFilter(), builder, root, parameters));
         } else if (filter instanceof Between) {
             Between between = (Between) filter;
-            Expression property = getPropertyPath(root, between.getPropertyId());
-            return builder.between(property, (Comparable) between.getStartValue(),
-                    (Comparable) between.getEndValue());
+            Path<Object> path = getPropertyPath(root, between.getPropertyId());
+            Expression start = createValue(builder, parameters, between.getStartValue(),
+                    path.getJavaType());
+            Expression end = createValue(builder, parameters, between.getEndValue(),
+                    path.getJavaType());
+            return builder.between((Expression) path, start, end);
         } else if (filter instanceof Compare) {
-            return createComparePredicate(builder, root, filter);
+            return createComparePredicate(builder, root, filter, parameters);
         } else if (filter instanceof IsNull) {
             IsNull isNull = (IsNull) filter;
             return builder.isNull(getPropertyPath(root, isNull.getPropertyId()));
         } else if (filter instanceof Like) {
-            return createLikePredicate(builder, root, filter);
+            return createLikePredicate(builder, root, filter, parameters);
         } else if (filter instanceof Contains) {
             Contains contains = (Contains) filter;
-            return builder.isMember(contains.getValue(),
+            Object value = contains.getValue();
+            return builder.isMember(
+                    createValue(builder, parameters, value, value == null ? null : value.getClass()),
                     (Expression) getPropertyPath(root, contains.getPropertyId()));
         } else if (filter instanceof In) {
             In in = (In) filter;
-            if (in.getValues() != null && !in.getValues().isEmpty()) {
-                Expression exp = getPropertyPath(root, in.getPropertyId());
-                return exp.in(in.getValues());
-            } else {
-                Expression exp = getPropertyPath(root, in.getPropertyId());
-                return exp.in(Lists.newArrayList(-1));
+            Path<Object> path = getPropertyPath(root, in.getPropertyId());
+            List<Object> values = getInValues(in);
+            Expression<?>[] expressions = new Expression<?>[values.size()];
+            for (int i = 0; i < values.size(); i++) {
+                expressions[i] = createValue(builder, parameters, values.get(i),
+                        path.getJavaType());
             }
+            return path.in(expressions);
         } else if (filter instanceof Modulo) {
-            return createModuloPredicate(builder, root, filter);
+            return createModuloPredicate(builder, root, filter, parameters);
         }
 
         throw new UnsupportedOperationException("Filter: " + filter.getClass().getName()
@@ -442,16 +840,28 @@ public final class JpaQueryBuilder {
     public static <T> CriteriaQuery<T> createSelectQuery(Filter filter,
             EntityManager entityManager, Class<T> entityClass, FetchJoinInformation[] fetchJoins,
             SortOrder... sortOrders) {
-        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        return createSelectQuery(entityManager.getCriteriaBuilder(), entityClass, filter,
+                fetchJoins, sortOrders, null, null);
+    }
+
+    private static <T> CriteriaQuery<T> createSelectQuery(CriteriaBuilder builder,
+            Class<T> entityClass, Filter filter, FetchJoinInformation[] fetchJoins,
+            SortOrder[] sortOrders, Object[] lastValues, QueryParameters parameters) {
         CriteriaQuery<T> cq = builder.createQuery(entityClass);
         Root<T> root = cq.from(entityClass);
 
         addFetchJoinInformation(root, fetchJoins);
         cq.select(root);
 
-        Predicate p = createPredicate(filter, builder, root);
-        if (p != null) {
+        Predicate p = createPredicate(filter, builder, root, parameters);
+        Predicate keyset = createKeysetPredicate(builder, root, sortOrders, lastValues,
+                parameters);
+        if (p != null && keyset != null) {
+            cq.where(builder.and(p, keyset));
+        } else if (p != null) {
             cq.where(p);
+        } else if (keyset != null) {
+            cq.where(keyset);
         }
 
         return addSortInformation(builder, cq, root, sortOrders);
@@ -521,6 +931,101 @@ public final class JpaQueryBuilder {
         return cq;
     }
 
+    /**
+     * Creates a bulk update query that sets the provided values on all entities that match the
+     * provided filter
+     * 
+     * @param entityManager
+     *            the entity manager
+     * @param entityClass
+     *            the entity class
+     * @param filter
+     *            the filter to apply
+     * @param values
+     *            the new values, keyed by property name
+     * @return
+     */
+    public static <T> CriteriaUpdate<T> createUpdateQuery(EntityManager entityManager,
+            Class<T> entityClass, Filter filter, Map<String, Object> values) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<T> cu = builder.createCriteriaUpdate(entityClass);
+        Root<T> root = cu.from(entityClass);
+
+        for (Entry<String, Object> entry : values.entrySet()) {
+            cu.set(getPropertyPath(root, entry.getKey()), entry.getValue());
+        }
+
+        Predicate p = createPredicate(filter, builder, root, null);
+        if (p != null) {
+            cu.where(p);
+        }
+        return cu;
+    }
+
+    /**
+     * Creates the expression for a value that is compared to a property. This is either a
+     * parameter or (when no parameters are used) a literal
+     * 
+     * @param builder
+     *            the criteria builder
+     * @param parameters
+     *            the query parameters (optional)
+     * @param value
+     *            the value
+     * @param javaType
+     *            the type of the expression the value is compared to
+     * @return
+     */
+    private static Expression<?> createValue(CriteriaBuilder builder, QueryParameters parameters,
+            Object value, Class<?> javaType) {
+        if (parameters != null) {
+            return parameters.next(builder, javaType);
+        }
+        if (value == null) {
+            return builder.nullLiteral(javaType == null ? Object.class : javaType);
+        }
+        return builder.literal(value);
+    }
+
+    /**
+     * Returns the values of an "In" filter. An empty collection is replaced by a value that never
+     * matches. The list is padded to the next power of two by repeating the last value, so that
+     * the number of different query strings (and database statements) remains small
+     * 
+     * @param in
+     *            the filter
+     * @return
+     */
+    private static List<Object> getInValues(In in) {
+        List<Object> values = new ArrayList<>();
+        if (in.getValues() != null && !in.getValues().isEmpty()) {
+            values.addAll(in.getValues());
+        } else {
+            values.add(-1);
+        }
+
+        int size = Integer.highestOneBit(values.size());
+        if (size < values.size()) {
+            size = size << 1;
+        }
+        Object last = values.get(values.size() - 1);
+        while (values.size() < size) {
+            values.add(last);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the value to compare to for a "Like" filter
+     * 
+     * @param like
+     *            the filter
+     * @return
+     */
+    private static String getLikeValue(Like like) {
+        return like.isCaseSensitive() ? like.getValue() : like.getValue().toLowerCase();
+    }
+
     /**
      * Gets property path.
      * 
@@ -544,6 +1049,21 @@ public final class JpaQueryBuilder {
         return path;
     }
 
+    /**
+     * Returns the statistics (hits, misses, evictions) of the query cache
+     * 
+     * @return
+     */
+    public static CacheStats getQueryCacheStats() {
+        return QUERY_CACHE.stats();
+    }
+
+    private static boolean isFractional(Object value) {
+        Class<?> clazz = value instanceof Class ? (Class<?>) value : value.getClass();
+        return Double.class.equals(clazz) || Float.class.equals(clazz)
+                || java.math.BigDecimal.class.equals(clazz);
+    }
+
     private static boolean isCollectionFetch(FetchParent<?, ?> parent) {
         boolean result = false;
 
@@ -556,4 +1076,221 @@ public final class JpaQueryBuilder {
         return result;
     }
 
+    /**
+     * Number representations may contain locale specific separators. These are removed here, and a
+     * period is used as the decimal separator in all cases
+     * 
+     * @param value
+     *            the value to normalize
+     * @return
+     */
+    private static Object normalizeCompareValue(Object value) {
+        if (value instanceof String) {
+
+            // strip out any "%" sign from decimal fields
+            String str = ((String) value).replace('%', ' ').trim();
+            if (org.apache.commons.lang.StringUtils.isNumeric(str.replaceAll("\\.", "").replaceAll(
+                    ",", ""))) {
+                // first remove all periods (which may be used as
+                // thousand
+                // separators), then replace comma by period
+                str = str.replaceAll("\\.", "").replace(',', '.');
+            }
+            return str;
+        }
+        return value;
+    }
+
+    /**
+     * Prepares a query that counts the entities that match the provided filter. The filter values
+     * are bound as parameters and the query is cached based on its structure
+     * 
+     * @param entityManager
+     *            the entity manager
+     * @param entityClass
+     *            the entity class
+     * @param filter
+     *            the filter to apply
+     * @param distinct
+     *            whether to return only distinct results
+     * @return
+     */
+    public static <T> TypedQuery<Long> prepareCountQuery(EntityManager entityManager,
+            final Class<T> entityClass, final Filter filter, final boolean distinct) {
+        StringBuilder key = new StringBuilder("count|").append(entityClass.getName()).append('|')
+                .append(distinct).append('|');
+        List<Object> values = new ArrayList<>();
+        appendFilterShape(filter, key, values);
+
+        return prepareQuery(entityManager, Long.class, key.toString(), values,
+                new QueryCreator<Long>() {
+
+                    @Override
+                    CriteriaQuery<Long> create(CriteriaBuilder builder, QueryParameters parameters) {
+                        return createCountQuery(builder, entityClass, filter, distinct, parameters);
+                    }
+                });
+    }
+
+    /**
+     * Prepares a query that fetches objects based on their IDs. The IDs are bound as parameters
+     * and the query is cached based on its structure
+     * 
+     * @param entityManager
+     *            the entity manager
+     * @param entityClass
+     *            the entity class
+     * @param ids
+     *            the IDs of the desired entities
+     * @param sortOrders
+     *            the sorting information
+     * @param fetchJoins
+     *            the desired fetch joins
+     * @return
+     */
+    public static <ID, T> TypedQuery<T> prepareFetchQuery(EntityManager entityManager,
+            final Class<T> entityClass, final List<ID> ids, SortOrders sortOrders,
+            final FetchJoinInformation[] fetchJoins) {
+        final SortOrder[] orders = sortOrders == null ? null : sortOrders.toArray();
+
+        StringBuilder key = new StringBuilder("fetch|").append(entityClass.getName()).append('|');
+        List<Object> values = new ArrayList<>();
+        appendFilterShape(new In(DynamoConstants.ID, ids), key, values);
+        appendFetchJoins(key, fetchJoins);
+        appendSortOrders(key, orders);
+
+        return prepareQuery(entityManager, entityClass, key.toString(), values,
+                new QueryCreator<T>() {
+
+                    @Override
+                    CriteriaQuery<T> create(CriteriaBuilder builder, QueryParameters parameters) {
+                        return createFetchQuery(builder, entityClass, ids, orders, fetchJoins,
+                                parameters);
+                    }
+                });
+    }
+
+    /**
+     * Prepares a query that retrieves the IDs of the entities that match the provided filter. The
+     * filter values are bound as parameters and the query is cached based on its structure
+     * 
+     * @param entityManager
+     *            the entity manager
+     * @param entityClass
+     *            the entity class
+     * @param filter
+     *            the filter to apply
+     * @param sortOrders
+     *            the sorting to apply
+     * @return
+     */
+    public static <T> TypedQuery<Object> prepareIdQuery(EntityManager entityManager,
+            final Class<T> entityClass, final Filter filter, final SortOrder... sortOrders) {
+        StringBuilder key = new StringBuilder("id|").append(entityClass.getName()).append('|');
+        List<Object> values = new ArrayList<>();
+        appendFilterShape(filter, key, values);
+        appendSortOrders(key, sortOrders);
+
+        return prepareQuery(entityManager, Object.class, key.toString(), values,
+                new QueryCreator<Object>() {
+
+                    @Override
+                    CriteriaQuery<Object> create(CriteriaBuilder builder,
+                            QueryParameters parameters) {
+                        return createIdQuery(builder, entityClass, filter, sortOrders, parameters);
+                    }
+                });
+    }
+
+    /**
+     * Looks up a query in the cache, or constructs and caches it when it is not present, and binds
+     * the parameter values
+     * 
+     * @param entityManager
+     *            the entity manager
+     * @param resultClass
+     *            the result class of the query
+     * @param key
+     *            the cache key
+     * @param values
+     *            the parameter values
+     * @param creator
+     *            used to construct the criteria query when the query is not cached
+     * @return
+     */
+    private static <R> TypedQuery<R> prepareQuery(EntityManager entityManager,
+            Class<R> resultClass, String key, List<Object> values, QueryCreator<R> creator) {
+        TypedQuery<R> query;
+        Class<?>[] types;
+
+        QueryKey queryKey = new QueryKey(entityManager.getEntityManagerFactory(), key);
+        CachedQuery cached = QUERY_CACHE.getIfPresent(queryKey);
+        if (cached != null) {
+            query = entityManager.createQuery(cached.queryString, resultClass);
+            types = cached.parameterTypes;
+        } else {
+            QueryParameters parameters = new QueryParameters(values);
+            query = entityManager.createQuery(creator.create(entityManager.getCriteriaBuilder(),
+                    parameters));
+            types = parameters.types.toArray(new Class<?>[0]);
+
+            // only cache the query when all values are bound by name
+            String queryString = query.unwrap(org.hibernate.Query.class).getQueryString();
+            if (!queryString.contains(IMPLICIT_PARAMETER_PREFIX)) {
+                QUERY_CACHE.put(queryKey, new CachedQuery(queryString, types));
+            }
+        }
+
+        for (int i = 0; i < types.length; i++) {
+            query.setParameter(PARAMETER_PREFIX + i, convertValue(values.get(i), types[i]));
+        }
+        return query;
+    }
+
+    /**
+     * Prepares a query that selects the entities that match the provided filter. The filter values
+     * are bound as parameters and the query is cached based on its structure
+     * 
+     * @param entityManager
+     *            the entity manager
+     * @param entityClass
+     *            the entity class
+     * @param filter
+     *            the filter to apply
+     * @param fetchJoins
+     *            the desired fetch joins
+     * @param sortOrders
+     *            the sorting information
+     * @param lastValues
+     *            (optional) the values of the sort properties of the last row of the previous page
+     *            when using keyset pagination
+     * @return
+     */
+    public static <T> TypedQuery<T> prepareSelectQuery(EntityManager entityManager,
+            final Class<T> entityClass, final Filter filter,
+            final FetchJoinInformation[] fetchJoins, final SortOrder[] sortOrders,
+            final Object[] lastValues) {
+        StringBuilder key = new StringBuilder("select|").append(entityClass.getName()).append('|');
+        List<Object> values = new ArrayList<>();
+        appendFilterShape(filter, key, values);
+        appendFetchJoins(key, fetchJoins);
+        appendSortOrders(key, sortOrders);
+        if (lastValues != null && lastValues.length > 0) {
+            key.append("|keyset");
+            for (Object value : lastValues) {
+                values.add(value);
+            }
+        }
+
+        return prepareQuery(entityManager, entityClass, key.toString(), values,
+                new QueryCreator<T>() {
+
+                    @Override
+                    CriteriaQuery<T> create(CriteriaBuilder builder, QueryParameters parameters) {
+                        return createSelectQuery(builder, entityClass, filter, fetchJoins,
+                                sortOrders, lastValues, parameters);
+                    }
+                });
+    }
+
 }
@@ -0,0 +1,173 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.dao.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+/**
+ * An iterator that traverses the results of a query using a forward-only database cursor. After
+ * every "fetchSize" results the entities that were loaded by the iterator are evicted from the
+ * persistence context, so the memory usage remains bounded regardless of the size of the result
+ * set. Entities that were already managed (and modifiable) before they were returned by the
+ * iterator are left alone, so unflushed changes of the caller are retained. Associated entities
+ * are only evicted along with the results when the association cascades the eviction. When the
+ * iterator has an entity manager of its own, the persistence context can be cleared instead
+ * 
+ * @author bas.rutten
+ * @param <T>
+ *            the type of the entity
+ */
+public class ScrollableResultsIterator<T> implements CloseableIterator<T> {
+
+    private final EntityManager entityManager;
+
+    private final ScrollableResults results;
+
+    private final int fetchSize;
+
+    // whether to clear the whole persistence context rather than evict the loaded entities
+    private final boolean clear;
+
+    // the entities that were loaded by the iterator since the last eviction
+    private final List<Object> loaded = new ArrayList<>();
+
+    private final Session session;
+
+    // the number of results that have been returned so far
+    private int count;
+
+    // whether the cursor has been moved to the next result already
+    private Boolean hasNext;
+
+    private boolean closed;
+
+    /**
+     * Constructor
+     * 
+     * @param entityManager
+     *            the entity manager
+     * @param query
+     *            the query to execute
+     * @param fetchSize
+     *            the number of rows to retrieve from the database in one go. This is also the
+     *            number of entities after which the loaded entities are evicted
+     */
+    public ScrollableResultsIterator(EntityManager entityManager, TypedQuery<T> query,
+            int fetchSize) {
+        this(entityManager, query, fetchSize, false);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param entityManager
+     *            the entity manager
+     * @param query
+     *            the query to execute
+     * @param fetchSize
+     *            the number of rows to retrieve from the database in one go
+     * @param clear
+     *            whether to clear the whole persistence context after every "fetchSize" results.
+     *            Only use this when the entity manager is not shared with the caller
+     */
+    public ScrollableResultsIterator(EntityManager entityManager, TypedQuery<T> query,
+            int fetchSize, boolean clear) {
+        this.entityManager = entityManager;
+        this.fetchSize = fetchSize;
+        this.clear = clear;
+        this.session = entityManager.unwrap(Session.class);
+        this.results = query.unwrap(Query.class).setFetchSize(fetchSize).setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (hasNext == null) {
+            // detach the entities that were returned earlier before moving the cursor (which
+            // loads the next entity into the persistence context)
+            if (count > 0 && count % fetchSize == 0) {
+                evictLoaded();
+            }
+            hasNext = results.next();
+            if (!hasNext) {
+                close();
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasNext = null;
+        count++;
+        T result = (T) results.get(0);
+        // the query is read-only, so an entity that is modifiable was already managed before
+        if (!clear && session.contains(result) && session.isReadOnly(result)) {
+            loaded.add(result);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the entities that were loaded by the iterator from the persistence context
+     */
+    private void evictLoaded() {
+        if (clear) {
+            entityManager.clear();
+        } else {
+            for (Object entity : loaded) {
+                session.evict(entity);
+            }
+            loaded.clear();
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            results.close();
+        }
+    }
+
+    /**
+     * @return the number of results that have been returned so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+}
@@ -13,6 +13,10 @@
  */
 package com.ocs.dynamo.domain.model.impl;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -24,13 +28,16 @@ import com.ocs.dynamo.domain.model.AttributeSelectMode;
 import com.ocs.dynamo.domain.model.AttributeTextFieldMode;
 import com.ocs.dynamo.domain.model.AttributeType;
 import com.ocs.dynamo.domain.model.EntityModel;
+import com.ocs.dynamo.domain.model.EntityModelFactory;
 
 /**
  * Implementation of the AttributeModel interface - simple container for properties
  * 
  * @author bas.rutten
  */
-public class AttributeModelImpl implements AttributeModel {
+public class AttributeModelImpl implements AttributeModel, Serializable {
+
+    private static final long serialVersionUID = 5497296328431185137L;
 
     private Set<String> allowedExtensions = new HashSet<>();
 
@@ -74,7 +81,15 @@ public class AttributeModelImpl implements AttributeModel {
 
     private String name;
 
-    private EntityModel<?> nestedEntityModel;
+    /**
+     * Nested models are shared between entity models, so they are not serialized along with this
+     * model but looked up again by reference after deserialization
+     */
+    private transient EntityModel<?> nestedEntityModel;
+
+    private transient String nestedEntityModelReference;
+
+    private transient Class<?> nestedEntityModelClass;
 
     private Integer order;
 
@@ -459,6 +474,25 @@ public class AttributeModelImpl implements AttributeModel {
         this.multipleSearch = multipleSearch;
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        nestedEntityModelReference = (String) in.readObject();
+        nestedEntityModelClass = (Class<?>) in.readObject();
+    }
+
+    /**
+     * Looks up the nested entity model after this model has been deserialized
+     * 
+     * @param factory
+     *            the factory that is used to look up the model
+     */
+    void resolveNestedEntityModel(EntityModelFactory factory) {
+        if (nestedEntityModel == null && nestedEntityModelReference != null) {
+            nestedEntityModel = factory.getModel(nestedEntityModelReference,
+                    nestedEntityModelClass);
+        }
+    }
+
     public void setName(String name) {
         this.name = name;
     }
@@ -563,6 +597,12 @@ public class AttributeModelImpl implements AttributeModel {
         this.week = week;
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(nestedEntityModel == null ? null : nestedEntityModel.getReference());
+        out.writeObject(nestedEntityModel == null ? null : nestedEntityModel.getEntityClass());
+    }
+
     @Override
     public String toString() {
         return ReflectionToStringBuilder.toStringExclude(this, "entityModel");
@@ -14,6 +14,8 @@
 package com.ocs.dynamo.domain.model.impl;
 
 import java.beans.PropertyDescriptor;
+import java.io.File;
+import java.lang.annotation.Annotation;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -27,25 +29,35 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
+import javax.annotation.PostConstruct;
 import javax.persistence.ElementCollection;
 import javax.persistence.Embedded;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.Id;
 import javax.persistence.Lob;
 import javax.persistence.ManyToMany;
 import javax.persistence.OneToMany;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.metamodel.EntityType;
 import javax.validation.constraints.AssertFalse;
 import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.MessageSource;
 
 import com.google.common.collect.Sets;
 import com.ocs.dynamo.domain.AbstractEntity;
@@ -55,6 +67,7 @@ import com.ocs.dynamo.domain.model.AttributeSelectMode;
 import com.ocs.dynamo.domain.model.AttributeTextFieldMode;
 import com.ocs.dynamo.domain.model.AttributeType;
 import com.ocs.dynamo.domain.model.EntityModel;
+import com.ocs.dynamo.domain.model.EntityModelDescriptor;
 import com.ocs.dynamo.domain.model.EntityModelFactory;
 import com.ocs.dynamo.domain.model.VisibilityType;
 import com.ocs.dynamo.domain.model.annotation.Attribute;
@@ -62,6 +75,7 @@ import com.ocs.dynamo.domain.model.annotation.AttributeGroup;
 import com.ocs.dynamo.domain.model.annotation.AttributeGroups;
 import com.ocs.dynamo.domain.model.annotation.AttributeOrder;
 import com.ocs.dynamo.domain.model.annotation.Model;
+import com.ocs.dynamo.domain.model.apt.EntityModelProcessor;
 import com.ocs.dynamo.domain.validator.Email;
 import com.ocs.dynamo.exception.OCSRuntimeException;
 import com.ocs.dynamo.service.MessageService;
@@ -77,6 +91,8 @@ import com.vaadin.ui.DefaultFieldFactory;
  */
 public class EntityModelFactoryImpl implements EntityModelFactory {
 
+    private static final Logger LOGGER = Logger.getLogger(EntityModelFactoryImpl.class);
+
     private static final String PLURAL_POSTFIX = "s";
 
     private static final String CLASS = "class";
@@ -85,13 +101,54 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
 
     private static final int RECURSIVE_MODEL_DEPTH = 3;
 
+    /**
+     * Placeholder that is stored for classes for which no generated descriptor exists
+     */
+    private static final EntityModelDescriptor NO_DESCRIPTOR = new EntityModelDescriptor() {
+
+        @Override
+        public boolean isDescribed(String property) {
+            return false;
+        }
+
+        @Override
+        public boolean hasAnnotation(String property, Class<? extends Annotation> annotationClass) {
+            return true;
+        }
+    };
+
     @Autowired(required = false)
     private MessageService messageService;
 
+    /**
+     * The message source behind the message service - the snapshot uses its message bundles to
+     * determine whether the models it contains are still up to date
+     */
+    @Autowired(required = false)
+    private MessageSource messageSource;
+
     private ConcurrentMap<String, EntityModel<?>> cache = new ConcurrentHashMap<String, EntityModel<?>>();
 
     private ConcurrentMap<String, Class<?>> alreadyProcessed = new ConcurrentHashMap<String, Class<?>>();
 
+    /**
+     * The models that are being constructed, keyed by reference. Every model is constructed
+     * exactly once, while models for different references can be constructed concurrently
+     */
+    private ConcurrentMap<String, FutureTask<EntityModel<?>>> constructing =
+            new ConcurrentHashMap<>();
+
+    @Autowired(required = false)
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * The descriptors that were generated at compile time by the EntityModelProcessor, keyed by
+     * class
+     */
+    private ConcurrentMap<Class<?>, EntityModelDescriptor> descriptors = new ConcurrentHashMap<>();
+
+    private EntityModelSnapshot snapshot;
+
     /**
      * Constructs an attribute model for a property
      * 
@@ -115,9 +172,9 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
         // validation methods annotated with @AssertTrue or @AssertFalse have to
         // be ignored
         String fieldName = descriptor.getName();
-        AssertTrue assertTrue = ClassUtils.getAnnotation(entityModel.getEntityClass(), fieldName,
+        AssertTrue assertTrue = getAnnotation(entityModel.getEntityClass(), fieldName,
                 AssertTrue.class);
-        AssertFalse assertFalse = ClassUtils.getAnnotation(entityModel.getEntityClass(), fieldName,
+        AssertFalse assertFalse = getAnnotation(entityModel.getEntityClass(), fieldName,
                 AssertFalse.class);
 
         if (assertTrue == null && assertFalse == null) {
@@ -145,7 +202,7 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
             model.setUrl(false);
             model.setUseThousandsGrouping(true);
 
-            Id idAttr = ClassUtils.getAnnotation(entityModel.getEntityClass(), fieldName, Id.class);
+            Id idAttr = getAnnotation(entityModel.getEntityClass(), fieldName, Id.class);
             if (idAttr != null) {
                 entityModel.setIdAttributeModel(model);
                 // the ID column is hidden. details collections are also hidden
@@ -166,14 +223,14 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
 
             // determine if the attribute is required based on the @NotNull
             // annotation
-            NotNull notNull = ClassUtils.getAnnotation(entityModel.getEntityClass(), fieldName,
+            NotNull notNull = getAnnotation(entityModel.getEntityClass(), fieldName,
                     NotNull.class);
             model.setRequired(notNull != null);
 
             model.setAttributeType(determineAttributeType(parentClass, model));
 
             // minimum and maximum length based on the @Size annotation
-            Size size = ClassUtils.getAnnotation(entityModel.getEntityClass(), fieldName,
+            Size size = getAnnotation(entityModel.getEntityClass(), fieldName,
                     Size.class);
             if (AttributeType.BASIC.equals(model.getAttributeType()) && size != null) {
                 model.setMaxLength(size.max());
@@ -197,7 +254,7 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
             model.setSearchSelectMode(AttributeSelectMode.COMBO);
 
             // is the field an email field?
-            Email email = ClassUtils.getAnnotation(entityModel.getEntityClass(), fieldName,
+            Email email = getAnnotation(entityModel.getEntityClass(), fieldName,
                     Email.class);
             model.setEmail(email != null);
 
@@ -232,15 +289,62 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
     }
 
     /**
-     * Constructs the model for an entity
+     * Constructs the model for an entity, or waits for the model to be constructed when another
+     * thread is already constructing it
+     * 
+     * @param reference
+     *            the reference of the model
+     * @param entityClass
+     *            the class of the entity
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private <T> EntityModel<T> constructModel(final String reference, final Class<T> entityClass) {
+        FutureTask<EntityModel<?>> task = new FutureTask<>(new Callable<EntityModel<?>>() {
+
+            @Override
+            public EntityModel<?> call() {
+                return constructModelOnce(reference, entityClass);
+            }
+        });
+
+        FutureTask<EntityModel<?>> existing = constructing.putIfAbsent(reference, task);
+        if (existing == null) {
+            existing = task;
+            task.run();
+        }
+
+        try {
+            return (EntityModel<T>) existing.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new OCSRuntimeException(ex.getMessage(), ex);
+        } catch (ExecutionException ex) {
+            // allow a new attempt
+            constructing.remove(reference, existing);
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new OCSRuntimeException(ex.getCause().getMessage(), ex.getCause());
+        }
+    }
+
+    /**
+     * Constructs the model for an entity. Models that are referenced by this model are
+     * constructed recursively (these always have a longer reference, so this can not deadlock)
      * 
+     * @param reference
+     *            the reference of the model
      * @param entityClass
      *            the class of the entity
      * @return
      */
     @SuppressWarnings("unchecked")
-    private synchronized <T> EntityModel<T> constructModel(String reference, Class<T> entityClass) {
+    private <T> EntityModel<T> constructModelOnce(String reference, Class<T> entityClass) {
         EntityModel<T> result = (EntityModel<T>) cache.get(reference);
+        if (result == null && snapshot != null) {
+            result = loadFromSnapshot(reference, entityClass);
+        }
         if (result == null) {
             boolean nested = reference.indexOf('.') > 0;
 
@@ -321,6 +425,7 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
                 sortOrder = sortOrderMsg;
             }
             setSortOrder(model, sortOrder);
+            setCacheSettings(model, annot, reference);
             cache.put(reference, model);
             result = model;
         }
@@ -514,8 +619,8 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
         if (!BeanUtils.isSimpleValueType(model.getType())) {
             // No relation type set in view model definition, hence derive
             // defaults
-            Embedded embedded = ClassUtils.getAnnotation(parentClass, name, Embedded.class);
-            Attribute attribute = ClassUtils.getAnnotation(parentClass, name, Attribute.class);
+            Embedded embedded = getAnnotation(parentClass, name, Embedded.class);
+            Attribute attribute = getAnnotation(parentClass, name, Attribute.class);
 
             if (embedded != null) {
                 result = AttributeType.EMBEDDED;
@@ -525,11 +630,11 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
                     // if a member type is explicitly set, use that type
                     result = AttributeType.DETAIL;
                     model.setMemberType(attribute.memberType());
-                } else if (ClassUtils.getAnnotation(parentClass, name, ManyToMany.class) != null
-                        || ClassUtils.getAnnotation(parentClass, name, OneToMany.class) != null) {
+                } else if (getAnnotation(parentClass, name, ManyToMany.class) != null
+                        || getAnnotation(parentClass, name, OneToMany.class) != null) {
                     result = AttributeType.DETAIL;
                     model.setMemberType(ClassUtils.getResolvedType(parentClass, model.getName(), 0));
-                } else if (ClassUtils.getAnnotation(parentClass, name, ElementCollection.class) != null) {
+                } else if (getAnnotation(parentClass, name, ElementCollection.class) != null) {
                     result = AttributeType.ELEMENT_COLLECTION;
                     model.setMemberType(ClassUtils.getResolvedType(parentClass, model.getName(), 0));
                 } else if (AbstractEntity.class.isAssignableFrom(model.getType())) {
@@ -539,7 +644,7 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
             } else if (model.getType().isArray()) {
                 // a byte array with the @Lob annotation is transformed to a
                 // @Lob field
-                Lob lob = ClassUtils.getAnnotation(parentClass, name, Lob.class);
+                Lob lob = getAnnotation(parentClass, name, Lob.class);
                 if (lob != null) {
                     result = AttributeType.LOB;
                 }
@@ -558,9 +663,9 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
             String fieldName) {
         // set the date type
         if (Date.class.equals(modelType)) {
-            Temporal temporal = ClassUtils.getAnnotation(entityClass, fieldName, Temporal.class);
+            Temporal temporal = getAnnotation(entityClass, fieldName, Temporal.class);
 
-            Attribute attribute = ClassUtils.getAnnotation(entityClass, fieldName, Attribute.class);
+            Attribute attribute = getAnnotation(entityClass, fieldName, Attribute.class);
 
             final boolean customAttributeDateTypeSet = attribute != null
                     && attribute.dateType() != AttributeDateType.INHERIT;
@@ -629,6 +734,57 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
         return null;
     }
 
+    /**
+     * Looks up an annotation on a property. When a generated descriptor is available for the class
+     * and it indicates that the annotation is not present, no reflection is used at all
+     * 
+     * @param clazz
+     *            the class
+     * @param fieldName
+     *            the name of the property
+     * @param annotationClass
+     *            the class of the annotation
+     * @return the annotation, or <code>null</code> if it is not present
+     */
+    private <A extends Annotation> A getAnnotation(Class<?> clazz, String fieldName,
+            Class<A> annotationClass) {
+        EntityModelDescriptor descriptor = getDescriptor(clazz);
+        if (descriptor.isDescribed(fieldName)
+                && !descriptor.hasAnnotation(fieldName, annotationClass)) {
+            return null;
+        }
+        return ClassUtils.getAnnotation(clazz, fieldName, annotationClass);
+    }
+
+    /**
+     * Returns the generated descriptor for a class
+     * 
+     * @param clazz
+     *            the class
+     * @return the descriptor, or a placeholder that describes nothing if no descriptor was
+     *         generated for the class
+     */
+    private EntityModelDescriptor getDescriptor(Class<?> clazz) {
+        EntityModelDescriptor descriptor = descriptors.get(clazz);
+        if (descriptor == null) {
+            descriptor = NO_DESCRIPTOR;
+            try {
+                Class<?> descriptorClass = Class.forName(clazz.getName()
+                        + EntityModelProcessor.SUFFIX, true, clazz.getClassLoader());
+                if (EntityModelDescriptor.class.isAssignableFrom(descriptorClass)) {
+                    descriptor = (EntityModelDescriptor) descriptorClass.newInstance();
+                }
+            } catch (ClassNotFoundException ex) {
+                // no descriptor generated, fall back to reflection
+                LOGGER.debug("No generated descriptor for " + clazz.getName());
+            } catch (InstantiationException | IllegalAccessException ex) {
+                LOGGER.warn(ex.getMessage(), ex);
+            }
+            descriptors.putIfAbsent(clazz, descriptor);
+        }
+        return descriptor;
+    }
+
     /**
      * Retrieves a message relating to an entity from the message bundle
      * 
@@ -643,6 +799,27 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
         return null;
     }
 
+    /**
+     * Loads a model from the snapshot and looks up the models that are nested in it
+     * 
+     * @param reference
+     *            the reference of the model
+     * @param entityClass
+     *            the entity class
+     * @return the model, or <code>null</code> if it must be constructed
+     */
+    private <T> EntityModel<T> loadFromSnapshot(String reference, Class<T> entityClass) {
+        EntityModelImpl<T> model = snapshot.load(reference, entityClass);
+        if (model != null) {
+            alreadyProcessed.put(reference, entityClass);
+            for (AttributeModel attributeModel : model.getAttributeModels()) {
+                ((AttributeModelImpl) attributeModel).resolveNestedEntityModel(this);
+            }
+            cache.put(reference, model);
+        }
+        return model;
+    }
+
     protected Locale getLocale() {
         VaadinSession session = VaadinSession.getCurrent();
         if (session != null) {
@@ -674,6 +851,75 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
         return model;
     }
 
+    /**
+     * Constructs the models for all entities that are managed by the entity manager factory when
+     * the "ocs.entity.model.warmup" system property is set, so that the first user does not have
+     * to wait for this. When the "ocs.entity.model.snapshot" system property is set, models are
+     * read from the snapshot file where possible
+     */
+    @PostConstruct
+    public void init() {
+        String snapshotFile = SystemPropertyUtils.getEntityModelSnapshot();
+        if (!StringUtils.isEmpty(snapshotFile)) {
+            snapshot = new EntityModelSnapshot(new File(snapshotFile), messageSource);
+        }
+
+        if (SystemPropertyUtils.warmUpEntityModels() && entityManagerFactory != null) {
+            List<Class<?>> entityClasses = new ArrayList<>();
+            for (EntityType<?> type : entityManagerFactory.getMetamodel().getEntities()) {
+                entityClasses.add(type.getJavaType());
+            }
+            warmUp(entityClasses);
+        }
+    }
+
+    /**
+     * Constructs the models for the provided entity classes in parallel
+     * 
+     * @param entityClasses
+     *            the entity classes
+     */
+    public void warmUp(Collection<Class<?>> entityClasses) {
+        long start = System.currentTimeMillis();
+
+        List<Callable<EntityModel<?>>> tasks = new ArrayList<>();
+        for (final Class<?> entityClass : entityClasses) {
+            tasks.add(new Callable<EntityModel<?>>() {
+
+                @Override
+                public EntityModel<?> call() {
+                    try {
+                        return getModel(entityClass);
+                    } catch (RuntimeException ex) {
+                        LOGGER.warn("Could not construct entity model for "
+                                + entityClass.getName() + ": " + ex.getMessage(), ex);
+                        return null;
+                    }
+                }
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            for (Future<EntityModel<?>> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            LOGGER.warn(ex.getMessage(), ex);
+        } finally {
+            pool.shutdown();
+        }
+
+        LOGGER.info("Constructed " + entityClasses.size() + " entity models in "
+                + (System.currentTimeMillis() - start) + " ms");
+
+        if (snapshot != null) {
+            snapshot.write(cache.values());
+        }
+    }
+
     /**
      * Check if a certain entity model has already been processed
      * 
@@ -708,7 +954,7 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
      */
     private void setAnnotationOverrides(Class<?> parentClass, AttributeModelImpl model,
             PropertyDescriptor descriptor, boolean nested) {
-        Attribute attribute = ClassUtils.getAnnotation(parentClass, descriptor.getName(),
+        Attribute attribute = getAnnotation(parentClass, descriptor.getName(),
                 Attribute.class);
 
         // overwrite with annotation values
@@ -878,6 +1124,33 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
         }
     }
 
+    /**
+     * Sets the cache settings on an entity model, based on the annotation and the message bundle
+     * 
+     * @param model
+     *            the entity model
+     * @param annot
+     *            the Model annotation (may be <code>null</code>)
+     * @param reference
+     *            the reference of the entity model
+     */
+    private <T> void setCacheSettings(EntityModelImpl<T> model, Model annot, String reference) {
+        if (annot != null) {
+            model.setCacheSize(annot.cacheSize());
+            model.setCacheExpiry(annot.cacheExpiry());
+        }
+
+        String msg = getEntityMessage(reference, EntityModel.CACHE_SIZE);
+        if (!StringUtils.isEmpty(msg)) {
+            model.setCacheSize(Integer.parseInt(msg));
+        }
+
+        msg = getEntityMessage(reference, EntityModel.CACHE_EXPIRY);
+        if (!StringUtils.isEmpty(msg)) {
+            model.setCacheExpiry(Integer.parseInt(msg));
+        }
+    }
+
     /**
      * Sets the default value on the attribute model (translates a String to the appropriate type)
      * 
@@ -1132,6 +1405,16 @@ public class EntityModelFactoryImpl implements EntityModelFactory {
         }
     }
 
+    /**
+     * Sets the snapshot from which models are read and to which they are written after warm-up
+     * 
+     * @param snapshot
+     *            the snapshot
+     */
+    public void setSnapshot(EntityModelSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
     /**
      * Sets the sort order on an entity model
      * 
@@ -13,6 +13,7 @@
  */
 package com.ocs.dynamo.domain.model.impl;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -34,11 +35,17 @@ import com.ocs.dynamo.utils.ClassUtils;
  * @param <T>
  *            the class of the entity
  */
-public class EntityModelImpl<T> implements EntityModel<T> {
+public class EntityModelImpl<T> implements EntityModel<T>, Serializable {
+
+    private static final long serialVersionUID = -1604546357853264815L;
 
     // use a linked hash map to guarantee the ordering
     private final Map<String, List<AttributeModel>> attributeModels = new LinkedHashMap<>();
 
+    private int cacheExpiry;
+
+    private int cacheSize;
+
     private final String description;
 
     private final String displayName;
@@ -166,6 +173,16 @@ public class EntityModelImpl<T> implements EntityModel<T> {
         return result;
     }
 
+    @Override
+    public int getCacheExpiry() {
+        return cacheExpiry;
+    }
+
+    @Override
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
     @Override
     public String getDescription() {
         return description;
@@ -245,6 +262,14 @@ public class EntityModelImpl<T> implements EntityModel<T> {
         this.idAttributeModel = idAttributeModel;
     }
 
+    public void setCacheExpiry(int cacheExpiry) {
+        this.cacheExpiry = cacheExpiry;
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
     @Override
     public String toString() {
         return ReflectionToStringBuilder.toStringExclude(this, "attributeModels");
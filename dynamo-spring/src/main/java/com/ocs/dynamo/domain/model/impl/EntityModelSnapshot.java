@@ -0,0 +1,539 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.domain.model.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.springframework.context.HierarchicalMessageSource;
+import org.springframework.context.MessageSource;
+import org.springframework.context.support.AbstractResourceBasedMessageSource;
+import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+import com.ocs.dynamo.domain.model.AttributeModel;
+import com.ocs.dynamo.domain.model.EntityModel;
+import com.ocs.dynamo.domain.model.annotation.Attribute;
+import com.ocs.dynamo.domain.model.annotation.Model;
+import com.ocs.dynamo.exception.OCSRuntimeException;
+import com.ocs.dynamo.utils.SystemPropertyUtils;
+
+/**
+ * A binary snapshot of constructed entity models that is stored on disk, so that the models do
+ * not have to be constructed again after a restart. Every model in the snapshot is stored along
+ * with a digest of the class files of the classes it was constructed from and is only used when
+ * these have not changed. The message bundles that provide the overrides for the models are part
+ * of the digest of the snapshot as a whole, so that the messages do not have to be resolved for
+ * every model
+ * 
+ * @author bas.rutten
+ */
+public class EntityModelSnapshot {
+
+    private static final Logger LOGGER = Logger.getLogger(EntityModelSnapshot.class);
+
+    private static final int MAGIC = 0x44594d53;
+
+    private static final int VERSION = 3;
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    /**
+     * The classes that determine how models are constructed and stored - when any of these
+     * changes, the entire snapshot is discarded
+     */
+    private static final Class<?>[] FACTORY_CLASSES = new Class<?>[] {
+            EntityModelFactoryImpl.class, EntityModelImpl.class, AttributeModelImpl.class,
+            Attribute.class, Model.class };
+
+    private static final String PROPERTIES_SUFFIX = ".properties";
+
+    private static final String XML_SUFFIX = ".xml";
+
+    private final File file;
+
+    private final MessageSource messageSource;
+
+    private final ClassLoader classLoader;
+
+    private final ConcurrentMap<String, byte[]> classDigests = new ConcurrentHashMap<>();
+
+    private final Map<String, SnapshotEntry> entries = new HashMap<>();
+
+    private ByteBuffer buffer;
+
+    /**
+     * Constructor - reads the index of an existing snapshot file
+     * 
+     * @param file
+     *            the snapshot file
+     * @param messageSource
+     *            the message source from which the factory reads the entity model overrides
+     */
+    public EntityModelSnapshot(File file, MessageSource messageSource) {
+        this.file = file;
+        this.classLoader = getClassLoader();
+        this.messageSource = messageSource;
+        open();
+    }
+
+    /**
+     * Collects the names of the classes from which a model was constructed
+     * 
+     * @param model
+     *            the model
+     * @return
+     */
+    private static Set<String> collectClassNames(EntityModel<?> model) {
+        Set<String> names = new TreeSet<>();
+        addClassNames(model.getEntityClass(), names);
+        for (AttributeModel am : model.getAttributeModels()) {
+            addClassNames(am.getType(), names);
+            addClassNames(am.getMemberType(), names);
+        }
+        return names;
+    }
+
+    private static void addClassNames(Class<?> clazz, Set<String> names) {
+        Class<?> current = clazz;
+        while (current != null && !current.isPrimitive() && !current.isArray()
+                && !current.getName().startsWith("java.")) {
+            names.add(current.getName());
+            current = current.getSuperclass();
+        }
+    }
+
+    private static ClassLoader getClassLoader() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        return loader != null ? loader : EntityModelSnapshot.class.getClassLoader();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Calculates the digest of the inputs of a model
+     * 
+     * @param classNames
+     *            the names of the classes from which the model was constructed
+     * @return
+     */
+    private byte[] digest(Collection<String> classNames) {
+        MessageDigest digest = newDigest();
+        for (String name : classNames) {
+            digest.update(name.getBytes(StandardCharsets.UTF_8));
+            digest.update(getClassDigest(name));
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Adds the message bundles of a message source and of its parents to a digest. Only the
+     * bundles for the default locale and its fallbacks are considered, since the models are
+     * constructed using the default locale
+     * 
+     * @param digest
+     *            the digest
+     * @param source
+     *            the message source
+     * @return <code>false</code> if the bundles of the message source can not be determined
+     */
+    private boolean digestMessageSource(MessageDigest digest, MessageSource source) {
+        if (source == null) {
+            return true;
+        }
+        if (!(source instanceof AbstractResourceBasedMessageSource)) {
+            return false;
+        }
+
+        AbstractResourceBasedMessageSource resourceSource =
+                (AbstractResourceBasedMessageSource) source;
+        boolean reloadable = source instanceof ReloadableResourceBundleMessageSource;
+        ResourceLoader loader = new DefaultResourceLoader(classLoader);
+        for (String basename : resourceSource.getBasenameSet()) {
+            // a resource bundle basename is a class name, a reloadable one is a resource location
+            String location = reloadable ? basename : basename.replace('.', '/');
+            for (String suffix : getLocaleSuffixes(Locale.getDefault())) {
+                digestResource(digest, loader.getResource(location + suffix + PROPERTIES_SUFFIX));
+                if (reloadable) {
+                    digestResource(digest, loader.getResource(location + suffix + XML_SUFFIX));
+                }
+            }
+        }
+        if (source instanceof HierarchicalMessageSource) {
+            return digestMessageSource(digest,
+                    ((HierarchicalMessageSource) source).getParentMessageSource());
+        }
+        return true;
+    }
+
+    /**
+     * Adds the URL and the contents of a resource to a digest, if the resource exists
+     * 
+     * @param digest
+     *            the digest
+     * @param resource
+     *            the resource
+     */
+    private static void digestResource(MessageDigest digest, Resource resource) {
+        if (!resource.exists()) {
+            return;
+        }
+        try (InputStream in = resource.getInputStream()) {
+            update(digest, "bundle", resource.getURL().toString());
+            byte[] bytes = new byte[4096];
+            int read = in.read(bytes);
+            while (read >= 0) {
+                digest.update(bytes, 0, read);
+                read = in.read(bytes);
+            }
+        } catch (IOException ex) {
+            throw new OCSRuntimeException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Returns the suffixes of the bundles that are consulted for a locale, from the most to the
+     * least specific one
+     * 
+     * @param locale
+     *            the locale
+     * @return
+     */
+    private static List<String> getLocaleSuffixes(Locale locale) {
+        List<String> suffixes = new ArrayList<>();
+        if (!locale.getVariant().isEmpty()) {
+            suffixes.add("_" + locale.getLanguage() + "_" + locale.getCountry() + "_"
+                    + locale.getVariant());
+        }
+        if (!locale.getCountry().isEmpty()) {
+            suffixes.add("_" + locale.getLanguage() + "_" + locale.getCountry());
+        }
+        if (!locale.getLanguage().isEmpty()) {
+            suffixes.add("_" + locale.getLanguage());
+        }
+        suffixes.add("");
+        return suffixes;
+    }
+
+    /**
+     * Returns the digest of the class file of a class
+     * 
+     * @param className
+     *            the name of the class
+     * @return
+     */
+    private byte[] getClassDigest(String className) {
+        byte[] result = classDigests.get(className);
+        if (result == null) {
+            MessageDigest digest = newDigest();
+            try (InputStream in = classLoader.getResourceAsStream(className.replace('.', '/')
+                    + ".class")) {
+                if (in != null) {
+                    byte[] bytes = new byte[4096];
+                    int read = in.read(bytes);
+                    while (read >= 0) {
+                        digest.update(bytes, 0, read);
+                        read = in.read(bytes);
+                    }
+                }
+            } catch (IOException ex) {
+                throw new OCSRuntimeException(ex.getMessage(), ex);
+            }
+            result = digest.digest();
+            classDigests.putIfAbsent(className, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the digest that identifies the version of the factory, the current locale, the
+     * system properties that provide the defaults for the attribute models and the message bundles
+     * that provide the overrides
+     * 
+     * @return the digest, or <code>null</code> if the message bundles can not be determined
+     */
+    private byte[] getHeaderDigest() {
+        MessageDigest digest = newDigest();
+        update(digest, "locale", Locale.getDefault().toString());
+        update(digest, "precision", Integer.toString(SystemPropertyUtils
+                .getDefaultDecimalPrecision()));
+        update(digest, "date", SystemPropertyUtils.getDefaultDateFormat());
+        update(digest, "time", SystemPropertyUtils.getDefaultTimeFormat());
+        update(digest, "dateTime", SystemPropertyUtils.getDefaultDateTimeFormat());
+        for (Class<?> clazz : FACTORY_CLASSES) {
+            digest.update(getClassDigest(clazz.getName()));
+        }
+        if (!digestMessageSource(digest, messageSource)) {
+            return null;
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Loads a model from the snapshot
+     * 
+     * @param reference
+     *            the reference of the model
+     * @param entityClass
+     *            the entity class
+     * @return the model, or <code>null</code> if the snapshot does not contain the model or if its
+     *         inputs have changed since the snapshot was written. Nested entity models still have
+     *         to be resolved by the caller
+     */
+    @SuppressWarnings("unchecked")
+    public <T> EntityModelImpl<T> load(String reference, final Class<T> entityClass) {
+        SnapshotEntry entry;
+        ByteBuffer source;
+        synchronized (this) {
+            entry = entries.get(reference);
+            source = buffer == null ? null : buffer.duplicate();
+        }
+        if (entry == null || source == null
+                || !entry.entityClassName.equals(entityClass.getName())) {
+            return null;
+        }
+        if (!Arrays.equals(entry.digest, digest(entry.classNames))) {
+            LOGGER.debug("Entity model " + reference + " has changed, constructing it again");
+            return null;
+        }
+
+        byte[] data = new byte[entry.length];
+        source.position(entry.offset);
+        source.get(data);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data)) {
+
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException,
+                    ClassNotFoundException {
+                try {
+                    return Class.forName(desc.getName(), false, entityClass.getClassLoader());
+                } catch (ClassNotFoundException ex) {
+                    return super.resolveClass(desc);
+                }
+            }
+        }) {
+            return (EntityModelImpl<T>) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            LOGGER.debug("Could not read entity model " + reference + " from snapshot", ex);
+            return null;
+        }
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new OCSRuntimeException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Reads the snapshot file and its index. The models themselves are only deserialized when
+     * they are requested. The file is read into memory rather than mapped, so that it is not
+     * locked and can be replaced by a new snapshot
+     */
+    private synchronized void open() {
+        entries.clear();
+        buffer = null;
+        if (!file.isFile()) {
+            return;
+        }
+
+        try {
+            ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (contents.getInt() != MAGIC || contents.getInt() != VERSION) {
+                LOGGER.info("Ignoring entity model snapshot " + file + " with unknown format");
+                return;
+            }
+            byte[] header = new byte[contents.getInt()];
+            contents.get(header);
+            byte[] current = getHeaderDigest();
+            if (current == null) {
+                LOGGER.info("Ignoring entity model snapshot " + file
+                        + " since the message bundles can not be determined");
+                return;
+            }
+            if (!Arrays.equals(header, current)) {
+                LOGGER.info("Ignoring outdated entity model snapshot " + file);
+                return;
+            }
+
+            int count = contents.getInt();
+            for (int i = 0; i < count; i++) {
+                SnapshotEntry entry = new SnapshotEntry();
+                String reference = readString(contents);
+                entry.entityClassName = readString(contents);
+                int classCount = contents.getInt();
+                for (int j = 0; j < classCount; j++) {
+                    entry.classNames.add(readString(contents));
+                }
+                entry.digest = new byte[contents.getInt()];
+                contents.get(entry.digest);
+                entry.length = contents.getInt();
+                entry.offset = contents.position();
+                contents.position(entry.offset + entry.length);
+                entries.put(reference, entry);
+            }
+            buffer = contents;
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Could not read entity model snapshot " + file + ": " + ex.getMessage(),
+                    ex);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the provided models, replacing the existing snapshot file
+     * 
+     * @param models
+     *            the models to write
+     */
+    public void write(Collection<EntityModel<?>> models) {
+        byte[] header = getHeaderDigest();
+        if (header == null) {
+            LOGGER.info("Not writing entity model snapshot " + file
+                    + " since the message bundles can not be determined");
+            return;
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            for (EntityModel<?> model : models) {
+                byte[] data = serialize(model);
+                if (data != null) {
+                    Set<String> classNames = collectClassNames(model);
+                    writeString(out, model.getReference());
+                    writeString(out, model.getEntityClass().getName());
+                    out.writeInt(classNames.size());
+                    for (String name : classNames) {
+                        writeString(out, name);
+                    }
+                    byte[] digest = digest(classNames);
+                    out.writeInt(digest.length);
+                    out.write(digest);
+                    out.writeInt(data.length);
+                    out.write(data);
+                    count++;
+                }
+            }
+        } catch (IOException ex) {
+            throw new OCSRuntimeException(ex.getMessage(), ex);
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(header.length);
+                out.write(header);
+                out.writeInt(count);
+                body.writeTo(out);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            LOGGER.info("Wrote snapshot of " + count + " entity models to " + file);
+        } catch (IOException ex) {
+            LOGGER.warn("Could not write entity model snapshot " + file + ": " + ex.getMessage(),
+                    ex);
+        }
+    }
+
+    /**
+     * Serializes a single model
+     * 
+     * @param model
+     *            the model
+     * @return the serialized model, or <code>null</code> if the model can not be serialized (e.g.
+     *         because it has a default value that is not serializable)
+     */
+    private byte[] serialize(EntityModel<?> model) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(model);
+        } catch (IOException ex) {
+            LOGGER.debug("Could not add entity model " + model.getReference() + " to snapshot", ex);
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Adds a key and its value (which may be <code>null</code>) to a digest
+     * 
+     * @param digest
+     *            the digest
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    private static void update(MessageDigest digest, String key, String value) {
+        digest.update((key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * An entry in the index of the snapshot
+     */
+    private static final class SnapshotEntry {
+
+        private String entityClassName;
+
+        private List<String> classNames = new ArrayList<>();
+
+        private byte[] digest;
+
+        private int offset;
+
+        private int length;
+    }
+}
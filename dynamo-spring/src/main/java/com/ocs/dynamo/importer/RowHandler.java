@@ -0,0 +1,35 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.importer;
+
+/**
+ * Callback that receives the rows of an input file one by one while the file is being read, so
+ * that the file never has to be held in memory in its entirety
+ * 
+ * @author bas.rutten
+ * @param <R>
+ *            the type of a single row
+ */
+public interface RowHandler<R> {
+
+    /**
+     * Handles a single row
+     * 
+     * @param rowNum
+     *            the (zero-based) index of the row in the file
+     * @param row
+     *            the row
+     */
+    void handle(int rowNum, R row);
+}
@@ -13,7 +13,10 @@
  */
 package com.ocs.dynamo.importer.impl;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.List;
 
@@ -21,6 +24,7 @@ import org.apache.commons.io.input.CharSequenceReader;
 
 import com.ocs.dynamo.constants.DynamoConstants;
 import com.ocs.dynamo.exception.OCSImportException;
+import com.ocs.dynamo.importer.RowHandler;
 
 import au.com.bytecode.opencsv.CSVReader;
 
@@ -32,12 +36,13 @@ import au.com.bytecode.opencsv.CSVReader;
 public class BaseCsvImporter extends BaseTextImporter {
 
     /**
-     * Counts the number of rows in the file
+     * Estimates the number of rows in the file from its size, rather than parsing the file twice.
+     * The number is intended for progress reporting: it is exact for small files, but a value that
+     * contains a line break counts as two rows
      */
     @Override
     public int countRows(byte[] bytes, int row, int column) {
-        List<String[]> lines = readCsvFile(bytes, ";", "'");
-        return lines.size();
+        return estimateRows(bytes);
     }
 
     /**
@@ -56,4 +61,36 @@ public class BaseCsvImporter extends BaseTextImporter {
             throw new OCSImportException(ex.getMessage(), ex);
         }
     }
+
+    /**
+     * Reads a CSV file from a stream and passes the rows to a handler one by one, without keeping
+     * the file in memory. The stream is not closed
+     * 
+     * @param in
+     *            the input stream
+     * @param separator
+     *            the field separator
+     * @param quote
+     *            the quote character
+     * @param handler
+     *            the handler that receives the rows
+     * @return the number of rows that was read
+     */
+    @SuppressWarnings("resource")
+    public int readCsvFile(InputStream in, String separator, String quote,
+            RowHandler<String[]> handler) {
+        CSVReader reader = new CSVReader(new BufferedReader(new InputStreamReader(in,
+                Charset.forName(DynamoConstants.UTF_8))), separator.charAt(0), quote.charAt(0));
+        try {
+            int rowNum = 0;
+            String[] row = reader.readNext();
+            while (row != null) {
+                handler.handle(rowNum++, row);
+                row = reader.readNext();
+            }
+            return rowNum;
+        } catch (IOException ex) {
+            throw new OCSImportException(ex.getMessage(), ex);
+        }
+    }
 }
@@ -14,8 +14,8 @@
 package com.ocs.dynamo.importer.impl;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
@@ -24,6 +24,7 @@ import org.apache.commons.io.input.CharSequenceReader;
 
 import com.ocs.dynamo.constants.DynamoConstants;
 import com.ocs.dynamo.exception.OCSImportException;
+import com.ocs.dynamo.importer.RowHandler;
 
 /**
  * Base class for Importers that can be used to import fixed length files
@@ -33,7 +34,8 @@ import com.ocs.dynamo.exception.OCSImportException;
 public class BaseFixedLengthImporter extends BaseTextImporter {
 
     /**
-     * Counts the number of rows in the file
+     * Estimates the number of rows in the file from its size, rather than reading every line. The
+     * number is intended for progress reporting and is exact for small files
      * 
      * @param bytes
      *            the content of the file
@@ -44,19 +46,7 @@ public class BaseFixedLengthImporter extends BaseTextImporter {
      */
     @Override
     public int countRows(byte[] bytes, int row, int column) {
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(new ByteArrayInputStream(bytes)))) {
-            int count = 0;
-
-            String line = reader.readLine();
-            while (line != null) {
-                count++;
-                line = reader.readLine();
-            }
-            return count;
-        } catch (IOException ex) {
-            throw new OCSImportException(ex.getMessage(), ex);
-        }
+        return estimateRows(bytes);
     }
 
     /**
@@ -95,21 +85,7 @@ public class BaseFixedLengthImporter extends BaseTextImporter {
 
             String line = reader.readLine();
             while (line != null) {
-                List<String> temp = new ArrayList<>();
-                int start = 0;
-                for (Integer len : fieldLengths) {
-                    if (start + len <= line.length()) {
-                        // there is space
-                        String field = line.substring(start, start + len);
-                        temp.add(field.trim());
-                    } else if (start <= line.length()) {
-                        String field = line.substring(start, line.length());
-                        temp.add(field.trim());
-                    }
-                    start += len;
-                }
-
-                result.add(temp.toArray(new String[0]));
+                result.add(splitLine(line, fieldLengths));
                 line = reader.readLine();
             }
 
@@ -118,4 +94,58 @@ public class BaseFixedLengthImporter extends BaseTextImporter {
             throw new OCSImportException(ex.getMessage(), ex);
         }
     }
+
+    /**
+     * Reads a fixed length file from a stream and passes the rows to a handler one by one, without
+     * keeping the file in memory. The stream is not closed
+     * 
+     * @param in
+     *            the input stream
+     * @param fieldLengths
+     *            the lengths of the fields
+     * @param handler
+     *            the handler that receives the rows
+     * @return the number of rows that was read
+     */
+    public int readFixedLengthFile(InputStream in, List<Integer> fieldLengths,
+            RowHandler<String[]> handler) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+                    DynamoConstants.UTF_8));
+            int rowNum = 0;
+            String line = reader.readLine();
+            while (line != null) {
+                handler.handle(rowNum++, splitLine(line, fieldLengths));
+                line = reader.readLine();
+            }
+            return rowNum;
+        } catch (IOException ex) {
+            throw new OCSImportException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Splits a line into fields of fixed lengths. A field that does not fit on the line is
+     * truncated, and fields that start after the end of the line are left out
+     * 
+     * @param line
+     *            the line
+     * @param fieldLengths
+     *            the lengths of the fields
+     * @return
+     */
+    protected String[] splitLine(String line, List<Integer> fieldLengths) {
+        List<String> temp = new ArrayList<>(fieldLengths.size());
+        int start = 0;
+        for (Integer len : fieldLengths) {
+            if (start + len <= line.length()) {
+                // there is space
+                temp.add(line.substring(start, start + len).trim());
+            } else if (start <= line.length()) {
+                temp.add(line.substring(start, line.length()).trim());
+            }
+            start += len;
+        }
+        return temp.toArray(new String[temp.size()]);
+    }
 }
@@ -14,7 +14,11 @@
 package com.ocs.dynamo.importer.impl;
 
 import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.springframework.beans.BeanUtils;
 import org.springframework.util.StringUtils;
@@ -23,6 +27,7 @@ import com.ocs.dynamo.exception.OCSImportException;
 import com.ocs.dynamo.importer.XlsField;
 import com.ocs.dynamo.importer.dto.AbstractDTO;
 import com.ocs.dynamo.utils.ClassUtils;
+import com.ocs.dynamo.utils.PropertyAccessor;
 
 /**
  * Base class for smart upload functionality
@@ -37,9 +42,22 @@ public abstract class BaseImporter<R, U> {
 
     private static final double PERCENTAGE_FACTOR = 100.;
 
+    /**
+     * The mapping plans, compiled once per DTO class
+     */
+    private static final ClassValue<RowMapping<?>> MAPPINGS = new ClassValue<RowMapping<?>>() {
+
+        @Override
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        protected RowMapping<?> computeValue(Class<?> type) {
+            return new RowMapping(type);
+        }
+    };
+
     /**
      * Counts the number of rows in the input. This method will count all rows, including the
-     * header, and will not check if any of the rows are valid
+     * header, and will not check if any of the rows are valid. Text based importers estimate the
+     * number of rows from the size of large inputs instead of reading them twice
      * 
      * @param bytes
      * @param row
@@ -59,59 +77,63 @@ public abstract class BaseImporter<R, U> {
     protected abstract Boolean getBooleanValueWithDefault(U unit, XlsField field);
 
     @SuppressWarnings("unchecked")
-    private Object getFieldValue(PropertyDescriptor d, U unit, XlsField field) {
+    private Object getFieldValue(FieldMapping mapping, U unit) {
+        XlsField field = mapping.field;
         Object obj = null;
-        if (String.class.equals(d.getPropertyType())) {
+        switch (mapping.kind) {
+        case STRING:
             String value = getStringValueWithDefault(unit, field);
             if (value != null) {
                 value = value.trim();
             }
             obj = StringUtils.isEmpty(value) ? null : value;
-        } else if (d.getPropertyType().isEnum()) {
-            String value = getStringValueWithDefault(unit, field);
-            if (value != null) {
-                value = value.trim();
+            break;
+        case ENUM:
+            String enumValue = getStringValueWithDefault(unit, field);
+            if (enumValue != null) {
+                enumValue = enumValue.trim();
                 try {
-                    obj = Enum.valueOf(d.getPropertyType().asSubclass(Enum.class),
-                            value.toUpperCase());
+                    obj = Enum.valueOf(mapping.type.asSubclass(Enum.class),
+                            enumValue.toUpperCase());
                 } catch (IllegalArgumentException ex) {
-                    throw new OCSImportException("Value " + value
+                    throw new OCSImportException("Value " + enumValue
                             + " cannot be translated to a valid enumeration value", ex);
                 }
             }
+            break;
+        case INTEGER:
+        case BIG_DECIMAL:
+        case NUMBER:
+            Double number = getNumericValueWithDefault(unit, field);
+            if (number != null) {
 
-        } else if (Number.class.isAssignableFrom(d.getPropertyType())) {
-            // numeric field
-
-            Double value = getNumericValueWithDefault(unit, field);
-            if (value != null) {
-
-                // if the field represents a percentage but it is
-                // received as a
-                // fraction, we multiply it by 100
-                if (field.percentage()) {
-                    if (isPercentageCorrectionSupported()) {
-                        value = PERCENTAGE_FACTOR * value;
-                    }
+                // if the field represents a percentage but it is received as a fraction, we
+                // multiply it by 100
+                if (field.percentage() && isPercentageCorrectionSupported()) {
+                    number = PERCENTAGE_FACTOR * number;
                 }
 
                 // illegal negative value
-                if (field.cannotBeNegative() && value < 0.0) {
-                    throw new OCSImportException("Negative value " + value + " found for field '"
-                            + d.getName() + "'");
+                if (field.cannotBeNegative() && number < 0.0) {
+                    throw new OCSImportException("Negative value " + number + " found for field '"
+                            + mapping.name + "'");
                 }
 
-                if (Integer.class.equals(d.getPropertyType())) {
-                    obj = new Integer(value.intValue());
-                } else if (BigDecimal.class.equals(d.getPropertyType())) {
-                    obj = BigDecimal.valueOf(value.doubleValue());
+                if (mapping.kind == ValueKind.INTEGER) {
+                    obj = Integer.valueOf(number.intValue());
+                } else if (mapping.kind == ValueKind.BIG_DECIMAL) {
+                    obj = BigDecimal.valueOf(number.doubleValue());
                 } else {
                     // by default, use a double
-                    obj = value;
+                    obj = number;
                 }
             }
-        } else if (Boolean.class.isAssignableFrom(d.getPropertyType())) {
-            return getBooleanValueWithDefault(unit, field);
+            break;
+        case BOOLEAN:
+            obj = getBooleanValueWithDefault(unit, field);
+            break;
+        default:
+            break;
         }
         return obj;
     }
@@ -170,30 +192,114 @@ public abstract class BaseImporter<R, U> {
      * @return
      */
     public <T extends AbstractDTO> T processRow(int rowNum, R row, Class<T> clazz) {
-        T t = ClassUtils.instantiateClass(clazz);
+        @SuppressWarnings("unchecked")
+        RowMapping<T> mapping = (RowMapping<T>) MAPPINGS.get(clazz);
+
+        T t = mapping.newInstance();
         t.setRowNum(rowNum);
 
-        PropertyDescriptor[] descriptors = BeanUtils.getPropertyDescriptors(clazz);
-        for (PropertyDescriptor d : descriptors) {
-            XlsField field = ClassUtils.getAnnotation(clazz, d.getName(), XlsField.class);
-            if (field != null) {
-                if (isWithinRange(row, field)) {
-                    U unit = getUnit(row, field);
-
-                    Object obj = getFieldValue(d, unit, field);
-                    if (obj != null) {
-                        ClassUtils.setFieldValue(t, d.getName(), obj);
-                    } else if (field.required()) {
-                        // a required value is missing!
-                        throw new OCSImportException("Required value for field '" + d.getName()
-                                + "' is missing");
-                    }
-                } else {
-                    throw new OCSImportException("Row doesn't have enough columns");
+        for (FieldMapping fieldMapping : mapping.fields) {
+            if (isWithinRange(row, fieldMapping.field)) {
+                U unit = getUnit(row, fieldMapping.field);
+
+                Object obj = getFieldValue(fieldMapping, unit);
+                if (obj != null) {
+                    fieldMapping.accessor.setValue(t, obj);
+                } else if (fieldMapping.field.required()) {
+                    // a required value is missing!
+                    throw new OCSImportException("Required value for field '" + fieldMapping.name
+                            + "' is missing");
                 }
+            } else {
+                throw new OCSImportException("Row doesn't have enough columns");
             }
         }
 
         return t;
     }
+
+    /**
+     * The way in which the value of a field is read from the input
+     */
+    private enum ValueKind {
+        STRING, ENUM, INTEGER, BIG_DECIMAL, NUMBER, BOOLEAN, NONE;
+
+        static ValueKind forType(Class<?> type) {
+            if (String.class.equals(type)) {
+                return STRING;
+            } else if (type.isEnum()) {
+                return ENUM;
+            } else if (Integer.class.equals(type)) {
+                return INTEGER;
+            } else if (BigDecimal.class.equals(type)) {
+                return BIG_DECIMAL;
+            } else if (Number.class.isAssignableFrom(type)) {
+                return NUMBER;
+            } else if (Boolean.class.isAssignableFrom(type)) {
+                return BOOLEAN;
+            }
+            return NONE;
+        }
+    }
+
+    /**
+     * The mapping of a single property of a DTO to a field in the input
+     */
+    private static final class FieldMapping {
+
+        private final String name;
+
+        private final Class<?> type;
+
+        private final XlsField field;
+
+        private final ValueKind kind;
+
+        private final PropertyAccessor accessor;
+
+        FieldMapping(Class<?> clazz, PropertyDescriptor descriptor, XlsField field) {
+            this.name = descriptor.getName();
+            this.type = descriptor.getPropertyType();
+            this.field = field;
+            this.kind = ValueKind.forType(type);
+            this.accessor = PropertyAccessor.forPath(clazz, name);
+        }
+    }
+
+    /**
+     * The mapping of all annotated properties of a DTO class. This is determined once per class so
+     * that processing a row does not require any reflective lookups
+     * 
+     * @param <T>
+     *            the type of the DTO
+     */
+    private static final class RowMapping<T> {
+
+        private final Class<T> clazz;
+
+        private final Constructor<T> constructor;
+
+        private final List<FieldMapping> fields;
+
+        RowMapping(Class<T> clazz) {
+            this.clazz = clazz;
+            this.constructor = ClassUtils.getConstructor(clazz);
+
+            List<FieldMapping> list = new ArrayList<>();
+            for (PropertyDescriptor d : BeanUtils.getPropertyDescriptors(clazz)) {
+                XlsField field = ClassUtils.getAnnotation(clazz, d.getName(), XlsField.class);
+                if (field != null) {
+                    list.add(new FieldMapping(clazz, d, field));
+                }
+            }
+            this.fields = Collections.unmodifiableList(list);
+        }
+
+        T newInstance() {
+            if (constructor == null) {
+                throw new OCSImportException("Cannot instantiate " + clazz.getName());
+            }
+            return BeanUtils.instantiateClass(constructor);
+        }
+    }
 }
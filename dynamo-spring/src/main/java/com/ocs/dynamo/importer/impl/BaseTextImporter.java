@@ -13,6 +13,11 @@
  */
 package com.ocs.dynamo.importer.impl;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 import org.springframework.util.StringUtils;
 
 import com.ocs.dynamo.exception.OCSImportException;
@@ -25,6 +30,79 @@ import com.ocs.dynamo.importer.XlsField;
  */
 public abstract class BaseTextImporter extends BaseImporter<String[], String> {
 
+    /**
+     * The number of bytes that is inspected when estimating the number of rows in a file
+     */
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    /**
+     * Estimates the number of rows in a file based on the number of line breaks in its first
+     * bytes and the size of the file, without reading the entire file. This is intended for
+     * progress reporting only
+     * 
+     * @param file
+     *            the file
+     * @return
+     */
+    public int estimateRows(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] sample = new byte[(int) Math.min(SAMPLE_SIZE, file.length())];
+            int read = 0;
+            while (read < sample.length) {
+                int r = in.read(sample, read, sample.length - read);
+                if (r < 0) {
+                    break;
+                }
+                read += r;
+            }
+            return estimateRows(sample, read, file.length());
+        } catch (IOException ex) {
+            throw new OCSImportException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Estimates the number of rows in the content of a file based on the number of line breaks in
+     * its first bytes, without inspecting the entire content. The estimate is exact when the
+     * content is smaller than the sample size
+     * 
+     * @param bytes
+     *            the content of the file
+     * @return
+     */
+    public int estimateRows(byte[] bytes) {
+        return estimateRows(bytes, Math.min(SAMPLE_SIZE, bytes.length), bytes.length);
+    }
+
+    /**
+     * Estimates the number of rows in a file based on the number of line breaks in a sample taken
+     * from the start of the file
+     * 
+     * @param sample
+     *            the sample
+     * @param length
+     *            the number of bytes in the sample
+     * @param totalSize
+     *            the total size of the file in bytes
+     * @return
+     */
+    public static int estimateRows(byte[] sample, int length, long totalSize) {
+        int lineBreaks = 0;
+        for (int i = 0; i < length; i++) {
+            if (sample[i] == '\n') {
+                lineBreaks++;
+            }
+        }
+        if (length == 0) {
+            return 0;
+        } else if (length >= totalSize) {
+            // the sample is the entire file, a last line does not need a line break
+            return sample[length - 1] == '\n' ? lineBreaks : lineBreaks + 1;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.round((double) Math.max(1, lineBreaks)
+                * totalSize / length));
+    }
+
     /**
      * Extracts a boolean value
      * 
@@ -14,9 +14,13 @@
 package com.ocs.dynamo.importer.impl;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Iterator;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.poifs.filesystem.OfficeXmlFileException;
 import org.apache.poi.ss.usermodel.Cell;
@@ -29,7 +33,9 @@ import org.springframework.util.StringUtils;
 import com.monitorjbl.xlsx.StreamingReader;
 import com.ocs.dynamo.exception.OCSImportException;
 import com.ocs.dynamo.exception.OCSRuntimeException;
+import com.ocs.dynamo.importer.RowHandler;
 import com.ocs.dynamo.importer.XlsField;
+import com.ocs.dynamo.utils.SystemPropertyUtils;
 
 /**
  * Base class for services that can be used to import Excel files.
@@ -38,6 +44,22 @@ import com.ocs.dynamo.importer.XlsField;
  */
 public class BaseXlsImporter extends BaseImporter<Row, Cell> {
 
+    /**
+     * The size of the buffer that is used when reading the XML of a streamed sheet
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * The signature of an OLE2 (old style Excel) file
+     */
+    private static final byte[] OLE2_SIGNATURE = { (byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0,
+            (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1 };
+
+    /**
+     * The number of rows that is kept in memory when streaming an .xlsx file
+     */
+    private int rowCacheSize = SystemPropertyUtils.getXlsRowCacheSize();
+
     /**
      * Checks if any cell in the row contains a certain (String) value
      * 
@@ -65,6 +87,24 @@ public class BaseXlsImporter extends BaseImporter<Row, Cell> {
 
     @Override
     public int countRows(byte[] bytes, int row, int column) {
+        if (!isOle2(bytes)) {
+            // stream the sheet rather than building the complete workbook
+            StreamingReader reader = createReader(bytes, rowCacheSize);
+            try {
+                int first = -1;
+                int last = -1;
+                for (Row r : reader) {
+                    if (first < 0) {
+                        first = r.getRowNum();
+                    }
+                    last = r.getRowNum();
+                }
+                return first < 0 ? 0 : last - first + 1;
+            } finally {
+                reader.close();
+            }
+        }
+
         Workbook wb = createWorkbook(bytes);
         if (wb.getNumberOfSheets() == 0) {
             return 0;
@@ -84,8 +124,22 @@ public class BaseXlsImporter extends BaseImporter<Row, Cell> {
      * @return
      */
     public StreamingReader createReader(byte[] bytes, int cacheSize) {
-        return StreamingReader.builder().rowCacheSize(cacheSize).sheetIndex(0)
-                .read(new ByteArrayInputStream(bytes));
+        return StreamingReader.builder().rowCacheSize(cacheSize).bufferSize(BUFFER_SIZE)
+                .sheetIndex(0).read(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Creates a reader for processing an Excel file using streaming
+     * 
+     * @param file
+     *            the file
+     * @param cacheSize
+     *            the cache size
+     * @return
+     */
+    public StreamingReader createReader(File file, int cacheSize) {
+        return StreamingReader.builder().rowCacheSize(cacheSize).bufferSize(BUFFER_SIZE)
+                .sheetIndex(0).read(file);
     }
 
     /**
@@ -223,11 +277,68 @@ public class BaseXlsImporter extends BaseImporter<Row, Cell> {
         return value;
     }
 
+    public int getRowCacheSize() {
+        return rowCacheSize;
+    }
+
     @Override
     protected Cell getUnit(Row row, XlsField field) {
         return row.getCell(row.getFirstCellNum() + field.index());
     }
 
+    /**
+     * Passes the rows to a handler
+     * 
+     * @param rows
+     *            the rows
+     * @param handler
+     *            the handler
+     * @return the number of rows
+     */
+    private int handleRows(Iterable<Row> rows, RowHandler<Row> handler) {
+        int count = 0;
+        for (Row row : rows) {
+            handler.handle(row.getRowNum(), row);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether a file starts with the signature of an OLE2 (.xls) file
+     * 
+     * @param file
+     *            the file
+     * @return
+     */
+    private static boolean isOle2(File file) {
+        byte[] header = new byte[OLE2_SIGNATURE.length];
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read(header) == header.length && isOle2(header);
+        } catch (IOException ex) {
+            throw new OCSImportException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Checks whether the content starts with the signature of an OLE2 (.xls) file
+     * 
+     * @param header
+     *            the (first bytes of the) content
+     * @return
+     */
+    private static boolean isOle2(byte[] header) {
+        if (header.length < OLE2_SIGNATURE.length) {
+            return false;
+        }
+        for (int i = 0; i < OLE2_SIGNATURE.length; i++) {
+            if (header[i] != OLE2_SIGNATURE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean isPercentageCorrectionSupported() {
         return true;
@@ -260,4 +371,62 @@ public class BaseXlsImporter extends BaseImporter<Row, Cell> {
     protected boolean isWithinRange(Row row, XlsField field) {
         return row.getFirstCellNum() + field.index() < row.getLastCellNum();
     }
+
+    /**
+     * Reads the first sheet of an Excel file and passes its rows to a handler one by one. An .xlsx
+     * file is streamed, so only a limited number of rows (see setRowCacheSize) is kept in memory.
+     * An (old style) .xls file is read into a workbook
+     * 
+     * @param file
+     *            the file
+     * @param handler
+     *            the handler that receives the rows, along with their index in the sheet
+     * @return the number of rows that was read
+     */
+    public int readXlsFile(File file, RowHandler<Row> handler) {
+        if (isOle2(file)) {
+            // old style files are limited in size, so they can safely be read completely
+            try (InputStream in = new FileInputStream(file)) {
+                Workbook wb = new HSSFWorkbook(in);
+                return wb.getNumberOfSheets() == 0 ? 0 : handleRows(wb.getSheetAt(0), handler);
+            } catch (IOException ex) {
+                throw new OCSImportException(ex.getMessage(), ex);
+            }
+        }
+
+        StreamingReader reader = createReader(file, rowCacheSize);
+        try {
+            return handleRows(reader, handler);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the first sheet of an Excel file and passes its rows to a handler one by one. The
+     * stream is first copied to a temporary file, which is then read using
+     * readXlsFile(File, RowHandler)
+     * 
+     * @param input
+     *            the input stream
+     * @param handler
+     *            the handler that receives the rows, along with their index in the sheet
+     * @return the number of rows that was read
+     */
+    public int readXlsFile(InputStream input, RowHandler<Row> handler) {
+        File file = null;
+        try {
+            file = File.createTempFile("import", ".xlsx");
+            FileUtils.copyInputStreamToFile(input, file);
+            return readXlsFile(file, handler);
+        } catch (IOException ex) {
+            throw new OCSImportException(ex.getMessage(), ex);
+        } finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    public void setRowCacheSize(int rowCacheSize) {
+        this.rowCacheSize = rowCacheSize;
+    }
 }
@@ -0,0 +1,350 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.importer.impl;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.ocs.dynamo.exception.OCSImportException;
+
+/**
+ * A single record of a fixed length file that is read directly from a (memory-mapped) buffer. The
+ * fields are exposed as views on the buffer, so no strings are created unless they are explicitly
+ * asked for. Field offsets are byte offsets and bytes are interpreted as single-byte (ISO-8859-1)
+ * characters.
+ * 
+ * Instances (and the fields they return) are reused for the next record, so they are only valid
+ * while the record is being handled
+ * 
+ * @author bas.rutten
+ */
+public final class FixedLengthRecord {
+
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+            1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final int[] fieldLengths;
+
+    private final Field[] fields;
+
+    private int fieldCount;
+
+    private int recordNumber;
+
+    /**
+     * Constructor
+     * 
+     * @param fieldLengths
+     *            the lengths (in bytes) of the fields
+     */
+    FixedLengthRecord(int[] fieldLengths) {
+        this.fieldLengths = fieldLengths;
+        this.fields = new Field[fieldLengths.length];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = new Field();
+        }
+    }
+
+    /**
+     * Points this record to a new part of the buffer
+     * 
+     * @param buffer
+     *            the buffer
+     * @param start
+     *            the start of the record
+     * @param end
+     *            the end of the record (exclusive, without line terminator)
+     * @param number
+     *            the (zero-based) number of the record
+     */
+    void reset(ByteBuffer buffer, int start, int end, int number) {
+        this.recordNumber = number;
+        this.fieldCount = 0;
+        int pos = start;
+        for (int i = 0; i < fieldLengths.length && pos <= end; i++) {
+            // a field that does not fit is truncated, just like in the string based reader
+            int fieldEnd = Math.min(pos + fieldLengths[i], end);
+            fields[i].reset(buffer, pos, fieldEnd);
+            fieldCount++;
+            pos += fieldLengths[i];
+        }
+    }
+
+    /**
+     * Returns the number of fields that are present in this record
+     * 
+     * @return
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns a (trimmed) field as a character sequence that is backed by the buffer
+     * 
+     * @param index
+     *            the index of the field
+     * @return
+     */
+    public CharSequence getField(int index) {
+        checkIndex(index);
+        return fields[index];
+    }
+
+    /**
+     * Parses a field as a BigDecimal
+     * 
+     * @param index
+     * @return the value, or <code>null</code> if the field is empty
+     */
+    public BigDecimal getDecimal(int index) {
+        checkIndex(index);
+        Field field = fields[index];
+        if (field.length() == 0) {
+            return null;
+        }
+        char[] chars = new char[field.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = field.charAt(i);
+        }
+        try {
+            return new BigDecimal(chars);
+        } catch (NumberFormatException ex) {
+            throw notANumber(field);
+        }
+    }
+
+    /**
+     * Parses a field as a double
+     * 
+     * @param index
+     * @return the value, or <code>null</code> if the field is empty
+     */
+    public Double getDouble(int index) {
+        checkIndex(index);
+        return parseDouble(fields[index]);
+    }
+
+    /**
+     * Parses a field as an int
+     * 
+     * @param index
+     * @return the value, or <code>null</code> if the field is empty
+     */
+    public Integer getInt(int index) {
+        Long value = getLong(index);
+        if (value == null) {
+            return null;
+        }
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw notANumber(fields[index]);
+        }
+        return value.intValue();
+    }
+
+    /**
+     * Parses a field as a long
+     * 
+     * @param index
+     * @return the value, or <code>null</code> if the field is empty
+     */
+    public Long getLong(int index) {
+        checkIndex(index);
+        Field field = fields[index];
+        int length = field.length();
+        if (length == 0) {
+            return null;
+        }
+
+        int i = 0;
+        boolean negative = false;
+        char first = field.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        if (i == length) {
+            throw notANumber(field);
+        }
+
+        long result = 0;
+        for (; i < length; i++) {
+            int digit = field.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+                throw notANumber(field);
+            }
+            // accumulate negatively to be able to represent Long.MIN_VALUE
+            result = result * 10 - digit;
+        }
+        if (!negative && result == Long.MIN_VALUE) {
+            throw notANumber(field);
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Returns the (zero-based) number of this record in the file
+     * 
+     * @return
+     */
+    public int getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * Returns a field as a string
+     * 
+     * @param index
+     * @return
+     */
+    public String getString(int index) {
+        return getField(index).toString();
+    }
+
+    /**
+     * Converts the record to an array of strings, for use with the string based importers
+     * 
+     * @return
+     */
+    public String[] toArray() {
+        String[] result = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            result[i] = fields[i].toString();
+        }
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new OCSImportException("Row doesn't have enough columns");
+        }
+    }
+
+    private static OCSImportException notANumber(CharSequence value) {
+        return new OCSImportException(value + " cannot be converted to a number");
+    }
+
+    /**
+     * Parses a decimal number without creating a string. Numbers with more significant digits
+     * than a double can represent exactly, or in scientific notation, are handed to
+     * Double.parseDouble
+     * 
+     * @param value
+     *            the value to parse
+     * @return the value, or <code>null</code> if the value is empty
+     */
+    static Double parseDouble(CharSequence value) {
+        int length = value.length();
+        if (length == 0) {
+            return null;
+        }
+
+        int i = 0;
+        boolean negative = false;
+        char first = value.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        boolean anyDigit = false;
+        boolean simple = true;
+        for (; i < length && simple; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (mantissa > 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (point) {
+                    scale++;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                simple = false;
+            }
+        }
+
+        if (simple && anyDigit && digits <= MAX_EXACT_DIGITS && scale < POWERS_OF_TEN.length) {
+            // both the mantissa and the power of ten are exact, so the division is correctly
+            // rounded
+            double result = mantissa / POWERS_OF_TEN[scale];
+            return negative ? -result : result;
+        }
+        try {
+            return Double.valueOf(value.toString());
+        } catch (NumberFormatException ex) {
+            throw notANumber(value);
+        }
+    }
+
+    /**
+     * A trimmed view on a part of the buffer
+     */
+    private static final class Field implements CharSequence {
+
+        private ByteBuffer buffer;
+
+        private int start;
+
+        private int end;
+
+        void reset(ByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            int s = from;
+            int e = to;
+            while (s < e && (buffer.get(s) & 0xff) <= ' ') {
+                s++;
+            }
+            while (e > s && (buffer.get(e - 1) & 0xff) <= ' ') {
+                e--;
+            }
+            this.start = s;
+            this.end = e;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(start + index) & 0xff);
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().subSequence(from, to);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.importer.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import com.ocs.dynamo.exception.OCSImportException;
+import com.ocs.dynamo.importer.RowHandler;
+import com.ocs.dynamo.importer.XlsField;
+
+/**
+ * Importer for (large) fixed length files that memory-maps the file and finds the records and
+ * fields directly in the raw bytes. Fields are converted through the usual BaseImporter
+ * conversion path, but numbers are parsed straight from the buffer and strings are only created
+ * for string properties. Field lengths are expressed in bytes, and the file is expected to use a
+ * single-byte encoding
+ * 
+ * @author bas.rutten
+ */
+public class MappedFixedLengthImporter extends BaseImporter<FixedLengthRecord, CharSequence> {
+
+    /**
+     * The maximum size of the part of the file that is mapped at once
+     */
+    private static final int WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private static final String TRUE = "true";
+
+    private final int windowSize;
+
+    public MappedFixedLengthImporter() {
+        this(WINDOW_SIZE);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param windowSize
+     *            the maximum size of the part of the file that is mapped at once. A single record
+     *            must fit in this window
+     */
+    protected MappedFixedLengthImporter(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public int countRows(byte[] bytes, int row, int column) {
+        int count = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                count++;
+            }
+        }
+        // last line without line terminator
+        if (bytes.length > 0 && bytes[bytes.length - 1] != '\n') {
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    protected Boolean getBooleanValueWithDefault(CharSequence unit, XlsField field) {
+        if (unit.length() == 0) {
+            return Boolean.FALSE;
+        }
+        return Boolean.valueOf(equalsIgnoreCase(unit, TRUE));
+    }
+
+    @Override
+    protected Double getNumericValueWithDefault(CharSequence unit, XlsField field) {
+        Double value = FixedLengthRecord.parseDouble(unit);
+        if (value == null && field.defaultValue().length() > 0) {
+            value = Double.valueOf(field.defaultValue());
+        }
+        return value;
+    }
+
+    @Override
+    protected String getStringValueWithDefault(CharSequence unit, XlsField field) {
+        if (unit.length() == 0 && field.defaultValue().length() > 0) {
+            return field.defaultValue();
+        }
+        return unit.toString();
+    }
+
+    @Override
+    protected CharSequence getUnit(FixedLengthRecord row, XlsField field) {
+        return row.getField(field.index());
+    }
+
+    @Override
+    public boolean isPercentageCorrectionSupported() {
+        return false;
+    }
+
+    @Override
+    protected boolean isWithinRange(FixedLengthRecord row, XlsField field) {
+        return field.index() < row.getFieldCount();
+    }
+
+    /**
+     * Reads a fixed length file and passes its records to a handler one by one. The record that is
+     * passed to the handler is reused for the next record
+     * 
+     * @param file
+     *            the file
+     * @param fieldLengths
+     *            the lengths (in bytes) of the fields
+     * @param handler
+     *            the handler that receives the records
+     * @return the number of records that was read
+     */
+    public int readFixedLengthFile(File file, List<Integer> fieldLengths,
+            RowHandler<FixedLengthRecord> handler) {
+        int[] lengths = new int[fieldLengths.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = fieldLengths.get(i);
+        }
+        FixedLengthRecord record = new FixedLengthRecord(lengths);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            long position = 0;
+            int count = 0;
+            while (position < size) {
+                int length = (int) Math.min(windowSize, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        length);
+                boolean last = position + length == size;
+
+                int processed = readWindow(buffer, length, last, record, count, handler);
+                if (processed == 0) {
+                    throw new OCSImportException("Record at position " + position
+                            + " does not fit in a window of " + windowSize + " bytes");
+                }
+                count = record.getRecordNumber() + 1;
+                position += processed;
+            }
+            return count;
+        } catch (IOException ex) {
+            throw new OCSImportException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Reads the records in a mapped window
+     * 
+     * @return the number of bytes that were processed (the window up to and including the last
+     *         complete record)
+     */
+    private int readWindow(ByteBuffer buffer, int length, boolean last, FixedLengthRecord record,
+            int firstNumber, RowHandler<FixedLengthRecord> handler) {
+        int number = firstNumber;
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(i) == '\n') {
+                int end = i > start && buffer.get(i - 1) == '\r' ? i - 1 : i;
+                record.reset(buffer, start, end, number);
+                handler.handle(number++, record);
+                start = i + 1;
+            }
+        }
+        if (last && start < length) {
+            // last line without line terminator
+            int end = buffer.get(length - 1) == '\r' ? length - 1 : length;
+            record.reset(buffer, start, end, number);
+            handler.handle(number, record);
+            start = length;
+        }
+        return start;
+    }
+
+    private static boolean equalsIgnoreCase(CharSequence value, String other) {
+        if (value.length() != other.length()) {
+            return false;
+        }
+        for (int i = 0; i < other.length(); i++) {
+            if (Character.toLowerCase(value.charAt(i)) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
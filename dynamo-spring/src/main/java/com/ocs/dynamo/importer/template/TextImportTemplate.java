@@ -17,6 +17,11 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -38,6 +43,11 @@ public abstract class TextImportTemplate<ID, T> {
 
     private static final Logger LOG = Logger.getLogger(TextImportTemplate.class);
 
+    /**
+     * The number of rows that is processed by a single task in parallel mode
+     */
+    private static final int CHUNK_SIZE = 256;
+
     private List<String[]> lines;
 
     private boolean checkForDuplicates;
@@ -48,6 +58,10 @@ public abstract class TextImportTemplate<ID, T> {
 
     private Set<ID> keys = new HashSet<>();
 
+    private ForkJoinPool pool;
+
+    private AtomicInteger counter;
+
     /**
      * Constructor
      * 
@@ -91,10 +105,15 @@ public abstract class TextImportTemplate<ID, T> {
     protected abstract ID getKeyFromRow(T t);
 
     /**
+     * Processes all rows, either sequentially or (in parallel mode) concurrently
      * 
-     * @return
+     * @return the processed rows, in the order in which they appear in the input
      */
     public List<T> execute() {
+        if (pool != null) {
+            return executeParallel();
+        }
+
         List<T> results = new ArrayList<>();
         for (int i = 0; i < lines.size(); i++) {
             String[] row = lines.get(i);
@@ -106,12 +125,74 @@ public abstract class TextImportTemplate<ID, T> {
                     // catch errors on a record by record level
                     errors.add(String.format("Row %d: %s", i + 1, ex.getMessage()));
                 }
+                incrementCounter();
             }
         }
 
         return results;
     }
 
+    /**
+     * Processes the rows in chunks on the fork-join pool. Every row is processed independently,
+     * after which the results, errors and duplicates are collected in row order so that the
+     * outcome is the same as in sequential mode
+     * 
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private List<T> executeParallel() {
+        final int size = lines.size();
+        final Object[] processed = new Object[size];
+        final Object[] rowKeys = new Object[size];
+        final String[] rowErrors = new String[size];
+        final boolean[] handled = new boolean[size];
+
+        // the first row in which every key occurs
+        final ConcurrentMap<Object, Integer> firstOccurrences = new ConcurrentHashMap<>();
+
+        pool.invoke(new ChunkAction(new RowProcessor() {
+
+            @Override
+            public void processRow(int i) {
+                String[] row = lines.get(i);
+                if (row != null && isAppropriateRow(row)) {
+                    try {
+                        T t = process(i, row);
+                        processed[i] = t;
+                        if (checkForDuplicates) {
+                            Object key = normalizeKey(getKeyFromRow(t));
+                            rowKeys[i] = key;
+                            registerOccurrence(firstOccurrences, key, i);
+                        }
+                    } catch (OCSImportException ex) {
+                        LOG.error(ex.getMessage(), ex);
+                        rowErrors[i] = String.format("Row %d: %s", i + 1, ex.getMessage());
+                    }
+                    handled[i] = true;
+                    incrementCounter();
+                }
+            }
+        }, 1, size));
+
+        List<T> results = new ArrayList<>();
+        for (int i = 1; i < size; i++) {
+            if (rowErrors[i] != null) {
+                errors.add(rowErrors[i]);
+            } else if (handled[i]) {
+                if (checkForDuplicates
+                        && firstOccurrences.get(nullSafe(rowKeys[i])).intValue() != i) {
+                    errors.add(messageService.getMessage("ocs.duplicate.row", i + 1, rowKeys[i]));
+                } else {
+                    if (checkForDuplicates) {
+                        keys.add((ID) rowKeys[i]);
+                    }
+                    results.add((T) processed[i]);
+                }
+            }
+        }
+        return results;
+    }
+
     /**
      * Processes a single row
      * 
@@ -125,9 +206,7 @@ public abstract class TextImportTemplate<ID, T> {
         ID key = getKeyFromRow(t);
 
         if (checkForDuplicates) {
-            if (key instanceof String) {
-                key = (ID) ((String) key).toLowerCase();
-            }
+            key = (ID) normalizeKey(key);
 
             if (!keys.contains(key)) {
                 keys.add(key);
@@ -139,4 +218,132 @@ public abstract class TextImportTemplate<ID, T> {
             results.add(t);
         }
     }
+
+    private void incrementCounter() {
+        if (counter != null) {
+            counter.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the pool on which the rows are processed in parallel, or <code>null</code> if the
+     *         rows are processed sequentially
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Keys are compared case insensitively
+     * 
+     * @param key
+     * @return
+     */
+    private static Object normalizeKey(Object key) {
+        if (key instanceof String) {
+            return ((String) key).toLowerCase();
+        }
+        return key;
+    }
+
+    /**
+     * ConcurrentHashMap does not allow null keys, so null is replaced by a placeholder
+     * 
+     * @param key
+     * @return
+     */
+    private static Object nullSafe(Object key) {
+        return key == null ? NullKey.INSTANCE : key;
+    }
+
+    /**
+     * Records that a key occurs in a certain row, keeping track of the lowest row number
+     * regardless of the order in which the rows are processed
+     * 
+     * @param firstOccurrences
+     * @param key
+     * @param row
+     */
+    private static void registerOccurrence(ConcurrentMap<Object, Integer> firstOccurrences,
+            Object key, int row) {
+        Object k = nullSafe(key);
+        Integer current = firstOccurrences.putIfAbsent(k, row);
+        while (current != null && current > row) {
+            if (firstOccurrences.replace(k, current, row)) {
+                return;
+            }
+            current = firstOccurrences.get(k);
+        }
+    }
+
+    /**
+     * Sets the counter that is incremented for every processed row, e.g. the counter of a
+     * ProgressForm
+     * 
+     * @param counter
+     */
+    public void setCounter(AtomicInteger counter) {
+        this.counter = counter;
+    }
+
+    /**
+     * Sets the pool on which to process the rows in parallel. By default (or when the pool is
+     * <code>null</code>) the rows are processed sequentially. Use a pool that is managed by the
+     * Spring container or by the caller, so that it is shut down when it is no longer needed - the
+     * template never shuts down the pool. Parallel processing requires the implementation of
+     * process and getKeyFromRow to be thread-safe
+     * 
+     * @param pool
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Processes a range of rows, splitting it into smaller ranges until these are small enough
+     */
+    private static final class ChunkAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 3362651962446934520L;
+
+        private final transient RowProcessor processor;
+
+        private final int from;
+
+        private final int to;
+
+        ChunkAction(RowProcessor processor, int from, int to) {
+            this.processor = processor;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    processor.processRow(i);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkAction(processor, from, middle), new ChunkAction(processor,
+                        middle, to));
+            }
+        }
+    }
+
+    /**
+     * Callback for processing a single row
+     */
+    private interface RowProcessor {
+
+        void processRow(int i);
+    }
+
+    /**
+     * Placeholder for a null key
+     */
+    private enum NullKey {
+        INSTANCE
+    }
 }
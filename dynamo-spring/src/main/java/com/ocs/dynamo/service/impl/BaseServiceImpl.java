@@ -13,9 +13,13 @@
  */
 package com.ocs.dynamo.service.impl;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.validation.ConstraintViolation;
@@ -24,16 +28,25 @@ import javax.validation.ValidatorFactory;
 import javax.validation.constraints.AssertFalse;
 import javax.validation.constraints.AssertTrue;
 
+import org.apache.commons.lang.SerializationUtils;
 import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.ocs.dynamo.dao.BaseDao;
 import com.ocs.dynamo.dao.Pageable;
 import com.ocs.dynamo.dao.PageableImpl;
 import com.ocs.dynamo.dao.SortOrder;
 import com.ocs.dynamo.dao.SortOrders;
+import com.ocs.dynamo.dao.query.CloseableIterator;
 import com.ocs.dynamo.dao.query.FetchJoinInformation;
 import com.ocs.dynamo.domain.AbstractEntity;
+import com.ocs.dynamo.domain.model.EntityModel;
+import com.ocs.dynamo.domain.model.EntityModelFactory;
 import com.ocs.dynamo.exception.OCSNonUniqueException;
 import com.ocs.dynamo.exception.OCSValidationException;
 import com.ocs.dynamo.filter.Filter;
@@ -62,6 +75,29 @@ public abstract class BaseServiceImpl<ID, T extends AbstractEntity<ID>> implemen
     @Inject
     private MessageService messageService;
 
+    private EntityModelFactory entityModelFactory;
+
+    /**
+     * The read cache - only present when caching is enabled for the entity. The entities are
+     * stored in serialized form, so that the cache never holds on to an entity that is managed by
+     * a persistence context, and every read returns a separate detached copy
+     */
+    private volatile Cache<String, byte[]> readCache;
+
+    private volatile boolean readCacheInitialized;
+
+    /**
+     * Loads a value that is not present in the read cache
+     * 
+     * @author bas.rutten
+     * @param <R>
+     *            the type of the value
+     */
+    private interface Loader<R> {
+
+        R load();
+    }
+
     /**
      * Creates a paging request
      * 
@@ -75,6 +111,121 @@ public abstract class BaseServiceImpl<ID, T extends AbstractEntity<ID>> implemen
         return new PageableImpl(pageNumber, pageSize, orders);
     }
 
+    /**
+     * Removes all entries from the read cache. When a transaction is active, the cache is cleared
+     * again after the transaction completes, so that no stale entities that were read by other
+     * threads in the meantime remain in the cache
+     */
+    private void evictCache() {
+        final Cache<String, byte[]> cache = getReadCache();
+        if (cache != null) {
+            cache.invalidateAll();
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager
+                        .registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                            @Override
+                            public void afterCompletion(int status) {
+                                cache.invalidateAll();
+                            }
+                        });
+            }
+        }
+    }
+
+    /**
+     * Constructs the part of a cache key that describes the fetch joins
+     * 
+     * @param joins
+     *            the fetch joins
+     * @return
+     */
+    private String getJoinsKey(FetchJoinInformation... joins) {
+        StringBuilder key = new StringBuilder();
+        if (joins != null) {
+            for (FetchJoinInformation join : joins) {
+                key.append(':').append(join.getProperty()).append(' ').append(join.getJoinType());
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the read cache, creating it based on the settings of the entity model when it is
+     * accessed for the first time
+     * 
+     * @return the read cache, or <code>null</code> if caching is not enabled for the entity
+     */
+    private Cache<String, byte[]> getReadCache() {
+        if (!readCacheInitialized) {
+            synchronized (this) {
+                if (!readCacheInitialized) {
+                    if (entityModelFactory != null) {
+                        EntityModel<T> model = entityModelFactory.getModel(getEntityClass());
+                        if (model != null && model.getCacheSize() > 0) {
+                            CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                                    .maximumSize(model.getCacheSize()).recordStats();
+                            if (model.getCacheExpiry() > 0) {
+                                builder.expireAfterWrite(model.getCacheExpiry(), TimeUnit.SECONDS);
+                            }
+                            readCache = builder.build();
+                        }
+                    }
+                    readCacheInitialized = true;
+                }
+            }
+        }
+        return readCache;
+    }
+
+    /**
+     * Looks up a value in the read cache, and loads and caches it when it is not present. Cached
+     * values are returned as detached copies, so that callers never share an entity with another
+     * session or thread
+     * 
+     * @param key
+     *            the cache key
+     * @param loader
+     *            used to load the value
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R readThrough(String key, Loader<R> loader) {
+        Cache<String, byte[]> cache = getReadCache();
+        if (cache == null) {
+            return loader.load();
+        }
+        byte[] cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return (R) SerializationUtils.deserialize(cached);
+        }
+        R result = loader.load();
+        if (result != null) {
+            cache.put(key, SerializationUtils.serialize((Serializable) result));
+        }
+        return result;
+    }
+
+    /**
+     * Looks up a list in the read cache, and loads and caches it when it is not present
+     * 
+     * @param key
+     *            the cache key
+     * @param loader
+     *            used to load the list
+     * @return
+     */
+    private List<T> readThroughList(String key, final Loader<List<T>> loader) {
+        return readThrough(key, new Loader<List<T>>() {
+
+            @Override
+            public List<T> load() {
+                List<T> result = loader.load();
+                return result instanceof Serializable ? result : new ArrayList<>(result);
+            }
+        });
+    }
+
     @Override
     public long count(Filter filter) {
         return getDao().count(filter);
@@ -82,7 +233,13 @@ public abstract class BaseServiceImpl<ID, T extends AbstractEntity<ID>> implemen
 
     @Override
     public List<T> findAll() {
-        return getDao().findAll();
+        return readThroughList("all", new Loader<List<T>>() {
+
+            @Override
+            public List<T> load() {
+                return getDao().findAll();
+            }
+        });
     }
 
     @Override
@@ -95,6 +252,11 @@ public abstract class BaseServiceImpl<ID, T extends AbstractEntity<ID>> implemen
         return getDao().count(filter, distinct);
     }
 
+    @Override
+    public long countCapped(Filter filter, int maxCount) {
+        return getDao().countCapped(filter, maxCount);
+    }
+
     @Override
     public T createNewEntity() {
         return ClassUtils.instantiateClass(getEntityClass());
@@ -104,17 +266,33 @@ public abstract class BaseServiceImpl<ID, T extends AbstractEntity<ID>> implemen
     @Transactional
     public void delete(List<T> list) {
         getDao().delete(list);
+        evictCache();
     }
 
     @Override
     @Transactional
     public void delete(T t) {
         getDao().delete(t);
+        evictCache();
     }
 
     @Override
-    public T fetchById(ID id, FetchJoinInformation... joins) {
-        return getDao().fetchById(id, joins);
+    @Transactional
+    public int deleteByFilter(Filter filter) {
+        int result = getDao().deleteByFilter(filter);
+        evictCache();
+        return result;
+    }
+
+    @Override
+    public T fetchById(final ID id, final FetchJoinInformation... joins) {
+        return readThrough("fetch:" + id + getJoinsKey(joins), new Loader<T>() {
+
+            @Override
+            public T load() {
+                return getDao().fetchById(id, joins);
+            }
+        });
     }
 
     @Override
@@ -128,9 +306,16 @@ public abstract class BaseServiceImpl<ID, T extends AbstractEntity<ID>> implemen
     }
 
     @Override
-    public T fetchByUniqueProperty(String propertyName, Object value, boolean caseSensitive,
-            FetchJoinInformation... joins) {
-        return getDao().fetchByUniqueProperty(propertyName, value, caseSensitive, joins);
+    public T fetchByUniqueProperty(final String propertyName, final Object value,
+            final boolean caseSensitive, final FetchJoinInformation... joins) {
+        return readThrough("fetchUnique:" + propertyName + ":" + value + ":" + caseSensitive
+                + getJoinsKey(joins), new Loader<T>() {
+
+            @Override
+            public T load() {
+                return getDao().fetchByUniqueProperty(propertyName, value, caseSensitive, joins);
+            }
+        });
     }
 
     @Override
@@ -159,8 +344,26 @@ public abstract class BaseServiceImpl<ID, T extends AbstractEntity<ID>> implemen
     }
 
     @Override
-    public List<T> findAll(SortOrder... orders) {
-        return getDao().findAll(orders);
+    public List<T> fetch(Filter filter, Pageable pageable, FetchJoinInformation... joins) {
+        return getDao().fetch(filter, pageable, joins);
+    }
+
+    @Override
+    public List<T> findAll(final SortOrder... orders) {
+        StringBuilder key = new StringBuilder("all");
+        if (orders != null) {
+            for (SortOrder order : orders) {
+                key.append(':').append(order.getProperty()).append(' ')
+                        .append(order.getDirection());
+            }
+        }
+        return readThroughList(key.toString(), new Loader<List<T>>() {
+
+            @Override
+            public List<T> load() {
+                return getDao().findAll(orders);
+            }
+        });
     }
 
     @Override
@@ -174,13 +377,27 @@ public abstract class BaseServiceImpl<ID, T extends AbstractEntity<ID>> implemen
     }
 
     @Override
-    public T findById(ID id) {
-        return getDao().findById(id);
+    public T findById(final ID id) {
+        return readThrough("id:" + id, new Loader<T>() {
+
+            @Override
+            public T load() {
+                return getDao().findById(id);
+            }
+        });
     }
 
     @Override
-    public T findByUniqueProperty(String propertyName, Object value, boolean caseSensitive) {
-        return getDao().findByUniqueProperty(propertyName, value, caseSensitive);
+    public T findByUniqueProperty(final String propertyName, final Object value,
+            final boolean caseSensitive) {
+        return readThrough("unique:" + propertyName + ":" + value + ":" + caseSensitive,
+                new Loader<T>() {
+
+                    @Override
+                    public T load() {
+                        return getDao().findByUniqueProperty(propertyName, value, caseSensitive);
+                    }
+                });
     }
 
     /**
@@ -198,8 +415,30 @@ public abstract class BaseServiceImpl<ID, T extends AbstractEntity<ID>> implemen
         return getDao().findIds(filter, orders);
     }
 
+    @Override
+    public long[] findNumericIds(Filter filter, SortOrder... orders) {
+        return getDao().findNumericIds(filter, orders);
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        Cache<String, byte[]> cache = getReadCache();
+        return cache == null ? 0 : cache.stats().hitRate();
+    }
+
     protected abstract BaseDao<ID, T> getDao();
 
+    /**
+     * Sets the entity model factory that provides the cache settings of the entity. Without an
+     * entity model factory, no reads are cached
+     * 
+     * @param entityModelFactory
+     */
+    @Autowired(required = false)
+    public void setEntityModelFactory(EntityModelFactory entityModelFactory) {
+        this.entityModelFactory = entityModelFactory;
+    }
+
     @Override
     public Class<T> getEntityClass() {
         return getDao().getEntityClass();
@@ -231,14 +470,55 @@ public abstract class BaseServiceImpl<ID, T extends AbstractEntity<ID>> implemen
         for (T t : list) {
             validate(t);
         }
-        return getDao().save(list);
+        List<T> result = getDao().save(list);
+        evictCache();
+        return result;
+    }
+
+    @Override
+    @Transactional
+    public List<T> save(List<T> list, int batchSize, AtomicInteger counter) {
+        for (T t : list) {
+            validate(t);
+        }
+        List<T> result = getDao().save(list, batchSize, counter);
+        evictCache();
+        return result;
     }
 
     @Override
     @Transactional
     public T save(T t) {
         validate(t);
-        return getDao().save(t);
+        T result = getDao().save(t);
+        evictCache();
+        return result;
+    }
+
+    @Override
+    public CloseableIterator<T> stream(Filter filter, SortOrders sortOrders,
+            FetchJoinInformation... joins) {
+        return getDao().stream(filter, sortOrders, joins);
+    }
+
+    @Override
+    public CloseableIterator<T> stream(Filter filter, SortOrders sortOrders, int fetchSize,
+            FetchJoinInformation... joins) {
+        return getDao().stream(filter, sortOrders, fetchSize, joins);
+    }
+
+    @Override
+    public CloseableIterator<T> stream(Filter filter, SortOrders sortOrders, int fetchSize,
+            boolean clear, FetchJoinInformation... joins) {
+        return getDao().stream(filter, sortOrders, fetchSize, clear, joins);
+    }
+
+    @Override
+    @Transactional
+    public int updateByFilter(Filter filter, Map<String, Object> values) {
+        int result = getDao().updateByFilter(filter, values);
+        evictCache();
+        return result;
     }
 
     /**
@@ -27,6 +27,7 @@ import com.ocs.dynamo.domain.model.impl.ModelBasedFieldFactory;
 import com.ocs.dynamo.service.MessageService;
 import com.ocs.dynamo.ui.component.URLField;
 import com.ocs.dynamo.ui.composite.table.export.TableExportActionHandler;
+import com.ocs.dynamo.ui.container.ServiceContainer;
 import com.ocs.dynamo.utils.SystemPropertyUtils;
 import com.vaadin.data.Container;
 import com.vaadin.data.Property;
@@ -213,8 +214,12 @@ public class ModelBasedTable<ID extends Serializable, T extends AbstractEntity<I
     }
 
     public void updateTableCaption() {
+        // when the count was capped, show that there are more results than the table contains
+        boolean capped = getContainerDataSource() instanceof ServiceContainer
+                && ((ServiceContainer<?, ?>) getContainerDataSource()).isCapped();
+        String key = capped ? "ocs.showing.results.capped" : "ocs.showing.results";
         setCaption(entityModel.getDisplayNamePlural() + " "
-                + messageService.getMessage("ocs.showing.results", getContainerDataSource().size()));
+                + messageService.getMessage(key, getContainerDataSource().size()));
     }
 
 }
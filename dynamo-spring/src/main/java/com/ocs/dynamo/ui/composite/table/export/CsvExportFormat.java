@@ -0,0 +1,104 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.composite.table.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+import com.ocs.dynamo.constants.DynamoConstants;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Exports the rows of a table as a (UTF-8 encoded) CSV file
+ * 
+ * @author bas.rutten
+ */
+public class CsvExportFormat implements ExportFormat {
+
+    private static final long serialVersionUID = -6061394381447458256L;
+
+    public static final char DEFAULT_QUOTE = '"';
+
+    public static final char DEFAULT_SEPARATOR = ';';
+
+    private final char quote;
+
+    private final char separator;
+
+    /**
+     * Constructor - uses a semicolon as the separator, since the formatted numbers can contain
+     * commas
+     */
+    public CsvExportFormat() {
+        this(DEFAULT_SEPARATOR, DEFAULT_QUOTE);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param separator
+     *            the field separator
+     * @param quote
+     *            the quote character
+     */
+    public CsvExportFormat(char separator, char quote) {
+        this.separator = separator;
+        this.quote = quote;
+    }
+
+    @Override
+    public RowWriter createWriter(OutputStream out) throws IOException {
+        final CSVWriter writer = new CSVWriter(new BufferedWriter(new OutputStreamWriter(out,
+                Charset.forName(DynamoConstants.UTF_8))), separator, quote);
+        return new RowWriter() {
+
+            @Override
+            public void writeRow(String[] values) {
+                writer.writeNext(values);
+            }
+
+            @Override
+            public void close() throws IOException {
+                writer.close();
+            }
+        };
+    }
+
+    @Override
+    public String getCaptionKey() {
+        return "ocs.export.csv";
+    }
+
+    @Override
+    public String getExtension() {
+        return "csv";
+    }
+
+    @Override
+    public String getMimeType() {
+        return "text/csv";
+    }
+
+    public char getQuote() {
+        return quote;
+    }
+
+    public char getSeparator() {
+        return separator;
+    }
+}
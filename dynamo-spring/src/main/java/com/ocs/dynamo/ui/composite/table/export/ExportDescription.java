@@ -0,0 +1,183 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.composite.table.export;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ocs.dynamo.dao.SortOrders;
+import com.ocs.dynamo.dao.query.FetchJoinInformation;
+import com.ocs.dynamo.domain.AbstractEntity;
+import com.ocs.dynamo.filter.Filter;
+import com.ocs.dynamo.service.BaseService;
+import com.ocs.dynamo.ui.container.ServiceQueryDefinition;
+import com.vaadin.data.Container;
+import com.vaadin.data.util.IndexedContainer;
+import com.vaadin.ui.Table;
+import com.vaadin.ui.Table.Align;
+
+/**
+ * An immutable description of an export of a table whose rows are read from a service: the
+ * exported columns (with their headers, types and alignments) and the query (filter, sort order
+ * and fetch joins) that returns the rows. The description is created on the UI thread, so that an
+ * export that runs in the background never has to read the table or its container
+ * 
+ * @author bas.rutten
+ * @param <ID>
+ *            the type of the primary key
+ * @param <T>
+ *            the type of the entity
+ */
+final class ExportDescription<ID extends Serializable, T extends AbstractEntity<ID>> {
+
+    private final Map<Object, Align> alignments;
+
+    private final Filter filter;
+
+    private final Map<Object, String> headers;
+
+    private final FetchJoinInformation[] joins;
+
+    private final List<Object> propIds;
+
+    private final BaseService<ID, T> service;
+
+    private final int size;
+
+    private final SortOrders sortOrders;
+
+    private final Map<Object, Class<?>> types;
+
+    /**
+     * Constructor
+     * 
+     * @param table
+     *            the table to describe
+     * @param propIds
+     *            the IDs of the exported properties
+     * @param definition
+     *            the query definition of the container of the table
+     */
+    private ExportDescription(Table table, List<Object> propIds,
+            ServiceQueryDefinition<ID, T> definition) {
+        this.service = definition.getService();
+        this.filter = definition.constructFilter();
+        this.sortOrders = new SortOrders(definition.constructOrder());
+        this.joins = definition.getJoins() == null ? null : definition.getJoins().clone();
+        this.propIds = Collections.unmodifiableList(new ArrayList<>(propIds));
+
+        Container container = table.getContainerDataSource();
+        Map<Object, String> headerMap = new HashMap<>();
+        Map<Object, Class<?>> typeMap = new HashMap<>();
+        Map<Object, Align> alignmentMap = new HashMap<>();
+        for (Object propId : propIds) {
+            headerMap.put(propId, table.getColumnHeader(propId));
+            typeMap.put(propId, container.getType(propId));
+            alignmentMap.put(propId, table.getColumnAlignment(propId));
+        }
+        this.headers = Collections.unmodifiableMap(headerMap);
+        this.types = Collections.unmodifiableMap(typeMap);
+        this.alignments = Collections.unmodifiableMap(alignmentMap);
+        this.size = container.size();
+    }
+
+    /**
+     * Describes the export of a table. Must be called from the UI thread (or while holding the
+     * lock on the session)
+     * 
+     * @param table
+     *            the table to describe
+     * @param propIds
+     *            the IDs of the exported properties
+     * @param definition
+     *            the query definition of the container of the table
+     * @return
+     */
+    static <ID extends Serializable, T extends AbstractEntity<ID>> ExportDescription<ID, T> create(
+            Table table, List<Object> propIds, ServiceQueryDefinition<ID, T> definition) {
+        return new ExportDescription<>(table, propIds, definition);
+    }
+
+    /**
+     * Creates a table that holds the columns (but not the rows) of the described table. The
+     * table is not attached to any UI, so an export can safely read it from any thread
+     * 
+     * @return
+     */
+    Table createTable() {
+        IndexedContainer container = new IndexedContainer();
+        for (Object propId : propIds) {
+            Class<?> type = types.get(propId);
+            container.addContainerProperty(propId, type == null ? Object.class : type, null);
+        }
+
+        Table table = new Table();
+        table.setContainerDataSource(container);
+        table.setVisibleColumns(propIds.toArray());
+        for (Object propId : propIds) {
+            if (headers.get(propId) != null) {
+                table.setColumnHeader(propId, headers.get(propId));
+            }
+            if (alignments.get(propId) != null) {
+                table.setColumnAlignment(propId, alignments.get(propId));
+            }
+        }
+        return table;
+    }
+
+    Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Returns the header of a column
+     * 
+     * @param propId
+     *            the ID of the property that is displayed in the column
+     * @return the header, or the ID of the property if the column has no header
+     */
+    String getHeader(Object propId) {
+        String header = headers.get(propId);
+        return header != null ? header : propId.toString();
+    }
+
+    FetchJoinInformation[] getJoins() {
+        return joins == null ? null : joins.clone();
+    }
+
+    List<Object> getPropIds() {
+        return propIds;
+    }
+
+    BaseService<ID, T> getService() {
+        return service;
+    }
+
+    /**
+     * Returns the number of rows of the table at the moment the description was created
+     * 
+     * @return
+     */
+    int getSize() {
+        return size;
+    }
+
+    SortOrders getSortOrders() {
+        return sortOrders;
+    }
+}
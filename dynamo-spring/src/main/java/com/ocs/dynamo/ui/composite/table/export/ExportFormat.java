@@ -0,0 +1,78 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.composite.table.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * A text based format in which the rows of a table can be exported. Every format that is
+ * registered with a TableExportActionHandler is offered as a separate action in the export menu
+ * of the table. The rows are written directly to the response, without a temporary file
+ * 
+ * @author bas.rutten
+ */
+public interface ExportFormat extends Serializable {
+
+    /**
+     * Writes the exported rows one by one
+     * 
+     * @author bas.rutten
+     */
+    interface RowWriter extends Closeable {
+
+        /**
+         * Writes a single row
+         * 
+         * @param values
+         *            the formatted values of the row (a value can be <code>null</code>)
+         * @throws IOException
+         */
+        void writeRow(String[] values) throws IOException;
+    }
+
+    /**
+     * Creates a writer that writes the rows to the provided stream. Closing the writer closes
+     * the stream
+     * 
+     * @param out
+     *            the stream to write to
+     * @return
+     * @throws IOException
+     */
+    RowWriter createWriter(OutputStream out) throws IOException;
+
+    /**
+     * Returns the key of the message that is used as the caption of the export action
+     * 
+     * @return
+     */
+    String getCaptionKey();
+
+    /**
+     * Returns the extension of the exported file (without the leading dot)
+     * 
+     * @return
+     */
+    String getExtension();
+
+    /**
+     * Returns the MIME type of the exported file
+     * 
+     * @return
+     */
+    String getMimeType();
+}
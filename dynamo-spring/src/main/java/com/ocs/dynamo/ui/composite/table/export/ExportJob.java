@@ -0,0 +1,256 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.composite.table.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.ocs.dynamo.ui.composite.table.export.TableExportActionHandler.ModelExcelExport;
+import com.vaadin.server.SessionDestroyEvent;
+import com.vaadin.server.SessionDestroyListener;
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+import com.vaadin.util.CurrentInstance;
+
+/**
+ * A table export that runs in the background. The job converts the table, writes the result to a
+ * temporary file and keeps track of the number of rows that have been written so far. The file is
+ * removed when the job is discarded or when the session that started the job ends
+ * 
+ * @author bas.rutten
+ */
+public class ExportJob implements Runnable {
+
+    /**
+     * The status of an export job
+     */
+    public enum Status {
+        QUEUED, RUNNING, DONE, CANCELLED, FAILED;
+    }
+
+    /**
+     * Listener that is notified when an export job is no longer running
+     * 
+     * @author bas.rutten
+     */
+    public interface ExportJobListener {
+
+        /**
+         * Called (from the thread that runs the job) when the job is done, cancelled or failed
+         * 
+         * @param job
+         */
+        void finished(ExportJob job);
+    }
+
+    private static final Logger LOG = Logger.getLogger(ExportJob.class);
+
+    // the number of rows that have been written
+    private final AtomicInteger counter = new AtomicInteger();
+
+    // the estimated number of rows
+    private final int estimatedSize;
+
+    private final ModelExcelExport export;
+
+    // the name of the file that is offered for download
+    private final String fileName;
+
+    private final UI ui;
+
+    private volatile boolean cancelled;
+
+    // the listener that discards the job when the session ends
+    private volatile SessionDestroyListener destroyListener;
+
+    // the service with which the destroy listener is registered
+    private volatile VaadinService vaadinService;
+
+    // the file that holds the result
+    private volatile File file;
+
+    private volatile Future<?> future;
+
+    private volatile ExportJobListener listener;
+
+    private volatile Status status = Status.QUEUED;
+
+    /**
+     * Constructor
+     * 
+     * @param export
+     *            the export to run
+     * @param ui
+     *            the UI on whose behalf the export is run
+     * @param fileName
+     *            the name of the file that is offered for download
+     * @param estimatedSize
+     *            the estimated number of rows
+     */
+    ExportJob(ModelExcelExport export, UI ui, String fileName, int estimatedSize) {
+        this.export = export;
+        this.ui = ui;
+        this.fileName = fileName;
+        this.estimatedSize = estimatedSize;
+        export.setCounter(counter);
+    }
+
+    /**
+     * Cancels the job. A queued job will not be started, a running job stops before it writes its
+     * next row
+     */
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+            if (Status.QUEUED.equals(status)) {
+                status = Status.CANCELLED;
+            }
+        }
+        export.cancel();
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Cancels the job (if it is still running) and removes the file that holds the result
+     */
+    public void discard() {
+        cancel();
+        File result = file;
+        if (result != null && result.exists() && !result.delete()) {
+            LOG.warn("Could not remove export file " + result.getAbsolutePath());
+        }
+        file = null;
+
+        SessionDestroyListener registered = destroyListener;
+        if (registered != null) {
+            destroyListener = null;
+            vaadinService.removeSessionDestroyListener(registered);
+        }
+    }
+
+    /**
+     * Makes sure the job is discarded (and its file removed) when a session ends
+     * 
+     * @param session
+     *            the session that started the job
+     */
+    void discardOnDestroy(final VaadinSession session) {
+        vaadinService = session.getService();
+        destroyListener = new SessionDestroyListener() {
+
+            private static final long serialVersionUID = 2384602418893711075L;
+
+            @Override
+            public void sessionDestroy(SessionDestroyEvent event) {
+                if (event.getSession() == session) {
+                    discard();
+                }
+            }
+        };
+        vaadinService.addSessionDestroyListener(destroyListener);
+    }
+
+    /**
+     * Marks the job as finished and notifies the listener
+     * 
+     * @param result
+     *            the outcome of the job
+     */
+    private void finish(Status result) {
+        synchronized (this) {
+            if (cancelled && Status.DONE.equals(result)) {
+                // the job was cancelled while the file was being written
+                discard();
+                status = Status.CANCELLED;
+            } else {
+                status = result;
+            }
+        }
+        if (listener != null) {
+            listener.finished(this);
+        }
+    }
+
+    public int getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Returns the number of rows that have been written so far
+     * 
+     * @return
+     */
+    public int getRowsWritten() {
+        return counter.get();
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (!Status.QUEUED.equals(status)) {
+                return;
+            }
+            status = Status.RUNNING;
+        }
+
+        // the conversion formats values using the locale of the session
+        if (ui != null) {
+            CurrentInstance.setCurrent(ui);
+        }
+        Status result = Status.FAILED;
+        try {
+            export.convertTable();
+            file = export.writeToFile();
+            result = Status.DONE;
+        } catch (CancellationException ex) {
+            export.dispose();
+            result = Status.CANCELLED;
+        } catch (IOException | RuntimeException ex) {
+            LOG.error(ex.getMessage(), ex);
+            export.dispose();
+            result = cancelled ? Status.CANCELLED : Status.FAILED;
+        } finally {
+            CurrentInstance.clearAll();
+        }
+        finish(result);
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    public void setListener(ExportJobListener listener) {
+        this.listener = listener;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.composite.table.export;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+
+import org.apache.log4j.Logger;
+
+import com.ocs.dynamo.service.MessageService;
+import com.ocs.dynamo.ui.Buildable;
+import com.ocs.dynamo.ui.ServiceLocator;
+import com.ocs.dynamo.ui.component.DefaultHorizontalLayout;
+import com.ocs.dynamo.ui.component.DefaultVerticalLayout;
+import com.ocs.dynamo.ui.component.DownloadButton;
+import com.ocs.dynamo.ui.composite.form.ProgressBarUpdater;
+import com.ocs.dynamo.ui.composite.form.ProgressForm;
+import com.ocs.dynamo.ui.composite.form.Progressable;
+import com.ocs.dynamo.ui.composite.table.export.ExportJob.ExportJobListener;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Panel;
+import com.vaadin.ui.ProgressBar;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.VerticalLayout;
+import com.vaadin.ui.Window;
+
+/**
+ * A non-modal window that displays the progress of a background export job and offers the file
+ * for download once the job is done, so that the user can keep working while the export runs.
+ * Closing the window cancels the job
+ * 
+ * @author bas.rutten
+ */
+public class ExportJobDialog extends Window implements Buildable, Progressable, ExportJobListener {
+
+    private static final long serialVersionUID = 3716529484625049611L;
+
+    private static final Logger LOG = Logger.getLogger(ExportJobDialog.class);
+
+    private final ExportJob job;
+
+    private final MessageService messageService;
+
+    private final String title;
+
+    private final UI ui;
+
+    private Button cancelButton;
+
+    private DownloadButton downloadButton;
+
+    private ProgressBar progressBar;
+
+    private Label status;
+
+    private ProgressBarUpdater updater;
+
+    /**
+     * Constructor
+     * 
+     * @param job
+     *            the job whose progress to display
+     * @param ui
+     *            the UI to which the dialog is added
+     * @param title
+     *            the title of the report that is exported
+     */
+    public ExportJobDialog(ExportJob job, UI ui, String title) {
+        this.job = job;
+        this.ui = ui;
+        this.title = title;
+        this.messageService = ServiceLocator.getMessageService();
+        job.setListener(this);
+    }
+
+    @Override
+    public void build() {
+        setModal(false);
+        setResizable(false);
+
+        Panel panel = new Panel();
+        panel.setCaptionAsHtml(true);
+        panel.setCaption(getTitle());
+        setContent(panel);
+
+        VerticalLayout main = new DefaultVerticalLayout();
+        main.setStyleName("ocsDialog");
+        panel.setContent(main);
+
+        progressBar = new ProgressBar(0.0f);
+        progressBar.setSizeFull();
+        main.addComponent(progressBar);
+
+        status = new Label();
+        main.addComponent(status);
+
+        HorizontalLayout buttonBar = new DefaultHorizontalLayout();
+        main.addComponent(buttonBar);
+        buildButtonBar(buttonBar);
+
+        addCloseListener(new CloseListener() {
+
+            private static final long serialVersionUID = -3019874395530613452L;
+
+            @Override
+            public void windowClose(CloseEvent e) {
+                stopPolling();
+                job.discard();
+            }
+        });
+    }
+
+    /**
+     * Adds the download and cancel buttons
+     * 
+     * @param buttonBar
+     *            the button bar
+     */
+    private void buildButtonBar(HorizontalLayout buttonBar) {
+        downloadButton = new DownloadButton(messageService.getMessage("ocs.download")) {
+
+            private static final long serialVersionUID = -1565436325749113284L;
+
+            @Override
+            protected byte[] doCreateContent() {
+                // not used - the content is streamed from the file
+                return null;
+            }
+
+            @Override
+            protected InputStream doCreateStream() {
+                File file = job.getFile();
+                if (file != null) {
+                    try {
+                        return new FileInputStream(file);
+                    } catch (FileNotFoundException ex) {
+                        LOG.error(ex.getMessage(), ex);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            protected String doCreateFileName() {
+                return job.getFileName();
+            }
+        };
+        downloadButton.setEnabled(false);
+        buttonBar.addComponent(downloadButton);
+
+        cancelButton = new Button(messageService.getMessage("ocs.cancel"));
+        cancelButton.addClickListener(new Button.ClickListener() {
+
+            private static final long serialVersionUID = 7427346310519734285L;
+
+            @Override
+            public void buttonClick(ClickEvent event) {
+                ExportJobDialog.this.close();
+            }
+        });
+        buttonBar.addComponent(cancelButton);
+    }
+
+    @Override
+    public int estimateCurrentProgress() {
+        return job.getRowsWritten();
+    }
+
+    @Override
+    public void finished(final ExportJob finishedJob) {
+        ui.access(new Runnable() {
+
+            @Override
+            public void run() {
+                stopPolling();
+                switch (finishedJob.getStatus()) {
+                case DONE:
+                    progressBar.setValue(1.0f);
+                    status.setValue(messageService.getMessage("ocs.export.ready"));
+                    downloadButton.setEnabled(true);
+                    break;
+                case CANCELLED:
+                    status.setValue(messageService.getMessage("ocs.export.cancelled"));
+                    break;
+                default:
+                    status.setValue(messageService.getMessage("ocs.export.failed"));
+                    break;
+                }
+            }
+        });
+    }
+
+    public Button getCancelButton() {
+        return cancelButton;
+    }
+
+    public DownloadButton getDownloadButton() {
+        return downloadButton;
+    }
+
+    @Override
+    public ProgressBar getProgressBar() {
+        return progressBar;
+    }
+
+    @Override
+    public Label getStatusLabel() {
+        return status;
+    }
+
+    private String getTitle() {
+        return messageService.getMessage("ocs.export") + " " + title;
+    }
+
+    /**
+     * Starts polling for progress. Must be called from the UI thread after the job has been
+     * submitted
+     */
+    public void start() {
+        ui.setPollInterval(ProgressForm.POLL_INTERVAL);
+        updater = new ProgressBarUpdater(this, job.getEstimatedSize());
+        Thread updateThread = new Thread(updater);
+        updateThread.setDaemon(true);
+        updateThread.start();
+    }
+
+    /**
+     * Stops updating the progress bar and disables polling
+     */
+    private void stopPolling() {
+        if (updater != null) {
+            updater.setStopped(true);
+            updater = null;
+            ui.setPollInterval(-1);
+        }
+    }
+}
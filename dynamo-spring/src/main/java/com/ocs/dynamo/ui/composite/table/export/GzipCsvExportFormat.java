@@ -0,0 +1,69 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.composite.table.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the rows of a table as a gzip compressed CSV file
+ * 
+ * @author bas.rutten
+ */
+public class GzipCsvExportFormat extends CsvExportFormat {
+
+    private static final long serialVersionUID = 2208743559155614829L;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Constructor
+     */
+    public GzipCsvExportFormat() {
+        super();
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param separator
+     *            the field separator
+     * @param quote
+     *            the quote character
+     */
+    public GzipCsvExportFormat(char separator, char quote) {
+        super(separator, quote);
+    }
+
+    @Override
+    public RowWriter createWriter(OutputStream out) throws IOException {
+        return super.createWriter(new GZIPOutputStream(out, BUFFER_SIZE));
+    }
+
+    @Override
+    public String getCaptionKey() {
+        return "ocs.export.csv.gz";
+    }
+
+    @Override
+    public String getExtension() {
+        return "csv.gz";
+    }
+
+    @Override
+    public String getMimeType() {
+        return "application/gzip";
+    }
+}
@@ -16,13 +16,24 @@ package com.ocs.dynamo.ui.composite.table.export;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.apache.poi.ss.usermodel.Cell;
@@ -30,29 +41,55 @@ import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.DataFormat;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.ss.util.CellUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.vaadin.addons.lazyquerycontainer.QueryDefinition;
+
+import com.ocs.dynamo.dao.query.CloseableIterator;
+import com.ocs.dynamo.domain.AbstractEntity;
+import com.ocs.dynamo.domain.model.AttributeDateType;
 import com.ocs.dynamo.domain.model.AttributeModel;
 import com.ocs.dynamo.domain.model.EntityModel;
 import com.ocs.dynamo.domain.model.EntityModelFactory;
+import com.ocs.dynamo.exception.OCSRuntimeException;
 import com.ocs.dynamo.service.MessageService;
 import com.ocs.dynamo.ui.ServiceLocator;
 import com.ocs.dynamo.ui.composite.table.ModelBasedTreeTable;
 import com.ocs.dynamo.ui.composite.table.TableUtils;
+import com.ocs.dynamo.ui.container.ServiceContainer;
+import com.ocs.dynamo.ui.container.ServiceQueryDefinition;
+import com.ocs.dynamo.ui.converter.WeekCodeConverter;
+import com.ocs.dynamo.ui.utils.VaadinUtils;
+import com.ocs.dynamo.utils.ClassUtils;
 import com.ocs.dynamo.utils.StringUtil;
+import com.ocs.dynamo.utils.SystemPropertyUtils;
 import com.vaadin.addon.tableexport.ExcelExport;
+import com.vaadin.addon.tableexport.ExportableFormattedProperty;
 import com.vaadin.data.Container;
 import com.vaadin.data.Item;
 import com.vaadin.data.Property;
 import com.vaadin.data.util.ObjectProperty;
 import com.vaadin.event.Action;
 import com.vaadin.event.Action.Handler;
+import com.vaadin.server.DownloadStream;
+import com.vaadin.server.StreamResource;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.server.VaadinSession;
 import com.vaadin.ui.Grid;
 import com.vaadin.ui.Grid.Column;
 import com.vaadin.ui.Grid.HeaderRow;
+import com.vaadin.ui.Notification;
 import com.vaadin.ui.Table;
+import com.vaadin.ui.Table.ColumnGenerator;
 import com.vaadin.ui.TreeTable;
 import com.vaadin.ui.UI;
 
@@ -92,15 +129,160 @@ public class TableExportActionHandler implements Handler {
          */
         private CellStyle normal;
 
+        /**
+         * Whether the rows are streamed to disk (using an SXSSFWorkbook)
+         */
+        private final boolean streaming;
+
+        /**
+         * The column totals. When streaming, the rows are no longer available when the totals
+         * row is added, so the totals are computed while writing the rows
+         */
+        private double[] totals;
+
+        /**
+         * Counter that is incremented for every row that is written (optional)
+         */
+        private AtomicInteger counter;
+
+        /**
+         * Whether the export has been cancelled
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * The writers for the columns - resolved when the first row is written
+         */
+        private ColumnWriter[] columnWriters;
+
+        /**
+         * The description of the export when the rows are read from a service rather than from
+         * the table (optional)
+         */
+        private final ExportDescription<?, ?> description;
+
+        /**
+         * The table that is exported
+         */
+        private final Table table;
+
+        /**
+         * The locale that is used to format the values - determined when the export is created
+         */
+        private final Locale locale;
+
+        /**
+         * The time zone that is used to format dates - determined when the export is created
+         */
+        private final TimeZone timeZone;
+
+        /**
+         * Writes the cells of a single column. Numbers are written as numerical values, all other
+         * values are formatted in the same way as in a text based export
+         * 
+         * @author bas.rutten
+         */
+        private final class ColumnWriter {
+
+            private final ColumnFormatter formatter;
+
+            /**
+             * The scale to which percentages are rounded
+             */
+            private final int percentageScale;
+
+            /**
+             * Constructor
+             * 
+             * @param propId
+             *            the ID of the property that is written in the column
+             */
+            ColumnWriter(Object propId) {
+                this.formatter = new ColumnFormatter(propId, findAttributeModel(propId), locale,
+                        timeZone);
+                AttributeModel am = formatter.getAttributeModel();
+                this.percentageScale = am != null ? am.getPrecision() + 2 : 0;
+            }
+
+            /**
+             * Writes a (non-null) value to a cell
+             * 
+             * @param cell
+             *            the cell
+             * @param value
+             *            the value
+             * @return the standard style of the cell
+             */
+            CellStyle write(Cell cell, Object value) {
+                AttributeModel am = formatter.getAttributeModel();
+                // for numbers we do not use the default formatting since
+                // that would produce strings and we
+                // want actual numerical values
+                if (value instanceof Integer) {
+                    cell.setCellValue(((Integer) value).doubleValue());
+                    return integerStyle;
+                } else if (value instanceof BigDecimal) {
+                    if (am != null && am.isPercentage()) {
+                        // percentages in the application are just numbers,
+                        // but in Excel they are fractions that
+                        // are displayed as percentages -> so, divide by 100
+                        double temp = ((BigDecimal) value)
+                                .divide(HUNDRED, 10, RoundingMode.HALF_UP)
+                                .setScale(percentageScale, RoundingMode.HALF_UP).doubleValue();
+                        cell.setCellValue(temp);
+                        return bigDecimalPercentageStyle;
+                    }
+                    // just display as a number
+                    cell.setCellValue(((BigDecimal) value).setScale(SCALE, RoundingMode.HALF_UP)
+                            .doubleValue());
+                    return bigDecimalStyle;
+                }
+                cell.setCellValue(formatter.format(value));
+                return normal;
+            }
+        }
+
         /**
          * Constructor
          * 
          * @param table
+         *            the table to export
+         * @param workbook
+         *            the workbook to write to. When this is an SXSSFWorkbook, the rows are
+         *            streamed to disk
          */
-        ModelExcelExport(Table table) {
-            super(table, new XSSFWorkbook(), messageService.getMessage("ocs.export"),
+        ModelExcelExport(Table table, Workbook workbook) {
+            this(table, null, workbook);
+        }
+
+        /**
+         * Constructor for an export whose rows are read from a service. The export only reads
+         * the description, so it can be converted outside of the UI thread
+         * 
+         * @param description
+         *            the description of the export
+         * @param workbook
+         *            the workbook to write to
+         */
+        ModelExcelExport(ExportDescription<?, ?> description, Workbook workbook) {
+            this(description.createTable(), description, workbook);
+        }
+
+        private ModelExcelExport(Table table, ExportDescription<?, ?> description,
+                Workbook workbook) {
+            super(table, workbook, messageService.getMessage("ocs.export"),
                     TableExportActionHandler.this.reportTitle, null,
                     TableExportActionHandler.this.totalsRow);
+            this.table = table;
+            this.description = description;
+            this.locale = VaadinUtils.getLocale();
+            this.timeZone = VaadinUtils.getTimeZone(UI.getCurrent());
+            this.useTableFormatPropertyValue = TableExportActionHandler.this
+                    .useTableFormatPropertyValue;
+            streaming = workbook instanceof SXSSFWorkbook;
+            if (streaming) {
+                totals = new double[getPropIds().size()];
+            }
 
             DataFormat format = workbook.createDataFormat();
 
@@ -146,80 +328,108 @@ public class TableExportActionHandler implements Handler {
          */
         @Override
         protected void addDataRow(Sheet sheetToAddTo, Object rootItemId, int row) {
-            final Row sheetRow = sheetToAddTo.createRow(row);
-            Property<?> prop;
-            Object propId;
-            Object value;
-            Cell sheetCell;
-
             List<Object> props = getPropIds();
+            Object[] values = new Object[props.size()];
 
             // look up the item once (much faster!)
             Item item = getTableHolder().getContainerDataSource().getItem(rootItemId);
             for (int col = 0; col < props.size(); col++) {
-                propId = props.get(col);
-                prop = getProperty(item, rootItemId, propId);
-                value = prop == null ? null : prop.getValue();
+                Property<?> prop = getProperty(item, rootItemId, props.get(col));
+                values[col] = prop == null ? null : prop.getValue();
+            }
+            writeRow(sheetToAddTo, row, props, values);
+        }
+
+        /**
+         * Overwritten so that the rows of a service container are read directly from the service
+         * rather than through the container
+         */
+        @Override
+        protected int addDataRows(Sheet sheetToAddTo, int row) {
+            ExportDescription<?, ?> source = description != null ? description
+                    : createDescription(table);
+            if (source == null) {
+                return super.addDataRows(sheetToAddTo, row);
+            }
+            return addEntityRows(sheetToAddTo, row, source);
+        }
+
+        /**
+         * Adds a row for every entity that matches the filter of the described export. The
+         * entities are streamed from the service (using the sort order of the export), so they
+         * do not have to pass through the lazy query container and its items
+         * 
+         * @param sheetToAddTo
+         *            the sheet to add the rows to
+         * @param row
+         *            the index of the first row
+         * @param source
+         *            the description of the export
+         * @return the index of the row after the last added row
+         */
+        private <ID extends Serializable, T extends AbstractEntity<ID>> int addEntityRows(
+                final Sheet sheetToAddTo, final int row, final ExportDescription<ID, T> source) {
+            final List<Object> props = getPropIds();
+            final int[] localRow = { row };
+            streamEntities(source, props, new RowCallback() {
+
+                @Override
+                public void handleRow(Object[] values) {
+                    writeRow(sheetToAddTo, localRow[0]++, props, values);
+                }
+            });
+            return localRow[0];
+        }
+
+        /**
+         * Writes a single row to the sheet, using the attribute models to format the values
+         * 
+         * @param sheetToAddTo
+         *            the sheet
+         * @param row
+         *            the index of the row
+         * @param props
+         *            the IDs of the properties to write
+         * @param values
+         *            the values of the properties
+         */
+        private void writeRow(Sheet sheetToAddTo, int row, List<Object> props, Object[] values) {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (counter != null) {
+                counter.incrementAndGet();
+            }
+
+            if (columnWriters == null) {
+                columnWriters = new ColumnWriter[props.size()];
+                for (int col = 0; col < props.size(); col++) {
+                    columnWriters[col] = new ColumnWriter(props.get(col));
+                }
+            }
+
+            final Row sheetRow = sheetToAddTo.createRow(row);
+            Object value;
+            Cell sheetCell;
+
+            for (int col = 0; col < props.size(); col++) {
+                ColumnWriter writer = columnWriters[col];
+                value = values[col];
 
                 sheetCell = sheetRow.createCell(col);
 
                 CellStyle custom = null;
                 CellStyle standard = normal;
 
-                AttributeModel am = findAttributeModel(propId);
                 if (value != null) {
 
                     // custom formatting for certain cells
                     if (cellStyleGenerator != null) {
-                        custom = cellStyleGenerator.getCustomCellStyle(workbook, propId, value, am);
-                    }
-
-                    // for numbers we do not use the default formatting since
-                    // that would produce strings and we
-                    // want actual numerical values
-                    if (value instanceof Integer) {
-                        sheetCell.setCellValue(((Integer) value).doubleValue());
-                        standard = integerStyle;
-                    } else if (value instanceof BigDecimal) {
-                        boolean isPercentage = am != null && am.isPercentage();
-                        if (isPercentage) {
-                            // percentages in the application are just numbers,
-                            // but in Excel they are fractions that
-                            // are displayed as percentages -> so, divide by 100
-                            double temp = ((BigDecimal) value)
-                                    .divide(HUNDRED, 10, RoundingMode.HALF_UP)
-                                    .setScale(am.getPrecision() + 2, RoundingMode.HALF_UP)
-                                    .doubleValue();
-                            sheetCell.setCellValue(temp);
-                            standard = bigDecimalPercentageStyle;
-                        } else {
-                            // just display as a number
-                            sheetCell.setCellValue(((BigDecimal) value).setScale(SCALE,
-                                    RoundingMode.HALF_UP).doubleValue());
-                            standard = bigDecimalStyle;
-                        }
-                    } else if (am != null) {
-                        // if it's an actual model attribute, then defer to the
-                        // normal formatting functionality
-
-                        // replace all HTML breaks
-                        if (value instanceof String) {
-                            value = StringUtil.replaceHtmlBreaks((String) value);
-                        }
-
-                        // if there is only one entity model, use that one.
-                        EntityModel<?> onlyModel = entityModels.size() == 1 ? entityModels.get(0)
-                                : null;
-                        sheetCell.setCellValue(TableUtils.formatPropertyValue(entityModelFactory,
-                                onlyModel != null ? onlyModel : am.getEntityModel(),
-                                messageService, propId, value));
-                    } else {
-                        // if everything else fails, use the string
-                        // representation
-                        String v = value == null ? "" : value.toString();
-                        v = StringUtil.replaceHtmlBreaks(v);
-                        sheetCell.setCellValue(v);
+                        custom = cellStyleGenerator.getCustomCellStyle(workbook,
+                                writer.formatter.getPropId(), value,
+                                writer.formatter.getAttributeModel());
                     }
+                    standard = writer.write(sheetCell, value);
                 }
 
                 if (custom != null) {
@@ -227,6 +437,10 @@ public class TableExportActionHandler implements Handler {
                 } else if (standard != null) {
                     sheetCell.setCellStyle(standard);
                 }
+
+                if (totals != null && Cell.CELL_TYPE_NUMERIC == sheetCell.getCellType()) {
+                    totals[col] += sheetCell.getNumericCellValue();
+                }
             }
         }
 
@@ -338,6 +552,11 @@ public class TableExportActionHandler implements Handler {
                                 + ")");
                     } else {
                         cell.setCellFormula("SUM(" + cra.formatAsString() + ")");
+                        if (totals != null) {
+                            // the formula cannot be evaluated on a streamed sheet, so store the
+                            // total that was computed while writing the rows
+                            cell.setCellValue(totals[col]);
+                        }
                     }
                 } else {
                     if (0 == col) {
@@ -348,6 +567,20 @@ public class TableExportActionHandler implements Handler {
             }
         }
 
+        /**
+         * Overwritten for streaming exports - the formula evaluator of a streamed workbook only
+         * sees the rows that have not been flushed yet, so Excel is told to recalculate the
+         * formulas when the file is opened. The remaining formatting (evaluating the formulas that
+         * can be evaluated and sizing the columns) is left to the parent class
+         */
+        @Override
+        protected void finalSheetFormat() {
+            if (streaming) {
+                ((SXSSFWorkbook) workbook).getXSSFWorkbook().setForceFormulaRecalculation(true);
+            }
+            super.finalSheetFormat();
+        }
+
         /**
          * Looks up an attribute model in the list of available models
          * 
@@ -355,15 +588,7 @@ public class TableExportActionHandler implements Handler {
          * @return
          */
         protected AttributeModel findAttributeModel(Object propId) {
-            if (entityModels != null) {
-                for (EntityModel<?> em : entityModels) {
-                    AttributeModel am = em.getAttributeModel(propId.toString());
-                    if (am != null) {
-                        return am;
-                    }
-                }
-            }
-            return null;
+            return getAttributeModel(propId);
         }
 
         /**
@@ -457,12 +682,8 @@ public class TableExportActionHandler implements Handler {
          */
         @Override
         public boolean sendConverted() {
-            File tempFile = null;
-            FileOutputStream fileOut = null;
             try {
-                tempFile = File.createTempFile("tmp", ".xlsx");
-                fileOut = new FileOutputStream(tempFile);
-                workbook.write(fileOut);
+                File tempFile = writeToFile();
                 if (null == mimeType) {
                     setMimeType(MIME_TYPE);
                 }
@@ -473,21 +694,351 @@ public class TableExportActionHandler implements Handler {
             } catch (IOException e) {
                 LOG.error(e.getMessage(), e);
                 return false;
+            }
+        }
+
+        /**
+         * Writes the converted workbook to a temporary file
+         * 
+         * @return the file
+         * @throws IOException
+         */
+        File writeToFile() throws IOException {
+            File tempFile = File.createTempFile("tmp", ".xlsx");
+            try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+                workbook.write(fileOut);
             } finally {
-                if (tempFile != null) {
-                    tempFile.deleteOnExit();
+                dispose();
+            }
+            return tempFile;
+        }
+
+        /**
+         * Removes the temporary files that contain the streamed rows (if any)
+         */
+        void dispose() {
+            if (streaming) {
+                ((SXSSFWorkbook) workbook).dispose();
+            }
+        }
+
+        /**
+         * Cancels the export. The conversion stops with a CancellationException before the next
+         * row is written
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Sets the counter that is incremented for every row that is written
+         * 
+         * @param counter
+         */
+        void setCounter(AtomicInteger counter) {
+            this.counter = counter;
+        }
+    }
+
+    /**
+     * Formats the values of a single column, using the attribute model of the column where
+     * available. The attribute model and the date or week formatter are resolved once rather than
+     * for every value. The formatters are not thread safe, but an export is always written by a
+     * single thread
+     * 
+     * @author bas.rutten
+     */
+    private final class ColumnFormatter {
+
+        private final AttributeModel am;
+
+        /**
+         * Formatter for date attributes (if applicable)
+         */
+        private final DateFormat dateFormat;
+
+        /**
+         * The entity model that is used to format the values
+         */
+        private final EntityModel<?> entityModel;
+
+        private final Locale locale;
+
+        private final Object propId;
+
+        /**
+         * Converter for week attributes (if applicable)
+         */
+        private final WeekCodeConverter weekCodeConverter;
+
+        /**
+         * Constructor
+         * 
+         * @param propId
+         *            the ID of the property that is displayed in the column
+         * @param am
+         *            the attribute model of the property (if any)
+         * @param locale
+         *            the locale that is used to format the values
+         * @param timeZone
+         *            the time zone that is used to format dates
+         */
+        ColumnFormatter(Object propId, AttributeModel am, Locale locale, TimeZone timeZone) {
+            this.propId = propId;
+            this.am = am;
+            this.locale = locale;
+
+            // if there is only one entity model, use that one.
+            EntityModel<?> onlyModel = entityModels != null && entityModels.size() == 1
+                    ? entityModels.get(0) : null;
+            this.entityModel = onlyModel != null || am == null ? onlyModel : am.getEntityModel();
+
+            AttributeModel formatModel = entityModel == null ? null : entityModel
+                    .getAttributeModel(propId.toString());
+            if (formatModel != null && formatModel.isWeek()) {
+                weekCodeConverter = new WeekCodeConverter();
+                dateFormat = null;
+            } else if (formatModel != null && Date.class.equals(formatModel.getType())) {
+                weekCodeConverter = null;
+                dateFormat = new SimpleDateFormat(formatModel.getDisplayFormat());
+                // ignore time zones for a pure date field
+                if (!AttributeDateType.TIME.equals(formatModel.getDateType())) {
+                    dateFormat.setTimeZone(timeZone);
+                }
+            } else {
+                weekCodeConverter = null;
+                dateFormat = null;
+            }
+        }
+
+        /**
+         * Formats a (non-null) value
+         * 
+         * @param value
+         *            the value
+         * @return the formatted value, or <code>null</code> if the attribute model does not
+         *         provide a representation for the value (e.g. a boolean without a true or false
+         *         representation). The Excel export leaves the cell empty in that case
+         */
+        String format(Object value) {
+            if (am == null) {
+                // if everything else fails, use the string representation
+                return StringUtil.replaceHtmlBreaks(value.toString());
+            } else if (weekCodeConverter != null) {
+                return weekCodeConverter.convertToPresentation((Date) value, String.class, locale);
+            } else if (dateFormat != null) {
+                return dateFormat.format((Date) value);
+            }
+
+            // if it's an actual model attribute, then defer to the normal formatting
+            // functionality (after replacing all HTML breaks)
+            Object formatted = value;
+            if (value instanceof String) {
+                formatted = StringUtil.replaceHtmlBreaks((String) value);
+            }
+            return TableUtils.formatPropertyValue(entityModelFactory, entityModel,
+                    messageService, propId, formatted, locale);
+        }
+
+        AttributeModel getAttributeModel() {
+            return am;
+        }
+
+        Object getPropId() {
+            return propId;
+        }
+    }
+
+    /**
+     * Writes the rows of a table in a text based export format. The export is started when the
+     * file is downloaded, outside of the request that created the export, so everything that is
+     * read from the table is read while holding the lock on the session
+     * 
+     * @author bas.rutten
+     */
+    class ModelTextExport {
+
+        private final ExportFormat format;
+
+        /**
+         * The locale that is used to format the values. This is determined up front since the
+         * rows are written while the download is requested
+         */
+        private final Locale locale;
+
+        private final VaadinSession session;
+
+        private final Table table;
+
+        /**
+         * The time zone that is used to format dates
+         */
+        private final TimeZone timeZone;
+
+        /**
+         * Constructor
+         * 
+         * @param table
+         *            the table to export
+         * @param format
+         *            the format to write the rows in
+         */
+        ModelTextExport(Table table, ExportFormat format) {
+            this.table = table;
+            this.format = format;
+            this.locale = VaadinUtils.getLocale();
+            this.timeZone = VaadinUtils.getTimeZone(UI.getCurrent());
+            this.session = VaadinSession.getCurrent();
+        }
+
+        /**
+         * Formats the values of a row
+         * 
+         * @param formatters
+         *            the formatters of the columns
+         * @param values
+         *            the values of the properties
+         * @return
+         */
+        private String[] formatRow(ColumnFormatter[] formatters, Object[] values) {
+            String[] result = new String[formatters.length];
+            for (int col = 0; col < formatters.length; col++) {
+                if (values[col] != null) {
+                    result[col] = formatters[col].format(values[col]);
+                    if (result[col] == null) {
+                        // fall back to the string representation
+                        result[col] = StringUtil.replaceHtmlBreaks(values[col].toString());
+                    }
                 }
+            }
+            return result;
+        }
+
+        private void lock() {
+            if (session != null) {
+                session.lock();
+            }
+        }
+
+        private void unlock() {
+            if (session != null) {
+                session.unlock();
+            }
+        }
+
+        /**
+         * Writes the header row and the data rows to the provided stream. The columns, headers and
+         * query are copied while holding the lock on the session. Rows that are read from the
+         * service are written after the lock has been released, rows that are read from the
+         * container are written while holding the lock
+         * 
+         * @param out
+         *            the stream to write to
+         * @throws IOException
+         */
+        void write(OutputStream out) throws IOException {
+            try (final ExportFormat.RowWriter writer = format.createWriter(out)) {
+                final ColumnFormatter[] formatters;
+                ExportDescription<?, ?> description;
+                List<Object> props;
+
+                lock();
                 try {
-                    if (fileOut != null) {
-                        fileOut.close();
+                    props = getPropIds(table);
+                    formatters = new ColumnFormatter[props.size()];
+                    String[] headers = new String[props.size()];
+                    for (int col = 0; col < props.size(); col++) {
+                        Object propId = props.get(col);
+                        formatters[col] = new ColumnFormatter(propId, getAttributeModel(propId),
+                                locale, timeZone);
+                        String header = table.getColumnHeader(propId);
+                        headers[col] = header != null ? header : propId.toString();
+                    }
+                    writer.writeRow(headers);
+
+                    description = createDescription(table);
+                    if (description == null) {
+                        writeContainerRows(writer, props, formatters);
+                        return;
                     }
-                } catch (final IOException e) {
-                    LOG.error(e.getMessage(), e);
+                } finally {
+                    unlock();
                 }
+
+                streamEntities(description, props, new RowCallback() {
+
+                    @Override
+                    public void handleRow(Object[] values) {
+                        try {
+                            writer.writeRow(formatRow(formatters, values));
+                        } catch (IOException ex) {
+                            throw new OCSRuntimeException(ex.getMessage(), ex);
+                        }
+                    }
+                });
+            }
+        }
+
+        /**
+         * Writes the rows of the container. Must be called while holding the lock on the session
+         * 
+         * @param writer
+         *            the writer
+         * @param props
+         *            the IDs of the exported properties
+         * @param formatters
+         *            the formatters of the columns
+         * @throws IOException
+         */
+        private void writeContainerRows(ExportFormat.RowWriter writer, List<Object> props,
+                ColumnFormatter[] formatters) throws IOException {
+            Container container = table.getContainerDataSource();
+            boolean formattedValues = useFormattedValues(table);
+            Object[] values = new Object[props.size()];
+            for (Object itemId : container.getItemIds()) {
+                Item item = container.getItem(itemId);
+                for (int col = 0; col < props.size(); col++) {
+                    Object propId = props.get(col);
+                    ColumnGenerator generator = table.getColumnGenerator(propId);
+                    if (generator != null) {
+                        Object cell = generator.generateCell(table, itemId, propId);
+                        values[col] = cell instanceof Property ? ((Property<?>) cell).getValue()
+                                : null;
+                    } else {
+                        Property<?> prop = item.getItemProperty(propId);
+                        values[col] = prop == null ? null : prop.getValue();
+                        if (formattedValues) {
+                            // use the formatted value when it differs from the raw value, like
+                            // the Excel export does
+                            String formatted = ((ExportableFormattedProperty) table)
+                                    .getFormattedPropertyValue(itemId, propId, prop);
+                            if (values[col] == null || !values[col].toString().equals(formatted)) {
+                                values[col] = formatted;
+                            }
+                        }
+                    }
+                }
+                writer.writeRow(formatRow(formatters, values));
             }
         }
     }
 
+    /**
+     * Callback that receives the values of the exported rows one by one
+     * 
+     * @author bas.rutten
+     */
+    private interface RowCallback {
+
+        /**
+         * Handles a single row
+         * 
+         * @param values
+         *            the values of the exported properties
+         */
+        void handleRow(Object[] values);
+    }
+
     private static final BigDecimal HUNDRED = new BigDecimal(100);
 
     private static final String MIME_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
@@ -514,6 +1065,27 @@ public class TableExportActionHandler implements Handler {
 
     private CustomCellStyleGenerator cellStyleGenerator;
 
+    /**
+     * The number of rows above which the export is streamed to disk
+     */
+    private int streamingThreshold = SystemPropertyUtils.getExportStreamingThreshold();
+
+    /**
+     * Whether exports are run as background jobs
+     */
+    private boolean async = SystemPropertyUtils.useAsyncExport();
+
+    /**
+     * Whether to export the values as they are formatted by the table (when the table implements
+     * ExportableFormattedProperty)
+     */
+    private boolean useTableFormatPropertyValue;
+
+    /**
+     * The text based export formats, by the action that starts them
+     */
+    private Map<Action, ExportFormat> formatActions = new LinkedHashMap<>();
+
     /**
      * Constructor (for a model based export)
      * 
@@ -564,6 +1136,73 @@ public class TableExportActionHandler implements Handler {
         this.ui = ui;
         this.totalsRow = totalsRow;
         actionExport = new Action(messageService.getMessage("ocs.export"));
+        if (SystemPropertyUtils.allowCsvExport()) {
+            addExportFormat(new CsvExportFormat());
+            addExportFormat(new GzipCsvExportFormat());
+        }
+    }
+
+    /**
+     * Adds a text based export format. The format is offered as a separate action in the export
+     * menu of the table
+     * 
+     * @param format
+     *            the format to add
+     */
+    public void addExportFormat(ExportFormat format) {
+        formatActions.put(new Action(messageService.getMessage(format.getCaptionKey())), format);
+    }
+
+    /**
+     * Describes the export of a table whose rows can be read directly from the service
+     * 
+     * @param table
+     *            the table
+     * @return the description, or <code>null</code> if the rows must be read from the table
+     *         (e.g. because it has generated or formatted columns or its container is not a
+     *         service container)
+     */
+    ExportDescription<?, ?> createDescription(Table table) {
+        if (table instanceof TreeTable || useFormattedValues(table)) {
+            return null;
+        }
+        List<Object> props = getPropIds(table);
+        for (Object propId : props) {
+            if (table.getColumnGenerator(propId) != null) {
+                return null;
+            }
+        }
+        ServiceQueryDefinition<?, ?> definition = findServiceQueryDefinition(table
+                .getContainerDataSource());
+        return definition == null ? null : ExportDescription.create(table, props, definition);
+    }
+
+    /**
+     * Constructs the name of the exported file
+     * 
+     * @param extension
+     *            the extension of the file
+     * @return
+     */
+    private String createFileName(String extension) {
+        String fcd = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        return (reportTitle + " " + fcd + "." + extension).replace(' ', '_');
+    }
+
+    /**
+     * Creates the workbook to export to
+     * 
+     * @param streaming
+     *            whether to stream the rows to (compressed) temporary files rather than keeping
+     *            them in memory
+     * @return
+     */
+    private Workbook createWorkbook(boolean streaming) {
+        if (streaming) {
+            return new SXSSFWorkbook(new XSSFWorkbook(),
+                    SystemPropertyUtils.getExportRowWindowSize(), true);
+        }
+        return new XSSFWorkbook();
     }
 
     /**
@@ -612,7 +1251,18 @@ public class TableExportActionHandler implements Handler {
      */
     @Override
     public Action[] getActions(Object target, Object sender) {
-        return new Action[] { actionExport };
+        // the text formats write a flat list of rows, so they are not offered for tree tables
+        if (formatActions.isEmpty() || sender instanceof TreeTable) {
+            return new Action[] { actionExport };
+        }
+        List<Action> actions = new ArrayList<>();
+        actions.add(actionExport);
+        actions.addAll(formatActions.keySet());
+        return actions.toArray(new Action[actions.size()]);
+    }
+
+    public int getStreamingThreshold() {
+        return streamingThreshold;
     }
 
     /**
@@ -632,8 +1282,18 @@ public class TableExportActionHandler implements Handler {
 
             TableExportService service = ServiceLocator.getService(TableExportService.class);
 
-            ExcelExport export = null;
-            export = new ModelExcelExport((Table) sender);
+            Table table = (Table) sender;
+
+            // hierarchical exports group and sum rows after they have been written, so these
+            // cannot be streamed
+            boolean streaming = !(sender instanceof TreeTable)
+                    && table.getContainerDataSource().size() > streamingThreshold;
+
+            // a background export only reads the description, never the table itself
+            ExportDescription<?, ?> description = async ? createDescription(table) : null;
+            ModelExcelExport export = description != null ? new ModelExcelExport(description,
+                    createWorkbook(streaming)) : new ModelExcelExport(table,
+                    createWorkbook(streaming));
             export.setReportTitle(reportTitle);
             export.setRowHeaders(((Table) sender).getVisibleColumns().length > 1);
             if (sender instanceof TreeTable) {
@@ -643,14 +1303,244 @@ public class TableExportActionHandler implements Handler {
                 export.setDisplayTotals(!(sender instanceof ModelBasedTreeTable));
             }
 
-            String fcd = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
-            export.setExportFileName((reportTitle + " " + fcd + ".xlsx").replace(' ', '_'));
+            String fileName = createFileName("xlsx");
+            export.setExportFileName(fileName);
 
             // the original code uses the mime type for Excel 2003, this is
             // not what we want
             export.setMimeType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-            service.export(export);
+            if (description != null) {
+                exportInBackground(service, export, table, description.getSize(), fileName);
+            } else {
+                service.export(export);
+            }
+        } else if (formatActions.containsKey(action) && sender instanceof Table) {
+            exportText((Table) sender, formatActions.get(action));
+        }
+    }
+
+    /**
+     * Exports a table in a text based format. The rows are written directly to the response
+     * when the file is downloaded
+     * 
+     * @param table
+     *            the table to export
+     * @param format
+     *            the format to export in
+     */
+    private void exportText(Table table, final ExportFormat format) {
+        final ModelTextExport export = new ModelTextExport(table, format);
+        final String fileName = createFileName(format.getExtension());
+
+        StreamResource resource = new StreamResource(null, fileName) {
+
+            private static final long serialVersionUID = 4396270817366254104L;
+
+            @Override
+            public DownloadStream getStream() {
+                return new DownloadStream(null, format.getMimeType(), fileName) {
+
+                    private static final long serialVersionUID = -1703532436271066817L;
+
+                    @Override
+                    public void writeResponse(VaadinRequest request, VaadinResponse response)
+                            throws IOException {
+                        response.setContentType(format.getMimeType());
+                        response.setHeader("Content-Disposition", "attachment; filename=\""
+                                + fileName + "\"");
+                        export.write(response.getOutputStream());
+                    }
+                };
+            }
+        };
+        resource.setMIMEType(format.getMimeType());
+
+        UI tableUI = table.getUI() != null ? table.getUI() : ui;
+        tableUI.getPage().open(resource, "_self", false);
+    }
+
+    /**
+     * Returns the IDs of the properties of a table that are exported: the configured columns, or
+     * the visible columns that have not been collapsed
+     * 
+     * @param table
+     *            the table
+     * @return
+     */
+    private List<Object> getPropIds(Table table) {
+        List<Object> result = new ArrayList<>();
+        if (columnIds != null) {
+            result.addAll(columnIds);
+        } else {
+            for (Object propId : table.getVisibleColumns()) {
+                if (!table.isColumnCollapsed(propId)) {
+                    result.add(propId);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the values of a table are exported as they are formatted by the table
+     * 
+     * @param table
+     *            the table
+     * @return
+     */
+    private boolean useFormattedValues(Table table) {
+        return useTableFormatPropertyValue && table instanceof ExportableFormattedProperty;
+    }
+
+    /**
+     * Looks up an attribute model in the list of available models
+     * 
+     * @param propId
+     * @return
+     */
+    private AttributeModel getAttributeModel(Object propId) {
+        if (entityModels != null) {
+            for (EntityModel<?> em : entityModels) {
+                AttributeModel am = em.getAttributeModel(propId.toString());
+                if (am != null) {
+                    return am;
+                }
+            }
         }
+        return null;
+    }
+
+    /**
+     * Returns the query definition of a container if its rows can be read directly from the
+     * service, i.e. if it is a service container that holds no unsaved changes
+     * 
+     * @param container
+     *            the container
+     * @return the query definition, or <code>null</code> if the rows must be read from the
+     *         container
+     */
+    private ServiceQueryDefinition<?, ?> findServiceQueryDefinition(Container container) {
+        if (!(container instanceof ServiceContainer)
+                || ((ServiceContainer<?, ?>) container).isModified()) {
+            return null;
+        }
+        QueryDefinition definition = ((ServiceContainer<?, ?>) container).getQueryView()
+                .getQueryDefinition();
+        if (definition instanceof ServiceQueryDefinition) {
+            return (ServiceQueryDefinition<?, ?>) definition;
+        }
+        return null;
+    }
+
+    /**
+     * Streams the entities that match the filter of a described export from the service (using
+     * the sort order of the export), and passes the values of the exported properties to a
+     * callback. The entities are read in a new transaction, so the persistence context that holds
+     * them is not the one of the current request and can be cleared while streaming
+     * 
+     * @param source
+     *            the description of the export
+     * @param props
+     *            the IDs of the exported properties
+     * @param callback
+     *            the callback that receives the rows
+     */
+    private <ID extends Serializable, T extends AbstractEntity<ID>> void streamEntities(
+            final ExportDescription<ID, T> source, final List<Object> props,
+            final RowCallback callback) {
+        TransactionTemplate template = new TransactionTemplate(
+                ServiceLocator.getService(PlatformTransactionManager.class));
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setReadOnly(true);
+        template.execute(new TransactionCallback<Void>() {
+
+            @Override
+            public Void doInTransaction(TransactionStatus status) {
+                Object[] values = new Object[props.size()];
+                try (CloseableIterator<T> it = source.getService().stream(source.getFilter(),
+                        source.getSortOrders(), SystemPropertyUtils.getDefaultFetchSize(), true,
+                        source.getJoins())) {
+                    while (it.hasNext()) {
+                        T entity = it.next();
+                        for (int col = 0; col < props.size(); col++) {
+                            values[col] = ClassUtils.getFieldValue(entity, props.get(col)
+                                    .toString());
+                        }
+                        callback.handleRow(values);
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs an export as a background job. A non-modal window displays the progress and offers the
+     * file for download once the export is done
+     * 
+     * @param service
+     *            the export service
+     * @param export
+     *            the export to run. This must only read the description of the export
+     * @param table
+     *            the table that is exported
+     * @param size
+     *            the number of rows that is expected
+     * @param fileName
+     *            the name of the file that is offered for download
+     */
+    private void exportInBackground(TableExportService service, ModelExcelExport export,
+            Table table, int size, String fileName) {
+        UI target = table.getUI() != null ? table.getUI() : ui;
+        ExportJob job = new ExportJob(export, target, fileName, size);
+        ExportJobDialog dialog = new ExportJobDialog(job, target, reportTitle);
+        dialog.build();
+        try {
+            service.submit(job);
+        } catch (RejectedExecutionException ex) {
+            LOG.warn(ex.getMessage(), ex);
+            export.dispose();
+            Notification.show(messageService.getMessage("ocs.export.busy"),
+                    Notification.Type.WARNING_MESSAGE);
+            return;
+        }
+        if (target.getSession() != null) {
+            job.discardOnDestroy(target.getSession());
+        }
+        target.addWindow(dialog);
+        dialog.start();
+    }
+
+    /**
+     * Sets whether exports are run as background jobs. Defaults to the value of the
+     * ocs.export.async system property. Only exports of tables whose rows can be read directly from
+     * the service are run in the background
+     * 
+     * @param async
+     */
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    /**
+     * Sets whether to export the values as they are formatted by the table, for tables that
+     * implement ExportableFormattedProperty. The rows of such tables are always read from the
+     * table rather than from the service
+     * 
+     * @param useTableFormatPropertyValue
+     */
+    public void setUseTableFormatPropertyValue(boolean useTableFormatPropertyValue) {
+        this.useTableFormatPropertyValue = useTableFormatPropertyValue;
+    }
+
+    /**
+     * Sets the number of rows above which the export is streamed to disk. Defaults to the value
+     * of the ocs.export.streaming.threshold system property
+     * 
+     * @param streamingThreshold
+     */
+    public void setStreamingThreshold(int streamingThreshold) {
+        this.streamingThreshold = streamingThreshold;
     }
 
 }
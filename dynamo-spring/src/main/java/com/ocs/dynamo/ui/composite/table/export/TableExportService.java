@@ -13,6 +13,18 @@
  */
 package com.ocs.dynamo.ui.composite.table.export;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import com.ocs.dynamo.utils.SystemPropertyUtils;
 import com.vaadin.addon.tableexport.ExcelExport;
 
 /**
@@ -22,6 +34,37 @@ import com.vaadin.addon.tableexport.ExcelExport;
  */
 public class TableExportService {
 
+    /**
+     * The maximum number of export jobs that can wait for a free thread
+     */
+    private static final int QUEUE_SIZE = 10;
+
+    /**
+     * The executor that runs the background export jobs. The number of threads limits the number
+     * of exports that run concurrently on this node
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Constructor
+     */
+    public TableExportService() {
+        int threads = SystemPropertyUtils.getExportThreads();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "dynamo-export-"
+                                + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
     /**
      * Performs an export from a table
      * 
@@ -30,4 +73,27 @@ public class TableExportService {
     public void export(ExcelExport export) {
         export.export();
     }
+
+    /**
+     * Shuts down the executor, cancelling any running export jobs
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Submits an export job that is run in the background
+     * 
+     * @param job
+     *            the job to run
+     * @return the future that can be used to interrupt the job
+     * @throws RejectedExecutionException
+     *             when too many export jobs are already running or waiting
+     */
+    public Future<?> submit(ExportJob job) {
+        Future<?> future = executor.submit(job);
+        job.setFuture(future);
+        return future;
+    }
 }
@@ -14,24 +14,17 @@
 package com.ocs.dynamo.ui.container;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import org.vaadin.addons.lazyquerycontainer.AbstractBeanQuery;
-import org.vaadin.addons.lazyquerycontainer.QueryDefinition;
 
 import com.ocs.dynamo.constants.DynamoConstants;
 import com.ocs.dynamo.dao.SortOrder;
 import com.ocs.dynamo.domain.AbstractEntity;
-import com.ocs.dynamo.domain.model.EntityModel;
 import com.ocs.dynamo.filter.Filter;
-import com.ocs.dynamo.filter.FilterConverter;
-import com.ocs.dynamo.ui.ServiceLocator;
 import com.ocs.dynamo.utils.ClassUtils;
-import com.vaadin.data.Container;
-import com.vaadin.data.util.filter.And;
 
 /**
  * A lazy container query that retrieves data using a service
@@ -103,28 +96,7 @@ public abstract class BaseServiceQuery<ID extends Serializable, T extends Abstra
      * @return
      */
     protected Filter constructFilter() {
-        final List<Container.Filter> filters = new ArrayList<>();
-        filters.addAll(getCustomQueryDefinition().getDefaultFilters());
-        filters.addAll(getCustomQueryDefinition().getFilters());
-
-        Container.Filter first;
-        if (!filters.isEmpty()) {
-            first = filters.remove(0);
-        } else {
-            first = null;
-        }
-        while (!filters.isEmpty()) {
-            final Container.Filter filter = filters.remove(0);
-            first = new And(first, filter);
-        }
-
-        // look up the correct entity model for filter conversion
-        EntityModel<T> em = getCustomQueryDefinition().getEntityModel();
-        if (em == null) {
-            em = ServiceLocator.getEntityModelFactory().getModel(
-                    getCustomQueryDefinition().getService().getEntityClass());
-        }
-        return new FilterConverter(em).convert(first);
+        return getCustomQueryDefinition().constructFilter();
     }
 
     /**
@@ -133,26 +105,7 @@ public abstract class BaseServiceQuery<ID extends Serializable, T extends Abstra
      * @return an array containing the constructed Order objects
      */
     protected SortOrder[] constructOrder() {
-        Object[] sortPropertyIds;
-        boolean[] sortPropertyAscendingStates;
-        QueryDefinition queryDefinition = getCustomQueryDefinition();
-
-        if (queryDefinition.getSortPropertyIds().length == 0) {
-            sortPropertyIds = queryDefinition.getDefaultSortPropertyIds();
-            sortPropertyAscendingStates = queryDefinition.getDefaultSortPropertyAscendingStates();
-        } else {
-            sortPropertyIds = queryDefinition.getSortPropertyIds();
-            sortPropertyAscendingStates = queryDefinition.getSortPropertyAscendingStates();
-        }
-
-        final SortOrder[] orders = new SortOrder[sortPropertyIds.length];
-        if (sortPropertyIds.length > 0) {
-            for (int i = 0; i < sortPropertyIds.length; i++) {
-                orders[i] = new SortOrder(sortPropertyAscendingStates[i] ? SortOrder.Direction.ASC
-                        : SortOrder.Direction.DESC, sortPropertyIds[i].toString());
-            }
-        }
-        return orders;
+        return getCustomQueryDefinition().constructOrder();
     }
 
     @Override
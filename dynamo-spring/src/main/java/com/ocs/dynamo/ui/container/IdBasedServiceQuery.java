@@ -18,8 +18,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import com.ocs.dynamo.constants.DynamoConstants;
 import com.ocs.dynamo.dao.SortOrders;
 import com.ocs.dynamo.domain.AbstractEntity;
+import com.ocs.dynamo.service.BaseService;
+import com.ocs.dynamo.utils.ClassUtils;
 
 /**
  * Service query object based on the "driving query" pattern - first retrieves the IDs of the
@@ -37,10 +40,21 @@ public class IdBasedServiceQuery<ID extends Serializable, T extends AbstractEnti
     private static final long serialVersionUID = -1910477652022230437L;
 
     /**
-     * the list of the IDs of the objects to display
+     * the list of the IDs of the objects to display (when the IDs are not numeric)
      */
     private List<ID> ids;
 
+    /**
+     * the IDs of the objects to display, when the IDs are numeric. Storing these in a primitive
+     * array takes a lot less memory than a list of boxed values
+     */
+    private long[] numericIds;
+
+    /**
+     * whether the numeric IDs are integers (rather than longs)
+     */
+    private boolean integerIds;
+
     /**
      * Constructor
      * 
@@ -52,6 +66,22 @@ public class IdBasedServiceQuery<ID extends Serializable, T extends AbstractEnti
         super(queryDefinition, queryConfiguration);
     }
 
+    /**
+     * Returns the ID at the provided index
+     * 
+     * @param index
+     *            the index
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private ID getId(int index) {
+        if (numericIds != null) {
+            long id = numericIds[index];
+            return (ID) (integerIds ? Integer.valueOf((int) id) : Long.valueOf(id));
+        }
+        return ids.get(index);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -61,21 +91,29 @@ public class IdBasedServiceQuery<ID extends Serializable, T extends AbstractEnti
         int index = firstIndex;
 
         // Try to load the IDs when they have not been loaded yet
-        if (ids == null) {
+        if (ids == null && numericIds == null) {
             size();
         }
         // construct a page worth of IDs
-        if (ids != null && !ids.isEmpty()) {
-            while (index < ids.size() && results.size() < maxResults) {
-                ID id = ids.get(index);
-                results.add(id);
-                index++;
-            }
+        int size = getIdCount();
+        while (index < size && results.size() < maxResults) {
+            results.add(getId(index));
+            index++;
         }
         return getCustomQueryDefinition().getService().fetchByIds(results,
                 new SortOrders(constructOrder()), getCustomQueryDefinition().getJoins());
     }
 
+    /**
+     * @return the number of IDs that have been retrieved
+     */
+    private int getIdCount() {
+        if (numericIds != null) {
+            return numericIds.length;
+        }
+        return ids == null ? 0 : ids.size();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -83,7 +121,18 @@ public class IdBasedServiceQuery<ID extends Serializable, T extends AbstractEnti
     public int size() {
         // retrieve the IDs of the relevant records and store them for easy
         // reference
-        ids = getCustomQueryDefinition().getService().findIds(constructFilter(), constructOrder());
+        BaseService<ID, T> service = getCustomQueryDefinition().getService();
+        Class<?> idClass = ClassUtils.getResolvedType(service.getEntityClass(),
+                DynamoConstants.ID);
+
+        ids = null;
+        numericIds = null;
+        if (Integer.class.equals(idClass) || Long.class.equals(idClass)) {
+            integerIds = Integer.class.equals(idClass);
+            numericIds = service.findNumericIds(constructFilter(), constructOrder());
+            return numericIds.length;
+        }
+        ids = service.findIds(constructFilter(), constructOrder());
         return ids.size();
     }
 
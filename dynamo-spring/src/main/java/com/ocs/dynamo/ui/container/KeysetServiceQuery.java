@@ -0,0 +1,134 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.container;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ocs.dynamo.constants.DynamoConstants;
+import com.ocs.dynamo.dao.KeysetPageable;
+import com.ocs.dynamo.dao.OffsetPageable;
+import com.ocs.dynamo.dao.SortOrder;
+import com.ocs.dynamo.dao.SortOrders;
+import com.ocs.dynamo.domain.AbstractEntity;
+import com.ocs.dynamo.filter.Filter;
+import com.ocs.dynamo.utils.ClassUtils;
+
+/**
+ * A version of the PagingServiceQuery that uses keyset (seek) pagination when the user scrolls
+ * through the results page by page. The sort key values of the last row of every page are stored so
+ * the next page can be retrieved without making the database skip all preceding rows. When a page
+ * is requested for which no such values are known (e.g. after dragging the scroll bar), the query
+ * falls back to offset based paging. This is also the case for the page that follows a row with a
+ * <code>null</code> value for one of the sort properties
+ * 
+ * @author bas.rutten
+ * @param <ID>
+ *            the type of the primary key
+ * @param <T>
+ *            the type of the entity
+ */
+public class KeysetServiceQuery<ID extends Serializable, T extends AbstractEntity<ID>> extends
+        PagingServiceQuery<ID, T> {
+
+    private static final long serialVersionUID = 3527718224419932766L;
+
+    /**
+     * The sort key values of the last row of each loaded page, keyed by the index of the first row
+     * of the page that follows it
+     */
+    private final Map<Integer, Object[]> lastValues = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     * 
+     * @param queryDefinition
+     * @param queryConfiguration
+     */
+    public KeysetServiceQuery(ServiceQueryDefinition<ID, T> queryDefinition,
+            Map<String, Object> queryConfiguration) {
+        super(queryDefinition, queryConfiguration);
+    }
+
+    /**
+     * Constructs the sort orders, making sure that the primary key is included so that they define
+     * a total ordering
+     * 
+     * @param orders
+     *            the sort orders selected by the user
+     * @return
+     */
+    protected SortOrders constructKeysetOrder(SortOrder[] orders) {
+        SortOrders result = new SortOrders(orders);
+        if (result.getOrderFor(DynamoConstants.ID) == null) {
+            result.addSortOrder(new SortOrder(DynamoConstants.ID));
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<T> loadPage(Filter serviceFilter, SortOrder[] sortOrders, int startIndex,
+            int count) {
+        SortOrders orders = constructKeysetOrder(sortOrders);
+        ServiceQueryDefinition<ID, T> definition = getCustomQueryDefinition();
+
+        List<T> result;
+        Object[] values = lastValues.get(startIndex);
+        if (startIndex == 0 || values != null) {
+            result = definition.getService().fetch(serviceFilter,
+                    new KeysetPageable(count, orders, values), definition.getJoins());
+        } else {
+            result = definition.getService().fetch(serviceFilter,
+                    new OffsetPageable(startIndex, count, orders), definition.getJoins());
+        }
+
+        if (!result.isEmpty()) {
+            Object[] next = getKeyValues(result.get(result.size() - 1), orders);
+            if (next != null) {
+                lastValues.put(startIndex + result.size(), next);
+            } else {
+                lastValues.remove(startIndex + result.size());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of the sort properties of an entity. Rows cannot be compared to a
+     * <code>null</code> value, so when one of the values is <code>null</code> the page that follows
+     * the entity has to be retrieved by offset
+     * 
+     * @param entity
+     *            the entity
+     * @param orders
+     *            the sort orders
+     * @return the values, or <code>null</code> if any of them is <code>null</code>
+     */
+    private Object[] getKeyValues(T entity, SortOrders orders) {
+        SortOrder[] keys = orders.toArray();
+        Object[] values = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = ClassUtils.getFieldValue(entity, keys[i].getProperty());
+            if (values[i] == null) {
+                return null;
+            }
+        }
+        return values;
+    }
+}
@@ -14,9 +14,18 @@
 package com.ocs.dynamo.ui.container;
 
 import java.io.Serializable;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import org.apache.log4j.Logger;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import com.ocs.dynamo.dao.OffsetPageable;
 import com.ocs.dynamo.dao.SortOrder;
 import com.ocs.dynamo.dao.SortOrders;
 import com.ocs.dynamo.domain.AbstractEntity;
@@ -36,6 +45,33 @@ public class PagingServiceQuery<ID extends Serializable, T extends AbstractEntit
 
     private static final long serialVersionUID = -324739194626626683L;
 
+    private static final Logger LOGGER = Logger.getLogger(PagingServiceQuery.class);
+
+    /**
+     * The first page, when it was retrieved while determining the size
+     */
+    private List<T> firstPage;
+
+    /**
+     * Whether the count was capped at the maximum count of the query definition
+     */
+    private boolean capped;
+
+    /**
+     * The exact number of matching entities, if known
+     */
+    private Long totalCount;
+
+    /**
+     * The batches that are being retrieved in advance, keyed by start index and count
+     */
+    private transient Map<String, Future<List<T>>> prefetched;
+
+    /**
+     * The start index of the most recently requested batch, used to determine the scroll direction
+     */
+    private int lastStartIndex;
+
     /**
      * Constructor
      * 
@@ -54,9 +90,143 @@ public class PagingServiceQuery<ID extends Serializable, T extends AbstractEntit
     protected List<T> loadBeans(int startIndex, int count) {
         Filter serviceFilter = constructFilter();
         SortOrder[] orders = constructOrder();
+
+        List<T> result;
+        if (startIndex == 0 && firstPage != null) {
+            result = firstPage;
+            firstPage = null;
+        } else {
+            result = getPrefetched(startIndex, count);
+        }
+        if (result == null) {
+            result = loadPage(serviceFilter, orders, startIndex, count);
+        }
+        prefetch(serviceFilter, orders, startIndex, count);
+        return result;
+    }
+
+    /**
+     * Retrieves a window of entities from the service
+     * 
+     * @param serviceFilter
+     *            the filter to apply
+     * @param orders
+     *            the sort orders
+     * @param startIndex
+     *            the index of the first entity to retrieve
+     * @param count
+     *            the number of entities to retrieve
+     * @return
+     */
+    protected List<T> loadPage(Filter serviceFilter, SortOrder[] orders, int startIndex,
+            int count) {
         ServiceQueryDefinition<ID, T> definition = getCustomQueryDefinition();
-        return definition.getService().fetch(serviceFilter, startIndex / definition.getBatchSize(),
-                definition.getBatchSize(), new SortOrders(orders), definition.getJoins());
+        return definition.getService().fetch(serviceFilter,
+                new OffsetPageable(startIndex, count, new SortOrders(orders)),
+                definition.getJoins());
+    }
+
+    /**
+     * Returns a batch that was retrieved in advance
+     * 
+     * @param startIndex
+     *            the index of the first entity
+     * @param count
+     *            the number of entities
+     * @return the batch, or <code>null</code> if it was not retrieved in advance
+     */
+    private List<T> getPrefetched(int startIndex, int count) {
+        if (prefetched == null) {
+            return null;
+        }
+        Future<List<T>> future = prefetched.remove(startIndex + ":" + count);
+        if (future != null) {
+            try {
+                return future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                // retrieve the batch again on this thread
+                LOGGER.warn(ex.getMessage(), ex);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Starts retrieving the next batches (in the direction in which the user is scrolling) in the
+     * background
+     * 
+     * @param serviceFilter
+     *            the filter to apply
+     * @param orders
+     *            the sort orders
+     * @param startIndex
+     *            the index of the first entity of the batch that was just requested
+     * @param count
+     *            the number of entities in the batch that was just requested
+     */
+    private void prefetch(final Filter serviceFilter, final SortOrder[] orders, int startIndex,
+            final int count) {
+        final int batches = getCustomQueryDefinition().getPrefetchBatches();
+        AsyncTaskExecutor executor = getCustomQueryDefinition().getPrefetchExecutor();
+        boolean forward = startIndex >= lastStartIndex;
+        lastStartIndex = startIndex;
+        if (batches <= 0 || count <= 0 || executor == null) {
+            return;
+        }
+
+        if (prefetched == null) {
+            prefetched = new LinkedHashMap<String, Future<List<T>>>() {
+
+                private static final long serialVersionUID = 8255497651236553468L;
+
+                @Override
+                protected boolean removeEldestEntry(Entry<String, Future<List<T>>> eldest) {
+                    if (size() > 2 * batches) {
+                        eldest.getValue().cancel(false);
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        for (int i = 1; i <= batches; i++) {
+            final int index = forward ? startIndex + i * count : startIndex - i * count;
+            String key = index + ":" + count;
+            if (index >= 0 && !prefetched.containsKey(key)) {
+                Future<List<T>> future = executor.submit(new Callable<List<T>>() {
+
+                    @Override
+                    public List<T> call() {
+                        return loadPage(serviceFilter, orders, index, count);
+                    }
+                });
+                prefetched.put(key, future);
+            }
+        }
+    }
+
+    /**
+     * Returns the exact number of entities that match the filter. When the count was capped, this
+     * performs a full count query
+     * 
+     * @return
+     */
+    public long getTotalCount() {
+        if (totalCount == null) {
+            totalCount = getCustomQueryDefinition().getService().count(constructFilter(), false);
+        }
+        return totalCount;
+    }
+
+    /**
+     * @return whether more entities match the filter than the maximum count of the query
+     *         definition. In that case {@link #size()} only returns the maximum count
+     */
+    public boolean isCapped() {
+        return capped;
     }
 
     /**
@@ -64,9 +234,36 @@ public class PagingServiceQuery<ID extends Serializable, T extends AbstractEntit
      */
     @Override
     public int size() {
-        if (getCustomQueryDefinition().getPredeterminedCount() != null) {
-            return getCustomQueryDefinition().getPredeterminedCount();
+        ServiceQueryDefinition<ID, T> definition = getCustomQueryDefinition();
+        capped = false;
+        totalCount = null;
+        definition.setCapped(false);
+        if (definition.getPredeterminedCount() != null) {
+            return definition.getPredeterminedCount();
+        }
+
+        // when the first page is not full, there is no need for a separate count query
+        if (definition.isCountWithFirstPage()) {
+            firstPage = loadPage(constructFilter(), constructOrder(), 0,
+                    definition.getBatchSize());
+            if (firstPage.size() < definition.getBatchSize()) {
+                totalCount = (long) firstPage.size();
+                return firstPage.size();
+            }
+        }
+
+        if (definition.getMaxCount() != null) {
+            long count = definition.getService().countCapped(constructFilter(),
+                    definition.getMaxCount());
+            capped = count > definition.getMaxCount();
+            definition.setCapped(capped);
+            if (capped) {
+                return definition.getMaxCount();
+            }
+            totalCount = count;
+            return (int) count;
         }
-        return (int) getCustomQueryDefinition().getService().count(constructFilter(), false);
+        totalCount = definition.getService().count(constructFilter(), false);
+        return totalCount.intValue();
     }
 }
@@ -158,6 +158,16 @@ public class ServiceContainer<ID extends Serializable, T extends AbstractEntity<
         return null;
     }
 
+    /**
+     * @return whether the size of the container was capped at the maximum count of the query
+     *         definition, i.e. whether more records match the filter than the container holds
+     */
+    public boolean isCapped() {
+        return getQueryView() != null
+                && getQueryView().getQueryDefinition() instanceof ServiceQueryDefinition<?, ?>
+                && ((ServiceQueryDefinition<?, ?>) getQueryView().getQueryDefinition()).isCapped();
+    }
+
     public void sort(SortOrder... sortOrder) {
         if (sortOrder != null && sortOrder.length > 0) {
             Object[] pIds = new Object[sortOrder.length];
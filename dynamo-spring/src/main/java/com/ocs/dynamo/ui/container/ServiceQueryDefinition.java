@@ -14,14 +14,23 @@
 package com.ocs.dynamo.ui.container;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.vaadin.addons.lazyquerycontainer.LazyQueryDefinition;
 
 import com.ocs.dynamo.constants.DynamoConstants;
+import com.ocs.dynamo.dao.SortOrder;
 import com.ocs.dynamo.dao.query.FetchJoinInformation;
 import com.ocs.dynamo.domain.AbstractEntity;
 import com.ocs.dynamo.domain.model.EntityModel;
+import com.ocs.dynamo.filter.Filter;
+import com.ocs.dynamo.filter.FilterConverter;
 import com.ocs.dynamo.service.BaseService;
+import com.ocs.dynamo.ui.ServiceLocator;
+import com.vaadin.data.Container;
+import com.vaadin.data.util.filter.And;
 
 /**
  * @author bas.rutten Base class for a query definition that uses a service for data retrieval
@@ -45,6 +54,16 @@ public class ServiceQueryDefinition<ID extends Serializable, T extends AbstractE
 
     private Integer predeterminedCount;
 
+    private boolean countWithFirstPage;
+
+    private Integer maxCount;
+
+    private boolean capped;
+
+    private int prefetchBatches;
+
+    private transient AsyncTaskExecutor prefetchExecutor;
+
     private EntityModel<T> entityModel;
 
     /**
@@ -123,6 +142,154 @@ public class ServiceQueryDefinition<ID extends Serializable, T extends AbstractE
         this.predeterminedCount = predeterminedCount;
     }
 
+    /**
+     * @return whether the first page is retrieved together with the count
+     */
+    public boolean isCountWithFirstPage() {
+        return countWithFirstPage;
+    }
+
+    /**
+     * Sets whether to retrieve the first page when determining the count. When the first page is
+     * not full, its size is the count and no separate count query is needed
+     * 
+     * @param countWithFirstPage
+     */
+    public void setCountWithFirstPage(boolean countWithFirstPage) {
+        this.countWithFirstPage = countWithFirstPage;
+    }
+
+    /**
+     * @return the maximum number of records to count
+     */
+    public Integer getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Sets the maximum number of records to count. When set, the query stops counting after this
+     * number of records, and never returns more than this number of records. Use this for queries
+     * that can match a huge number of records
+     * 
+     * @param maxCount
+     */
+    public void setMaxCount(Integer maxCount) {
+        this.maxCount = maxCount;
+    }
+
+    /**
+     * @return whether the most recent count was capped, i.e. whether more records match the
+     *         filter than the maximum count
+     */
+    public boolean isCapped() {
+        return capped;
+    }
+
+    /**
+     * Sets whether the most recent count was capped. This is set by the query after it has
+     * determined its size
+     * 
+     * @param capped
+     */
+    public void setCapped(boolean capped) {
+        this.capped = capped;
+    }
+
+    /**
+     * @return the number of batches to retrieve in advance
+     */
+    public int getPrefetchBatches() {
+        return prefetchBatches;
+    }
+
+    /**
+     * Sets the number of batches that are retrieved in the background, in the direction the user
+     * is scrolling in. Set to 0 (the default) to disable prefetching. Prefetching also requires a
+     * prefetch executor
+     * 
+     * @param prefetchBatches
+     */
+    public void setPrefetchBatches(int prefetchBatches) {
+        this.prefetchBatches = prefetchBatches;
+    }
+
+    /**
+     * @return the executor that retrieves batches in advance
+     */
+    public AsyncTaskExecutor getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    /**
+     * Sets the executor that retrieves batches in advance. Use an executor that is managed by the
+     * Spring container (e.g. a ThreadPoolTaskExecutor bean), so that it is shut down together
+     * with the application context. The batches are retrieved on the threads of this executor,
+     * which do not have the security context or any other thread-bound state of the user, so only
+     * use prefetching with services that do not require them. The executor is not serialized;
+     * after deserialization no batches are retrieved in advance
+     * 
+     * @param prefetchExecutor
+     */
+    public void setPrefetchExecutor(AsyncTaskExecutor prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Constructs the search filter from the default filters and the filters that have been added
+     * to the container
+     * 
+     * @return
+     */
+    public Filter constructFilter() {
+        final List<Container.Filter> filters = new ArrayList<>();
+        filters.addAll(getDefaultFilters());
+        filters.addAll(getFilters());
+
+        Container.Filter first;
+        if (!filters.isEmpty()) {
+            first = filters.remove(0);
+        } else {
+            first = null;
+        }
+        while (!filters.isEmpty()) {
+            final Container.Filter filter = filters.remove(0);
+            first = new And(first, filter);
+        }
+
+        // look up the correct entity model for filter conversion
+        EntityModel<T> em = getEntityModel();
+        if (em == null) {
+            em = ServiceLocator.getEntityModelFactory().getModel(getService().getEntityClass());
+        }
+        return new FilterConverter(em).convert(first);
+    }
+
+    /**
+     * Sets order clause of Service query according to query definition sort states.
+     * 
+     * @return an array containing the constructed Order objects
+     */
+    public SortOrder[] constructOrder() {
+        Object[] sortPropertyIds;
+        boolean[] sortPropertyAscendingStates;
+        if (getSortPropertyIds().length == 0) {
+            sortPropertyIds = getDefaultSortPropertyIds();
+            sortPropertyAscendingStates = getDefaultSortPropertyAscendingStates();
+        } else {
+            sortPropertyIds = getSortPropertyIds();
+            sortPropertyAscendingStates = getSortPropertyAscendingStates();
+        }
+
+        final SortOrder[] orders = new SortOrder[sortPropertyIds.length];
+        if (sortPropertyIds.length > 0) {
+            for (int i = 0; i < sortPropertyIds.length; i++) {
+                orders[i] = new SortOrder(sortPropertyAscendingStates[i] ? SortOrder.Direction.ASC
+                        : SortOrder.Direction.DESC, sortPropertyIds[i].toString());
+            }
+        }
+        return orders;
+    }
+
     public EntityModel<T> getEntityModel() {
         return entityModel;
     }
@@ -21,7 +21,12 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.validation.constraints.Size;
 
@@ -47,6 +52,18 @@ public final class ClassUtils {
 
     private static final String SET = "set";
 
+    /**
+     * Placeholder that is cached when a field or getter method does not exist
+     */
+    private static final Object NOT_FOUND = new Object();
+
+    private static final ClassValue<ConcurrentMap<String, Object>> FIELDS = new LookupCache<>();
+
+    private static final ClassValue<ConcurrentMap<String, Object>> GETTERS = new LookupCache<>();
+
+    private static final ClassValue<ConcurrentMap<String, PropertyAnnotations>> ANNOTATIONS =
+            new LookupCache<>();
+
     private ClassUtils() {
     }
 
@@ -128,8 +145,8 @@ public final class ClassUtils {
     }
 
     /**
-     * Tries to retrieve an annotation, by first looking at the field name, and then at the getter
-     * method
+     * Tries to retrieve an annotation, by first looking at the getter method, and then at the
+     * field. The result (including the absence of an annotation) is cached
      * 
      * @param clazz
      *            the class
@@ -141,11 +158,8 @@ public final class ClassUtils {
      */
     public static <T extends Annotation> T getAnnotation(Class<?> clazz, String fieldName,
             Class<T> annotationClass) {
-        T t = getAnnotationOnMethod(clazz, fieldName, annotationClass);
-        if (t == null) {
-            t = getAnnotationOnField(clazz, fieldName, annotationClass);
-        }
-        return t;
+        return annotationClass.cast(getPropertyAnnotations(clazz, fieldName).getAnnotations().get(
+                annotationClass));
     }
 
     /**
@@ -256,6 +270,21 @@ public final class ClassUtils {
         return result;
     }
 
+    /**
+     * Returns all annotations on a property, keyed by annotation type. When an annotation is
+     * present on both the getter method and the field, the one on the getter method is returned
+     * 
+     * @param clazz
+     *            the class
+     * @param fieldName
+     *            the name of the property
+     * @return
+     */
+    public static Map<Class<? extends Annotation>, Annotation> getAnnotations(Class<?> clazz,
+            String fieldName) {
+        return getPropertyAnnotations(clazz, fieldName).getAnnotations();
+    }
+
     /**
      * Retrieves the contents of a field as a byte array
      * 
@@ -305,18 +334,25 @@ public final class ClassUtils {
      * @return
      */
     public static Field getField(Class<?> clazz, String fieldName) {
-        Field field = null;
-        if (clazz != null) {
-            try {
-                field = clazz.getDeclaredField(fieldName);
-            } catch (NoSuchFieldException e) {
-                LOG.debug(e.getMessage(), e);
-                if (clazz.getSuperclass() != null) {
-                    return getField(clazz.getSuperclass(), fieldName);
+        if (clazz == null) {
+            return null;
+        }
+        ConcurrentMap<String, Object> fields = FIELDS.get(clazz);
+        Object result = fields.get(fieldName);
+        if (result == null) {
+            result = NOT_FOUND;
+            for (Class<?> current = clazz; current != null && result == NOT_FOUND; current = current
+                    .getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (field.getName().equals(fieldName)) {
+                        result = field;
+                        break;
+                    }
                 }
             }
+            fields.putIfAbsent(fieldName, result);
         }
-        return field;
+        return result == NOT_FOUND ? null : (Field) result;
     }
 
     /**
@@ -329,27 +365,7 @@ public final class ClassUtils {
      * @return
      */
     public static Object getFieldValue(Object obj, String fieldName) {
-        try {
-            int p = fieldName.indexOf(".");
-            if (p >= 0) {
-                String firstProperty = fieldName.substring(0, p);
-                Object first = MethodUtils.invokeMethod(obj,
-                        GET + StringUtils.capitalize(firstProperty), new Object[] {});
-                return getFieldValue(first, fieldName.substring(p + 1));
-            } else {
-                if (hasMethod(obj, GET + StringUtils.capitalize(fieldName))) {
-                    // first check for a getter
-                    return MethodUtils.invokeMethod(obj, GET + StringUtils.capitalize(fieldName),
-                            new Object[] {});
-                } else {
-                    // next, check for an "is" method in case of a boolean
-                    return MethodUtils.invokeMethod(obj, IS + StringUtils.capitalize(fieldName),
-                            new Object[] {});
-                }
-            }
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            throw new OCSRuntimeException(e.getMessage(), e);
-        }
+        return PropertyAccessor.forPath(obj.getClass(), fieldName).getValue(obj);
     }
 
     public static String getFieldValueAsString(Object obj, String fieldName) {
@@ -367,26 +383,50 @@ public final class ClassUtils {
      * @return
      */
     public static Method getGetterMethod(Class<?> clazz, String fieldName) {
-        Method method = null;
-        if (clazz != null) {
-            try {
-                // first, try to find a "get" method
-                method = clazz.getDeclaredMethod(GET + StringUtils.capitalize(fieldName),
-                        new Class[] {});
-            } catch (NoSuchMethodException | SecurityException ex) {
-                try {
-                    // next, try to find an "is" method
-                    method = clazz.getDeclaredMethod(IS + StringUtils.capitalize(fieldName),
-                            new Class[] {});
-                } catch (NoSuchMethodException | SecurityException ex2) {
-                    // if that fails, try the superclass
-                    if (clazz.getSuperclass() != null) {
-                        return getGetterMethod(clazz.getSuperclass(), fieldName);
-                    }
+        if (clazz == null) {
+            return null;
+        }
+        ConcurrentMap<String, Object> getters = GETTERS.get(clazz);
+        Object result = getters.get(fieldName);
+        if (result == null) {
+            result = NOT_FOUND;
+            String capitalized = StringUtils.capitalize(fieldName);
+            for (Class<?> current = clazz; current != null && result == NOT_FOUND; current = current
+                    .getSuperclass()) {
+                // first, try to find a "get" method, next, try to find an "is" method
+                Method method = findDeclaredGetter(current, GET + capitalized);
+                if (method == null) {
+                    method = findDeclaredGetter(current, IS + capitalized);
+                }
+                if (method != null) {
+                    result = method;
+                }
+            }
+            getters.putIfAbsent(fieldName, result);
+        }
+        return result == NOT_FOUND ? null : (Method) result;
+    }
+
+    /**
+     * Looks up a declared method without parameters, without using exceptions for control flow
+     * 
+     * @param clazz
+     *            the class
+     * @param name
+     *            the name of the method
+     * @return
+     */
+    private static Method findDeclaredGetter(Class<?> clazz, String name) {
+        Method bridge = null;
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (method.getName().equals(name) && method.getParameterTypes().length == 0) {
+                if (!method.isBridge()) {
+                    return method;
                 }
+                bridge = method;
             }
         }
-        return method;
+        return bridge;
     }
 
     /**
@@ -504,21 +544,73 @@ public final class ClassUtils {
      */
     public static void setFieldValue(Object obj, String fieldName, Object value) {
         try {
-            int p = fieldName.indexOf(".");
-            if (p >= 0) {
-                String firstProperty = fieldName.substring(0, p);
-                Object first = MethodUtils.invokeMethod(obj,
-                        GET + StringUtils.capitalize(firstProperty), new Object[] {});
-                if (first != null) {
-                    setFieldValue(first, fieldName.substring(p + 1), value);
+            PropertyAccessor.forPath(obj.getClass(), fieldName).setValue(obj, value);
+        } catch (OCSRuntimeException e) {
+            LOG.error(e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the (cached) annotations on a property
+     * 
+     * @param clazz
+     *            the class
+     * @param fieldName
+     *            the name of the property
+     * @return
+     */
+    private static PropertyAnnotations getPropertyAnnotations(Class<?> clazz, String fieldName) {
+        ConcurrentMap<String, PropertyAnnotations> annotations = ANNOTATIONS.get(clazz);
+        PropertyAnnotations result = annotations.get(fieldName);
+        if (result == null) {
+            result = new PropertyAnnotations(getField(clazz, fieldName), getGetterMethod(clazz,
+                    fieldName));
+            annotations.putIfAbsent(fieldName, result);
+        }
+        return result;
+    }
+
+    /**
+     * A cache of lookup results per class. Using a ClassValue makes sure the results are
+     * discarded along with the class
+     * 
+     * @param <V>
+     *            the type of the cached values
+     */
+    private static final class LookupCache<V> extends ClassValue<ConcurrentMap<String, V>> {
+
+        @Override
+        protected ConcurrentMap<String, V> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * The annotations on the field and the getter method of a property
+     */
+    private static final class PropertyAnnotations {
+
+        private final Map<Class<? extends Annotation>, Annotation> annotations;
+
+        PropertyAnnotations(Field field, Method getter) {
+            Map<Class<? extends Annotation>, Annotation> map = new HashMap<>();
+            if (field != null) {
+                for (Annotation a : field.getDeclaredAnnotations()) {
+                    map.put(a.annotationType(), a);
                 }
-            } else {
-                MethodUtils.invokeMethod(obj, SET + StringUtils.capitalize(fieldName),
-                        new Object[] { value });
             }
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            LOG.error(e.getMessage(), e);
-            throw new OCSRuntimeException(e.getMessage(), e);
+            // annotations on the getter take precedence
+            if (getter != null) {
+                for (Annotation a : getter.getDeclaredAnnotations()) {
+                    map.put(a.annotationType(), a);
+                }
+            }
+            this.annotations = Collections.unmodifiableMap(map);
+        }
+
+        Map<Class<? extends Annotation>, Annotation> getAnnotations() {
+            return annotations;
         }
     }
 }
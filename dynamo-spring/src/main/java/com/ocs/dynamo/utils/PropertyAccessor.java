@@ -0,0 +1,234 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.reflect.MethodUtils;
+
+import com.ocs.dynamo.exception.OCSRuntimeException;
+
+/**
+ * Reads and writes a (possibly nested) property of an object. The getter and setter for a
+ * property are looked up only once per class and are invoked through method handles. Accessors
+ * are cached per class and property path, so repeated access to the same property (e.g. once per
+ * cell when formatting a table or once per row when importing) does not have to look up methods
+ * again
+ * 
+ * @author bas.rutten
+ */
+public final class PropertyAccessor {
+
+    private static final String GET = "get";
+
+    private static final String IS = "is";
+
+    private static final String SET = "set";
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class,
+            Object.class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class,
+            Object.class);
+
+    private static final ClassValue<ConcurrentMap<String, PropertyAccessor>> ACCESSORS =
+            new ClassValue<ConcurrentMap<String, PropertyAccessor>>() {
+
+        @Override
+        protected ConcurrentMap<String, PropertyAccessor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final Class<?> clazz;
+
+    private final String property;
+
+    /**
+     * The remainder of the path in case of a nested property
+     */
+    private final String remainder;
+
+    private final MethodHandle getter;
+
+    private final MethodHandle setter;
+
+    /**
+     * The (wrapper) type of the setter parameter
+     */
+    private final Class<?> setterType;
+
+    private final boolean primitiveSetter;
+
+    /**
+     * Constructor
+     * 
+     * @param clazz
+     *            the class that contains the property
+     * @param path
+     *            the path to the property
+     */
+    private PropertyAccessor(Class<?> clazz, String path) {
+        this.clazz = clazz;
+        int p = path.indexOf('.');
+        this.property = p >= 0 ? path.substring(0, p) : path;
+        this.remainder = p >= 0 ? path.substring(p + 1) : null;
+
+        String capitalized = StringUtils.capitalize(property);
+        Method getterMethod = findMethod(clazz, GET + capitalized);
+        if (getterMethod == null) {
+            getterMethod = findMethod(clazz, IS + capitalized);
+        }
+        this.getter = getterMethod == null ? null : unreflect(getterMethod, GETTER_TYPE);
+
+        // only use a method handle when there is exactly one setter, otherwise leave it up to
+        // MethodUtils to find the matching method
+        Method setterMethod = null;
+        int setterCount = 0;
+        if (remainder == null) {
+            for (Method m : clazz.getMethods()) {
+                if (m.getName().equals(SET + capitalized) && m.getParameterTypes().length == 1) {
+                    setterMethod = m;
+                    setterCount++;
+                }
+            }
+        }
+        if (setterCount == 1) {
+            Class<?> type = setterMethod.getParameterTypes()[0];
+            this.setter = unreflect(setterMethod, SETTER_TYPE);
+            this.setterType = org.apache.commons.lang.ClassUtils.primitiveToWrapper(type);
+            this.primitiveSetter = type.isPrimitive();
+        } else {
+            this.setter = null;
+            this.setterType = null;
+            this.primitiveSetter = false;
+        }
+    }
+
+    /**
+     * Returns the (cached) accessor for a property path
+     * 
+     * @param clazz
+     *            the class of the object
+     * @param path
+     *            the path to the property, separated by periods in case of a nested property
+     * @return
+     */
+    public static PropertyAccessor forPath(Class<?> clazz, String path) {
+        ConcurrentMap<String, PropertyAccessor> accessors = ACCESSORS.get(clazz);
+        PropertyAccessor accessor = accessors.get(path);
+        if (accessor == null) {
+            accessor = new PropertyAccessor(clazz, path);
+            PropertyAccessor existing = accessors.putIfAbsent(path, accessor);
+            if (existing != null) {
+                accessor = existing;
+            }
+        }
+        return accessor;
+    }
+
+    private static Method findMethod(Class<?> clazz, String name) {
+        try {
+            return clazz.getMethod(name);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    private static MethodHandle unreflect(Method method, MethodType type) {
+        try {
+            // public methods of non-public classes can not be accessed otherwise
+            method.setAccessible(true);
+        } catch (RuntimeException ex) {
+            // not allowed, rely on the regular access checks
+        }
+        try {
+            return MethodHandles.lookup().unreflect(method).asType(type);
+        } catch (IllegalAccessException ex) {
+            throw new OCSRuntimeException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Retrieves the value of the property
+     * 
+     * @param obj
+     *            the object to retrieve the value from
+     * @return the value, or <code>null</code> if an intermediate value of a nested property is
+     *         <code>null</code>
+     */
+    public Object getValue(Object obj) {
+        Object value = invokeGetter(obj);
+        if (remainder == null || value == null) {
+            return value;
+        }
+        return forPath(value.getClass(), remainder).getValue(value);
+    }
+
+    /**
+     * Sets the value of the property. For nested properties, nothing happens when an intermediate
+     * value is <code>null</code>
+     * 
+     * @param obj
+     *            the object on which to set the value
+     * @param value
+     *            the new value
+     */
+    public void setValue(Object obj, Object value) {
+        if (remainder != null) {
+            Object intermediate = invokeGetter(obj);
+            if (intermediate != null) {
+                forPath(intermediate.getClass(), remainder).setValue(intermediate, value);
+            }
+        } else if (setter != null
+                && (value == null ? !primitiveSetter : setterType.isInstance(value))) {
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new OCSRuntimeException(t.getMessage(), t);
+            }
+        } else {
+            // overloaded setter or a value that needs conversion
+            try {
+                MethodUtils.invokeMethod(obj, SET + StringUtils.capitalize(property),
+                        new Object[] { value });
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                throw new OCSRuntimeException(e.getMessage(), e);
+            }
+        }
+    }
+
+    private Object invokeGetter(Object obj) {
+        if (getter == null) {
+            throw new OCSRuntimeException("No getter for property " + property + " on "
+                    + clazz.getName());
+        }
+        try {
+            return (Object) getter.invokeExact(obj);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new OCSRuntimeException(t.getMessage(), t);
+        }
+    }
+}
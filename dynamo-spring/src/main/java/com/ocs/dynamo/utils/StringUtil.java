@@ -13,10 +13,14 @@
  */
 package com.ocs.dynamo.utils;
 
+import org.apache.commons.lang.StringUtils;
+
 public final class StringUtil {
 
     private static final String EMAIL_PATTERN = "(.+)@(.+)";
 
+    private static final String HTML_BREAK = "<br/>";
+
     private static final String HTTP = "http";
 
     private StringUtil() {
@@ -67,7 +71,8 @@ public final class StringUtil {
         if (value == null) {
             return null;
         }
-        value = value.replaceAll("<br/>", ", ").trim();
+        // plain (non-regex) replacement, this is called for every cell of an export
+        value = StringUtils.replace(value, HTML_BREAK, ", ").trim();
         if (value.endsWith(",")) {
             value = value.substring(0, value.length() - 1);
         }
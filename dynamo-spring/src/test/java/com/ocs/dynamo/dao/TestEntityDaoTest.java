@@ -16,7 +16,11 @@ package com.ocs.dynamo.dao;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 
@@ -25,7 +29,10 @@ import org.junit.Test;
 
 import com.google.common.collect.Lists;
 import com.mysema.query.BooleanBuilder;
+import com.ocs.dynamo.constants.DynamoConstants;
 import com.ocs.dynamo.dao.SortOrder.Direction;
+import com.ocs.dynamo.dao.query.CloseableIterator;
+import com.ocs.dynamo.dao.query.FetchJoinInformation;
 import com.ocs.dynamo.domain.QTestEntity;
 import com.ocs.dynamo.domain.TestEntity;
 import com.ocs.dynamo.filter.And;
@@ -75,6 +82,49 @@ public class TestEntityDaoTest extends BaseIntegrationTest {
         Assert.assertEquals(3, list.size());
     }
 
+    @Test
+    public void testSaveBatched() {
+        TestEntity existing = save("Jan", 11L);
+        existing.setAge(12L);
+
+        List<TestEntity> list = Lists.newArrayList(existing);
+        for (int i = 0; i < 4; i++) {
+            list.add(new TestEntity("Bob" + i, (long) i));
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        list = dao.save(list, 2, counter);
+        Assert.assertEquals(5, counter.get());
+        for (TestEntity t : list) {
+            assertNotNull(t.getId());
+        }
+
+        // the persistence context has been cleared
+        Assert.assertFalse(getEntityManager().contains(list.get(4)));
+
+        Assert.assertEquals(5, dao.count());
+        Assert.assertEquals(Long.valueOf(12L), dao.findById(existing.getId()).getAge());
+    }
+
+    /**
+     * A batch size of zero (or less) means the entities are only flushed at the end
+     */
+    @Test
+    public void testSaveBatchedWithoutBatchSize() {
+        List<TestEntity> list = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            list.add(new TestEntity("Bob" + i, (long) i));
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        list = dao.save(list, 0, counter);
+        Assert.assertEquals(3, counter.get());
+        Assert.assertEquals(3, dao.count());
+
+        dao.save(Lists.newArrayList(new TestEntity("Kevin", 4L)), -1, null);
+        Assert.assertEquals(4, dao.count());
+    }
+
     /**
      * Basic test of the count and find methods
      */
@@ -106,6 +156,41 @@ public class TestEntityDaoTest extends BaseIntegrationTest {
         assertEquals(0, dao.count());
     }
 
+    @Test
+    public void testCountCapped() {
+        save("Jan", 11L);
+        save("Piet", 12L);
+        save("Klaas", 13L);
+
+        Assert.assertEquals(3, dao.countCapped(null, 5));
+        Assert.assertEquals(2, dao.countCapped(new Compare.Greater("age", 11L), 5));
+
+        // counting stops after the maximum has been exceeded
+        Assert.assertEquals(3, dao.countCapped(null, 2));
+    }
+
+    @Test
+    public void testDeleteAndUpdateByFilter() {
+        TestEntity jan = save("Jan", 11L);
+        save("Piet", 12L);
+        save("Klaas", 13L);
+
+        Map<String, Object> values = new HashMap<>();
+        values.put("age", 20L);
+        Assert.assertEquals(2, dao.updateByFilter(new Compare.Greater("age", 11L), values));
+        Assert.assertEquals(2, dao.count(new Compare.Equal("age", 20L)));
+
+        // stale entities have been evicted
+        Assert.assertFalse(getEntityManager().contains(jan));
+
+        Assert.assertEquals(1, dao.deleteByFilter(new Compare.Equal("name", "Jan")));
+        Assert.assertEquals(2, dao.count());
+        Assert.assertNull(dao.findById(jan.getId()));
+
+        Assert.assertEquals(2, dao.deleteByFilter(null));
+        Assert.assertEquals(0, dao.count());
+    }
+
     @Test
     public void testByUniqueProperty() {
         save("Jan", 11L);
@@ -238,6 +323,194 @@ public class TestEntityDaoTest extends BaseIntegrationTest {
         Assert.assertEquals("Piet", list.get(2).getName());
     }
 
+    @Test
+    public void testFetchByIdsChunked() {
+        save("Jan", 11L);
+        save("Piet", 12L);
+        save("Klaas", 13L);
+
+        List<Integer> ids = dao.findIds(null, new SortOrder(Direction.DESC, "name"));
+
+        System.setProperty(DynamoConstants.SP_MAX_IN_SIZE, "2");
+        try {
+            // the IDs are spread over two queries, the result follows the order of the IDs
+            List<TestEntity> list = dao.fetchByIds(ids, null);
+            Assert.assertEquals(3, list.size());
+            Assert.assertEquals("Piet", list.get(0).getName());
+            Assert.assertEquals("Klaas", list.get(1).getName());
+            Assert.assertEquals("Jan", list.get(2).getName());
+        } finally {
+            System.clearProperty(DynamoConstants.SP_MAX_IN_SIZE);
+        }
+    }
+
+    @Test
+    public void testFindNumericIds() {
+        for (int i = 0; i < 300; i++) {
+            save("Name" + i, (long) i);
+        }
+
+        // more IDs than the initial capacity of the array
+        long[] ids = dao.findNumericIds(new Compare.GreaterOrEqual("age", 10L), new SortOrder(
+                Direction.DESC, "age"));
+        Assert.assertEquals(290, ids.length);
+        Assert.assertEquals(299L, dao.findById((int) ids[0]).getAge().longValue());
+        Assert.assertEquals(10L, dao.findById((int) ids[289]).getAge().longValue());
+
+        Assert.assertEquals(0, dao.findNumericIds(new Compare.Equal("age", 1000L)).length);
+    }
+
+    /**
+     * Test keyset pagination
+     */
+    @Test
+    public void testFetchKeyset() {
+        save("Jan", 11L);
+        save("Piet", 12L);
+        save("Klaas", 13L);
+        save("Bob", 12L);
+
+        SortOrders orders = new SortOrders(new SortOrder(Direction.ASC, "age"), new SortOrder(
+                Direction.DESC, "name"));
+
+        List<TestEntity> page = dao.fetch(null, new KeysetPageable(2, orders));
+        Assert.assertEquals(2, page.size());
+        Assert.assertEquals("Jan", page.get(0).getName());
+        Assert.assertEquals("Piet", page.get(1).getName());
+
+        page = dao.fetch(null, new KeysetPageable(2, orders, 12L, "Piet"));
+        Assert.assertEquals(2, page.size());
+        Assert.assertEquals("Bob", page.get(0).getName());
+        Assert.assertEquals("Klaas", page.get(1).getName());
+
+        page = dao.fetch(new Compare.Equal("age", 12L), new KeysetPageable(2, orders, 12L, "Piet"));
+        Assert.assertEquals(1, page.size());
+        Assert.assertEquals("Bob", page.get(0).getName());
+
+        page = dao.fetch(null, new KeysetPageable(2, orders, 13L, "Klaas"));
+        Assert.assertTrue(page.isEmpty());
+    }
+
+    /**
+     * Test streaming the results using a cursor
+     */
+    @Test
+    public void testStream() {
+        save("Jan", 11L);
+        save("Piet", 12L);
+        save("Klaas", 13L);
+        dao.flushAndClear();
+
+        List<TestEntity> list = new ArrayList<>();
+        try (CloseableIterator<TestEntity> it = dao.stream(null, new SortOrders(new SortOrder(
+                Direction.ASC, "name")), 2)) {
+            while (it.hasNext()) {
+                list.add(it.next());
+            }
+        }
+
+        Assert.assertEquals(3, list.size());
+        Assert.assertEquals("Jan", list.get(0).getName());
+        Assert.assertEquals("Klaas", list.get(1).getName());
+        Assert.assertEquals("Piet", list.get(2).getName());
+
+        // the first page has been detached
+        Assert.assertFalse(getEntityManager().contains(list.get(0)));
+        Assert.assertTrue(getEntityManager().contains(list.get(2)));
+
+        try (CloseableIterator<TestEntity> it = dao.stream(new Compare.Equal("name", "Bob"),
+                null)) {
+            Assert.assertFalse(it.hasNext());
+        }
+    }
+
+    /**
+     * Test that streaming does not detach entities (and discard changes) of the caller
+     */
+    @Test
+    public void testStreamKeepsCallerEntities() {
+        save("Jan", 11L);
+        save("Klaas", 13L);
+        save("Piet", 12L);
+        dao.flushAndClear();
+
+        // load and modify an entity before streaming
+        TestEntity jan = dao.findByUniqueProperty("name", "Jan", false);
+        jan.setAge(21L);
+
+        List<TestEntity> list = new ArrayList<>();
+        try (CloseableIterator<TestEntity> it = dao.stream(null, new SortOrders(new SortOrder(
+                Direction.ASC, "name")), 1)) {
+            while (it.hasNext()) {
+                list.add(it.next());
+            }
+        }
+
+        Assert.assertEquals(3, list.size());
+        Assert.assertSame(jan, list.get(0));
+
+        // the entity of the caller is still managed and the change survives
+        Assert.assertTrue(getEntityManager().contains(jan));
+        Assert.assertFalse(getEntityManager().contains(list.get(1)));
+
+        dao.flushAndClear();
+        Assert.assertEquals(21L, dao.findByUniqueProperty("name", "Jan", false).getAge()
+                .longValue());
+    }
+
+    /**
+     * Test that a collection is not fetched along with the streamed entities, since every entity
+     * would then be returned once for every element of the collection
+     */
+    @Test
+    public void testStreamSkipsCollectionJoins() {
+        TestEntity jan = save("Jan", 11L);
+        jan.getTags().add("first");
+        jan.getTags().add("second");
+        save("Piet", 12L);
+        dao.flushAndClear();
+
+        List<TestEntity> list = new ArrayList<>();
+        try (CloseableIterator<TestEntity> it = dao.stream(null, new SortOrders(new SortOrder(
+                Direction.ASC, "name")), 10, new FetchJoinInformation("tags"))) {
+            while (it.hasNext()) {
+                list.add(it.next());
+            }
+        }
+
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals("Jan", list.get(0).getName());
+        Assert.assertEquals("Piet", list.get(1).getName());
+    }
+
+    /**
+     * Test that the persistence context is cleared while streaming when this is requested
+     */
+    @Test
+    public void testStreamClear() {
+        save("Jan", 11L);
+        save("Klaas", 13L);
+        save("Piet", 12L);
+        dao.flushAndClear();
+
+        TestEntity jan = dao.findByUniqueProperty("name", "Jan", false);
+
+        List<TestEntity> list = new ArrayList<>();
+        try (CloseableIterator<TestEntity> it = dao.stream(null, new SortOrders(new SortOrder(
+                Direction.ASC, "name")), 2, true)) {
+            while (it.hasNext()) {
+                list.add(it.next());
+            }
+        }
+
+        // unlike an eviction, clearing also detaches the entity of the caller
+        Assert.assertEquals(3, list.size());
+        Assert.assertSame(jan, list.get(0));
+        Assert.assertFalse(getEntityManager().contains(jan));
+        Assert.assertFalse(getEntityManager().contains(list.get(1)));
+        Assert.assertTrue(getEntityManager().contains(list.get(2)));
+    }
+
     @Test
     public void testFlushAndClear() {
         TestEntity entity = save("Jan", 11L);
@@ -16,6 +16,7 @@ package com.ocs.dynamo.dao.query;
 import java.util.List;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaQuery;
@@ -23,8 +24,12 @@ import javax.persistence.criteria.CriteriaQuery;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
 
 import com.google.common.collect.Lists;
+import com.ocs.dynamo.dao.SortOrder;
+import com.ocs.dynamo.dao.SortOrder.Direction;
 import com.ocs.dynamo.domain.TestEntity;
 import com.ocs.dynamo.domain.TestEntity2;
 import com.ocs.dynamo.filter.And;
@@ -263,6 +268,96 @@ public class JPAQueryBuilderTest extends BaseIntegrationTest {
         Assert.assertEquals(e1, entity);
     }
 
+    @Test
+    public void testPrepareCountQuery_Cached() {
+        JpaQueryBuilder.clearQueryCache();
+        long hits = JpaQueryBuilder.getQueryCacheStats().hitCount();
+
+        long count = JpaQueryBuilder.prepareCountQuery(entityManager, TestEntity.class,
+                new And(new Compare.Greater("age", 20L), new Like("name", "%E%", false)), false)
+                .getSingleResult();
+        Assert.assertEquals(1, count);
+
+        // same filter shape with different values, so the cached query is used
+        count = JpaQueryBuilder.prepareCountQuery(entityManager, TestEntity.class,
+                new And(new Compare.Greater("age", 10L), new Like("name", "%", false)), false)
+                .getSingleResult();
+        Assert.assertEquals(3, count);
+        Assert.assertEquals(hits + 1, JpaQueryBuilder.getQueryCacheStats().hitCount());
+    }
+
+    @Test
+    public void testPrepareSelectQuery_Cached() {
+        JpaQueryBuilder.clearQueryCache();
+        long hits = JpaQueryBuilder.getQueryCacheStats().hitCount();
+
+        List<TestEntity> result = JpaQueryBuilder.prepareSelectQuery(entityManager,
+                TestEntity.class, new In("name", Lists.newArrayList("Bob", "Pete")), null,
+                new SortOrder[] { new SortOrder(Direction.DESC, "age") }, null).getResultList();
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals("Pete", result.get(0).getName());
+
+        result = JpaQueryBuilder.prepareSelectQuery(entityManager, TestEntity.class,
+                new In("name", Lists.newArrayList("Sally", "Pete")), null,
+                new SortOrder[] { new SortOrder(Direction.DESC, "age") }, null).getResultList();
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals("Sally", result.get(1).getName());
+        Assert.assertEquals(hits + 1, JpaQueryBuilder.getQueryCacheStats().hitCount());
+    }
+
+    @Test
+    public void testPrepareSelectQuery_SameQueryString() {
+        JpaQueryBuilder.clearQueryCache();
+        long hits = JpaQueryBuilder.getQueryCacheStats().hitCount();
+        long misses = JpaQueryBuilder.getQueryCacheStats().missCount();
+
+        TypedQuery<TestEntity> q1 = JpaQueryBuilder.prepareSelectQuery(entityManager,
+                TestEntity.class, new And(new Compare.Equal("age", 25L), new In("name",
+                        Lists.newArrayList("Bob", "Sally", "Pete"))), null, null, null);
+        Assert.assertEquals(misses + 1, JpaQueryBuilder.getQueryCacheStats().missCount());
+
+        // the "In" list of three values is padded to four, so the cached query is used
+        TypedQuery<TestEntity> q2 = JpaQueryBuilder.prepareSelectQuery(entityManager,
+                TestEntity.class, new And(new Compare.Equal("age", 44L), new In("name",
+                        Lists.newArrayList("Pete", "Sally", "Bob", "Kevin"))), null, null, null);
+        Assert.assertEquals(hits + 1, JpaQueryBuilder.getQueryCacheStats().hitCount());
+        Assert.assertEquals(misses + 1, JpaQueryBuilder.getQueryCacheStats().missCount());
+
+        // five values are padded to eight, which results in a different query
+        JpaQueryBuilder.prepareSelectQuery(entityManager, TestEntity.class, new In("name",
+                Lists.newArrayList("Pete", "Sally", "Bob", "Kevin", "Stuart")), null, null, null);
+        Assert.assertEquals(misses + 2, JpaQueryBuilder.getQueryCacheStats().missCount());
+
+        // the values are bound as parameters
+        String queryString = q1.unwrap(org.hibernate.Query.class).getQueryString();
+        Assert.assertFalse(queryString.contains("25"));
+        Assert.assertFalse(queryString.contains("Bob"));
+
+        Assert.assertEquals("Bob", q1.getSingleResult().getName());
+        Assert.assertEquals("Pete", q2.getSingleResult().getName());
+    }
+
+    @Test
+    public void testPrepareSelectQuery_OtherEntityManagerFactory() {
+        JpaQueryBuilder.clearQueryCache();
+        long misses = JpaQueryBuilder.getQueryCacheStats().missCount();
+
+        JpaQueryBuilder.prepareSelectQuery(entityManager, TestEntity.class, new Compare.Equal(
+                "age", 25L), null, null, null);
+        Assert.assertEquals(misses + 1, JpaQueryBuilder.getQueryCacheStats().missCount());
+
+        // the same query for a different persistence unit must not use the cached query
+        EntityManager other = Mockito.mock(EntityManager.class,
+                AdditionalAnswers.delegatesTo(entityManager));
+        Mockito.doReturn(Mockito.mock(EntityManagerFactory.class)).when(other)
+                .getEntityManagerFactory();
+
+        List<TestEntity> result = JpaQueryBuilder.prepareSelectQuery(other, TestEntity.class,
+                new Compare.Equal("age", 25L), null, null, null).getResultList();
+        Assert.assertEquals(misses + 2, JpaQueryBuilder.getQueryCacheStats().missCount());
+        Assert.assertEquals(1, result.size());
+    }
+
     private void save(String name, long age) {
         TestEntity entity = new TestEntity(name, age);
         entityManager.persist(entity);
@@ -0,0 +1,63 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.domain.model.apt;
+
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Temporal;
+import javax.persistence.Version;
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ocs.dynamo.domain.model.EntityModelDescriptor;
+import com.ocs.dynamo.domain.model.annotation.Attribute;
+import com.ocs.dynamo.domain.validator.Email;
+
+public class EntityModelProcessorTest {
+
+    @Test
+    public void testGenerateDescriptor() throws Exception {
+        ProcessorFixture fixture = ProcessorFixture.compile();
+        Assert.assertTrue(fixture.getGeneratedSource().exists());
+
+        Class<?> descriptorClass = fixture.loadClass(ProcessorFixture.ENTITY_CLASS
+                + EntityModelProcessor.SUFFIX);
+        EntityModelDescriptor descriptor = (EntityModelDescriptor) descriptorClass.newInstance();
+
+        Assert.assertTrue(descriptor.hasAnnotation("id", Id.class));
+        Assert.assertTrue(descriptor.hasAnnotation("name", NotNull.class));
+        Assert.assertTrue(descriptor.hasAnnotation("name", Size.class));
+        Assert.assertFalse(descriptor.hasAnnotation("name", Id.class));
+        Assert.assertTrue(descriptor.hasAnnotation("birthDate", Temporal.class));
+        Assert.assertTrue(descriptor.hasAnnotation("startTime", Attribute.class));
+        Assert.assertTrue(descriptor.hasAnnotation("email", Email.class));
+        Assert.assertTrue(descriptor.hasAnnotation("photo", Lob.class));
+
+        // annotations on getter methods
+        Assert.assertTrue(descriptor.hasAnnotation("adult", AssertTrue.class));
+
+        // properties without annotations are described as well
+        Assert.assertTrue(descriptor.isDescribed("age"));
+        Assert.assertFalse(descriptor.hasAnnotation("age", NotNull.class));
+
+        // properties inherited from the superclass
+        Assert.assertTrue(descriptor.hasAnnotation("version", Version.class));
+
+        Assert.assertFalse(descriptor.isDescribed("unknown"));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.domain.model.apt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Assert;
+import org.junit.Assume;
+
+/**
+ * Compiles the fixture entity "fixture.ProcessorEntity" with the EntityModelProcessor, so that
+ * tests can inspect the generated descriptor
+ * 
+ * @author bas.rutten
+ */
+public final class ProcessorFixture {
+
+    public static final String ENTITY_CLASS = "fixture.ProcessorEntity";
+
+    private final Path root;
+
+    private final ClassLoader classLoader;
+
+    private ProcessorFixture(Path root, ClassLoader classLoader) {
+        this.root = root;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Compiles the fixture entity and runs the EntityModelProcessor on it. The test is skipped when
+     * no system Java compiler is available (e.g. when running on a JRE)
+     * 
+     * @return the compiled fixture
+     * @throws IOException
+     */
+    public static ProcessorFixture compile() throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+
+        Path root = Files.createTempDirectory("dynamo-apt");
+        Path sources = Files.createDirectories(root.resolve("src/fixture"));
+        Path generated = Files.createDirectories(root.resolve("generated"));
+        Path classes = Files.createDirectories(root.resolve("classes"));
+
+        Path source = sources.resolve("ProcessorEntity.java");
+        try (InputStream in = ProcessorFixture.class.getResourceAsStream(
+                "/apt/ProcessorEntity.java.txt")) {
+            Files.copy(in, source);
+        }
+
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null,
+                null)) {
+            Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjects(source
+                    .toFile());
+            boolean success = compiler.getTask(
+                    null,
+                    fileManager,
+                    null,
+                    Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d",
+                            classes.toString(), "-s", generated.toString(), "-processor",
+                            EntityModelProcessor.class.getName()), null, units).call();
+            Assert.assertTrue("Compilation of the fixture entity failed", success);
+        }
+
+        ClassLoader classLoader = new URLClassLoader(new URL[] { classes.toUri().toURL() },
+                ProcessorFixture.class.getClassLoader());
+        return new ProcessorFixture(root, classLoader);
+    }
+
+    /**
+     * @return the source file that the processor generated for the fixture entity
+     */
+    public File getGeneratedSource() {
+        return root.resolve("generated/fixture/ProcessorEntity" + EntityModelProcessor.SUFFIX
+                + ".java").toFile();
+    }
+
+    /**
+     * Loads a class that was compiled or generated for the fixture
+     * 
+     * @param name
+     *            the name of the class
+     * @return
+     * @throws ClassNotFoundException
+     */
+    public Class<?> loadClass(String name) throws ClassNotFoundException {
+        return Class.forName(name, true, classLoader);
+    }
+}
@@ -13,8 +13,11 @@
  */
 package com.ocs.dynamo.domain.model.impl;
 
+import com.ocs.dynamo.constants.DynamoConstants;
 import com.ocs.dynamo.domain.model.*;
 import com.ocs.dynamo.domain.model.annotation.*;
+import com.ocs.dynamo.domain.model.apt.EntityModelProcessor;
+import com.ocs.dynamo.domain.model.apt.ProcessorFixture;
 import com.ocs.dynamo.domain.validator.Email;
 import com.ocs.dynamo.service.MessageService;
 import com.ocs.dynamo.service.impl.MessageServiceImpl;
@@ -23,21 +26,33 @@ import junitx.util.PrivateAccessor;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.apache.log4j.Logger;
+import org.springframework.context.support.ReloadableResourceBundleMessageSource;
 import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.context.support.StaticMessageSource;
 
 import javax.persistence.*;
 import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @SuppressWarnings("unused")
 public class EntityModelFactoryImplTest extends BaseMockitoTest {
 
+    private static final Logger LOGGER = Logger.getLogger(EntityModelFactoryImplTest.class);
+
     public EntityModelFactoryImpl factory = new EntityModelFactoryImpl();
 
     private ResourceBundleMessageSource source = new ResourceBundleMessageSource();
@@ -487,6 +502,220 @@ public class EntityModelFactoryImplTest extends BaseMockitoTest {
         Assert.assertEquals(AttributeType.ELEMENT_COLLECTION, am.getAttributeType());
     }
 
+    @Test
+    public void testWarmUp() {
+        List<Class<?>> classes = new ArrayList<>();
+        classes.add(Entity1.class);
+        classes.add(Entity2.class);
+        classes.add(EntityChild.class);
+        classes.add(EntityParent.class);
+        factory.warmUp(classes);
+
+        Assert.assertTrue(factory.hasModel("Entity1"));
+        Assert.assertTrue(factory.hasModel("Entity2"));
+        Assert.assertTrue(factory.hasModel("EntityChild"));
+        Assert.assertTrue(factory.hasModel("EntityChild.parent"));
+
+        // the models are constructed only once
+        Assert.assertSame(factory.getModel(Entity1.class), factory.getModel(Entity1.class));
+    }
+
+    @Test
+    public void testSnapshot() throws IOException, NoSuchFieldException {
+        File file = File.createTempFile("entitymodel", ".snapshot");
+        file.delete();
+        try {
+            factory.setSnapshot(new EntityModelSnapshot(file, source));
+
+            List<Class<?>> classes = new ArrayList<>();
+            classes.add(EntityChild.class);
+            classes.add(EntityParent.class);
+            factory.warmUp(classes);
+            Assert.assertTrue(file.exists());
+
+            EntityModelSnapshot snapshot = new EntityModelSnapshot(file, source);
+            Assert.assertNotNull(snapshot.load("EntityChild", EntityChild.class));
+            Assert.assertNull(snapshot.load("EntityChild", EntityParent.class));
+            Assert.assertNull(snapshot.load("Entity1", Entity1.class));
+
+            // a new factory reads the models from the snapshot
+            EntityModelFactoryImpl other = new EntityModelFactoryImpl();
+            PrivateAccessor.setField(other, "messageService", messageService);
+            other.setSnapshot(snapshot);
+
+            EntityModel<EntityChild> model = other.getModel(EntityChild.class);
+            EntityModel<EntityChild> original = factory.getModel(EntityChild.class);
+            Assert.assertEquals(original.getAttributeModels().size(), model.getAttributeModels()
+                    .size());
+            Assert.assertEquals(original.getDisplayName(), model.getDisplayName());
+
+            // nested models are shared with the factory
+            AttributeModel parentModel = model.getAttributeModel("parent");
+            Assert.assertNotNull(parentModel.getNestedEntityModel());
+            Assert.assertSame(parentModel.getNestedEntityModel(),
+                    other.getModel("EntityChild.parent", EntityParent.class));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * The snapshot is ignored when the system properties that provide the attribute defaults or
+     * the message bundles that provide the overrides change
+     */
+    @Test
+    public void testSnapshot_Outdated() throws IOException {
+        File file = File.createTempFile("entitymodel", ".snapshot");
+        file.delete();
+        File bundle = File.createTempFile("messages", ".properties");
+        String basename = bundle.getPath().substring(0,
+                bundle.getPath().length() - ".properties".length());
+        Files.write(bundle.toPath(),
+                "EntityChild.displayName=Child\n".getBytes(StandardCharsets.ISO_8859_1));
+        ReloadableResourceBundleMessageSource bundleSource =
+                new ReloadableResourceBundleMessageSource();
+        bundleSource.setBasename("file:" + basename);
+        try {
+            factory.setSnapshot(new EntityModelSnapshot(file, bundleSource));
+            List<Class<?>> classes = new ArrayList<>();
+            classes.add(EntityChild.class);
+            classes.add(EntityParent.class);
+            factory.warmUp(classes);
+
+            EntityModelSnapshot snapshot = new EntityModelSnapshot(file, bundleSource);
+            Assert.assertNotNull(snapshot.load("EntityChild", EntityChild.class));
+
+            System.setProperty(DynamoConstants.SP_DEFAULT_DATE_FORMAT, "yyyy-MM-dd");
+            try {
+                snapshot = new EntityModelSnapshot(file, bundleSource);
+                Assert.assertNull(snapshot.load("EntityChild", EntityChild.class));
+            } finally {
+                System.clearProperty(DynamoConstants.SP_DEFAULT_DATE_FORMAT);
+            }
+
+            // the bundles of other message sources can not be checked
+            snapshot = new EntityModelSnapshot(file, new StaticMessageSource());
+            Assert.assertNull(snapshot.load("EntityChild", EntityChild.class));
+
+            Files.write(bundle.toPath(),
+                    "EntityChild.displayName=Other child\n".getBytes(StandardCharsets.ISO_8859_1));
+            snapshot = new EntityModelSnapshot(file, bundleSource);
+            Assert.assertNull(snapshot.load("EntityChild", EntityChild.class));
+            Assert.assertNull(snapshot.load("EntityParent", EntityParent.class));
+        } finally {
+            file.delete();
+            bundle.delete();
+        }
+    }
+
+    /**
+     * Compares the time it takes to read the models from a snapshot with the time it takes to
+     * construct them
+     */
+    @Test
+    public void testSnapshot_Timing() throws IOException, NoSuchFieldException {
+        File file = File.createTempFile("entitymodel", ".snapshot");
+        file.delete();
+        try {
+            List<Class<?>> classes = new ArrayList<>();
+            classes.add(Entity1.class);
+            classes.add(Entity2.class);
+            classes.add(EntityChild.class);
+            classes.add(EntityParent.class);
+
+            long start = System.nanoTime();
+            List<EntityModel<?>> models = new ArrayList<>();
+            for (Class<?> clazz : classes) {
+                models.add(factory.getModel(clazz));
+            }
+            long cold = System.nanoTime() - start;
+            new EntityModelSnapshot(file, source).write(models);
+
+            start = System.nanoTime();
+            EntityModelFactoryImpl other = new EntityModelFactoryImpl();
+            PrivateAccessor.setField(other, "messageService", messageService);
+            EntityModelSnapshot snapshot = new EntityModelSnapshot(file, source);
+            other.setSnapshot(snapshot);
+            for (Class<?> clazz : classes) {
+                Assert.assertNotNull(other.getModel(clazz));
+            }
+            long warm = System.nanoTime() - start;
+
+            Assert.assertNotNull(snapshot.load("EntityChild", EntityChild.class));
+            LOGGER.info("Constructed " + classes.size() + " entity models in " + cold / 1000
+                    + " us, read them from the snapshot in " + warm / 1000 + " us");
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * A model that is built with the help of a generated descriptor must be equal to a model that
+     * is built using reflection only
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDescriptorMatchesReflection() throws Exception {
+        ProcessorFixture fixture = ProcessorFixture.compile();
+        Class<Object> entityClass = (Class<Object>) fixture
+                .loadClass(ProcessorFixture.ENTITY_CLASS);
+
+        // a factory that is told that no descriptor exists for the entity
+        EntityModelFactoryImpl reflectionFactory = new EntityModelFactoryImpl();
+        PrivateAccessor.setField(reflectionFactory, "messageService", messageService);
+        Map<Class<?>, EntityModelDescriptor> descriptors = (Map<Class<?>, EntityModelDescriptor>)
+                PrivateAccessor.getField(reflectionFactory, "descriptors");
+        descriptors.put(entityClass, new EntityModelDescriptor() {
+
+            @Override
+            public boolean isDescribed(String property) {
+                return false;
+            }
+
+            @Override
+            public boolean hasAnnotation(String property,
+                    Class<? extends java.lang.annotation.Annotation> annotationClass) {
+                return true;
+            }
+        });
+
+        EntityModel<Object> generated = factory.getModel(entityClass);
+        EntityModel<Object> reflected = reflectionFactory.getModel(entityClass);
+
+        // the factory under test really used the generated descriptor
+        descriptors = (Map<Class<?>, EntityModelDescriptor>) PrivateAccessor.getField(factory,
+                "descriptors");
+        Assert.assertEquals(
+                fixture.loadClass(ProcessorFixture.ENTITY_CLASS + EntityModelProcessor.SUFFIX),
+                descriptors.get(entityClass).getClass());
+
+        Assert.assertEquals(reflected.getIdAttributeModel().getName(), generated
+                .getIdAttributeModel().getName());
+        Assert.assertEquals(reflected.getAttributeModels().size(), generated.getAttributeModels()
+                .size());
+        for (AttributeModel expected : reflected.getAttributeModels()) {
+            AttributeModel actual = generated.getAttributeModel(expected.getName());
+            Assert.assertNotNull(expected.getName(), actual);
+            for (Method method : AttributeModel.class.getMethods()) {
+                if (method.getParameterTypes().length == 0
+                        && !method.getName().endsWith("EntityModel")) {
+                    Assert.assertEquals(expected.getName() + "." + method.getName(),
+                            method.invoke(expected), method.invoke(actual));
+                }
+            }
+        }
+
+        // the annotations were picked up
+        Assert.assertTrue(generated.getAttributeModel("name").isRequired());
+        Assert.assertEquals(20, generated.getAttributeModel("name").getMaxLength().intValue());
+        Assert.assertTrue(generated.getAttributeModel("email").isEmail());
+        Assert.assertEquals(AttributeType.LOB, generated.getAttributeModel("photo")
+                .getAttributeType());
+        Assert.assertEquals(AttributeDateType.TIME, generated.getAttributeModel("startTime")
+                .getDateType());
+        Assert.assertNull(generated.getAttributeModel("adult"));
+    }
+
     private class Entity1 {
 
         @Size(max = 55)
@@ -13,8 +13,10 @@
  */
 package com.ocs.dynamo.importer.impl;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
@@ -22,6 +24,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import com.ocs.dynamo.exception.OCSImportException;
+import com.ocs.dynamo.importer.RowHandler;
+import com.ocs.dynamo.importer.XlsField;
+import com.ocs.dynamo.importer.dto.AbstractDTO;
 import com.ocs.dynamo.importer.impl.PersonDTO.Gender;
 
 public class BaseCsvImporterTest {
@@ -68,6 +73,37 @@ public class BaseCsvImporterTest {
         Assert.assertEquals(-3, dto.getNumber().intValue());
     }
 
+    @Test
+    public void testReadFile_Streaming() throws IOException {
+        byte[] bytes = readFile("importertest.csv");
+        final List<PersonDTO> dtos = new ArrayList<>();
+        int rows = importer.readCsvFile(new ByteArrayInputStream(bytes), ";", "'",
+                new RowHandler<String[]>() {
+
+                    @Override
+                    public void handle(int rowNum, String[] row) {
+                        if (rowNum < 3) {
+                            dtos.add(importer.processRow(rowNum, row, PersonDTO.class));
+                        }
+                    }
+                });
+        Assert.assertEquals(7, rows);
+        Assert.assertEquals("Bas", dtos.get(0).getName());
+        Assert.assertEquals("Unknown", dtos.get(1).getName());
+        Assert.assertEquals("Endy", dtos.get(2).getName());
+    }
+
+    @Test
+    public void testEstimateRows() throws IOException {
+        File file = new File("src/test/resources/importertest.csv");
+        Assert.assertEquals(7, importer.estimateRows(file));
+
+        byte[] sample = "a;b\nc;d\n".getBytes("UTF-8");
+        Assert.assertEquals(2, BaseTextImporter.estimateRows(sample, sample.length, sample.length));
+        // a sample of 8 bytes that contains two rows, taken from a file of 80 bytes
+        Assert.assertEquals(20, BaseTextImporter.estimateRows(sample, sample.length, 80));
+    }
+
     @Test
     public void testReadFile_NotNumeric() throws IOException {
         try {
@@ -81,7 +117,41 @@ public class BaseCsvImporterTest {
         }
     }
 
+    /**
+     * A DTO without a public no-argument constructor cannot be imported
+     */
+    @Test
+    public void testProcessRow_NoDefaultConstructor() {
+        try {
+            importer.processRow(0, new String[] { "Bas" }, NoDefaultConstructorDTO.class);
+            Assert.fail();
+        } catch (OCSImportException ex) {
+            Assert.assertEquals("Cannot instantiate " + NoDefaultConstructorDTO.class.getName(),
+                    ex.getMessage());
+        }
+    }
+
     private byte[] readFile(String fileName) throws IOException {
         return FileUtils.readFileToByteArray(new File("src/test/resources/" + fileName));
     }
+
+    public static class NoDefaultConstructorDTO extends AbstractDTO {
+
+        private static final long serialVersionUID = -2335425447436322095L;
+
+        @XlsField(index = 0)
+        private String name;
+
+        public NoDefaultConstructorDTO(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
 }
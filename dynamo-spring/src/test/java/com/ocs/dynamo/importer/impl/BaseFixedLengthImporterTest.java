@@ -13,6 +13,7 @@
  */
 package com.ocs.dynamo.importer.impl;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
@@ -23,6 +24,7 @@ import org.junit.Test;
 
 import com.google.common.collect.Lists;
 import com.ocs.dynamo.exception.OCSImportException;
+import com.ocs.dynamo.importer.RowHandler;
 import com.ocs.dynamo.importer.impl.PersonDTO.Gender;
 
 public class BaseFixedLengthImporterTest {
@@ -36,6 +38,20 @@ public class BaseFixedLengthImporterTest {
         Assert.assertEquals(7, rows);
     }
 
+    /**
+     * The number of rows of a file that is larger than the sample is estimated from its size
+     */
+    @Test
+    public void testCountRows_LargeFile() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append(String.format("%-99d\n", i));
+        }
+        byte[] bytes = builder.toString().getBytes();
+        // the sample ends halfway a line, so the estimate is slightly off
+        Assert.assertEquals(2000, importer.countRows(bytes, 0, 0), 5);
+    }
+
     /**
      * Test the import of a (correct) CSV file
      * 
@@ -70,6 +86,23 @@ public class BaseFixedLengthImporterTest {
         Assert.assertEquals(-3, dto.getNumber().intValue());
     }
 
+    @Test
+    public void testReadFile_Streaming() throws IOException {
+        byte[] bytes = readFile("importertest.fixed");
+        final List<String[]> lines = importer.readFixedLengthFile(bytes,
+                Lists.newArrayList(10, 10, 10, 10, 10, 10, 10));
+
+        int rows = importer.readFixedLengthFile(new ByteArrayInputStream(bytes),
+                Lists.newArrayList(10, 10, 10, 10, 10, 10, 10), new RowHandler<String[]>() {
+
+                    @Override
+                    public void handle(int rowNum, String[] row) {
+                        Assert.assertArrayEquals(lines.get(rowNum), row);
+                    }
+                });
+        Assert.assertEquals(lines.size(), rows);
+    }
+
     @Test
     public void testParseFieldLengths() {
         List<Integer> list = importer.parseFieldLengths("1,2,3,4");
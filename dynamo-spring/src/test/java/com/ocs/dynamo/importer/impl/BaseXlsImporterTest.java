@@ -14,18 +14,26 @@
 package com.ocs.dynamo.importer.impl;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
 import com.monitorjbl.xlsx.StreamingReader;
 import com.ocs.dynamo.exception.OCSImportException;
+import com.ocs.dynamo.importer.RowHandler;
 import com.ocs.dynamo.importer.impl.PersonDTO.Gender;
 
 public class BaseXlsImporterTest {
@@ -197,6 +205,91 @@ public class BaseXlsImporterTest {
 
     }
 
+    /**
+     * Test that a file can be streamed with a row cache that is smaller than the file
+     */
+    @Test
+    public void testReadXlsFile() {
+        importer.setRowCacheSize(2);
+        final List<PersonDTO> dtos = Lists.newArrayList();
+        int rows = importer.readXlsFile(new File("src/test/resources/importertest.xlsx"),
+                new RowHandler<Row>() {
+
+                    @Override
+                    public void handle(int rowNum, Row row) {
+                        dtos.add(importer.processRow(rowNum, row, PersonDTO.class));
+                    }
+                });
+        Assert.assertEquals(7, rows);
+
+        PersonDTO dto = dtos.get(0);
+        Assert.assertEquals(0, dto.getRowNum());
+        Assert.assertEquals("Bas", dto.getName());
+        Assert.assertEquals(1, dto.getNumber().intValue());
+        Assert.assertEquals(2.4, dto.getFactor().doubleValue(), 0.001);
+        Assert.assertTrue(dto.getAbool());
+
+        // check that default values are set
+        dto = dtos.get(1);
+        Assert.assertEquals(1, dto.getRowNum());
+        Assert.assertEquals("Unknown", dto.getName());
+        Assert.assertEquals(1.0, dto.getFactor().doubleValue(), 0.001);
+
+        // check negative values
+        Assert.assertEquals(-3, dtos.get(2).getNumber().intValue());
+    }
+
+    @Test
+    public void testReadXlsFile_InputStream() throws IOException {
+        final List<String> names = Lists.newArrayList();
+        try (InputStream in = new FileInputStream("src/test/resources/importertest.xlsx")) {
+            int rows = importer.readXlsFile(in, new RowHandler<Row>() {
+
+                @Override
+                public void handle(int rowNum, Row row) {
+                    names.add(importer.processRow(rowNum, row, PersonDTO.class).getName());
+                }
+            });
+            Assert.assertEquals(7, rows);
+        }
+        Assert.assertEquals("Bas", names.get(0));
+        Assert.assertEquals("Endy", names.get(2));
+    }
+
+    /**
+     * Test that an old style (.xls) file is read using a workbook
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testReadXlsFile_Xls() throws IOException {
+        Workbook wb = new HSSFWorkbook();
+        Sheet sheet = wb.createSheet();
+        sheet.createRow(0).createCell(0).setCellValue("Bas");
+        sheet.createRow(1).createCell(0).setCellValue("Endy");
+
+        File file = File.createTempFile("importertest", ".xls");
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                wb.write(out);
+            }
+
+            final List<String> names = Lists.newArrayList();
+            int rows = importer.readXlsFile(file, new RowHandler<Row>() {
+
+                @Override
+                public void handle(int rowNum, Row row) {
+                    names.add(importer.getStringValue(row.getCell(0)));
+                }
+            });
+            Assert.assertEquals(2, rows);
+            Assert.assertEquals(Lists.newArrayList("Bas", "Endy"), names);
+            Assert.assertEquals(2, importer.countRows(FileUtils.readFileToByteArray(file), 0, 0));
+        } finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
     /**
      * Test whether a certain row contains a cell with a certain string value
      * 
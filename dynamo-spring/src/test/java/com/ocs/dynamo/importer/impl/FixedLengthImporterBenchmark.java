@@ -0,0 +1,130 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.importer.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.Lists;
+import com.ocs.dynamo.importer.RowHandler;
+
+/**
+ * Compares the throughput of the string based fixed length importer to the memory-mapped
+ * importer, for a file of PersonDTO records. Run the main method (with the test classpath) to
+ * execute it
+ * 
+ * @author bas.rutten
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FixedLengthImporterBenchmark {
+
+    private static final int ROWS = 100000;
+
+    private static final List<Integer> LENGTHS = Lists.newArrayList(10, 10, 10, 10, 10, 10, 10);
+
+    private final BaseFixedLengthImporter importer = new BaseFixedLengthImporter();
+
+    private final MappedFixedLengthImporter mappedImporter = new MappedFixedLengthImporter();
+
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < ROWS; i++) {
+            builder.append(StringUtils.rightPad("Person" + i, 10));
+            builder.append(StringUtils.rightPad(Integer.toString(i), 10));
+            builder.append(StringUtils.rightPad("2.40", 10));
+            builder.append(StringUtils.rightPad("abc", 10));
+            builder.append(StringUtils.rightPad(i % 2 == 0 ? "M" : "F", 10));
+            builder.append(StringUtils.rightPad("1.5", 10));
+            builder.append(StringUtils.rightPad(Boolean.toString(i % 3 == 0), 10));
+            builder.append('\n');
+        }
+        file = File.createTempFile("fixed", ".txt");
+        FileUtils.writeStringToFile(file, builder.toString(), StandardCharsets.ISO_8859_1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtils.deleteQuietly(file);
+    }
+
+    @Benchmark
+    public void readStrings(Blackhole blackhole) throws IOException {
+        List<String[]> lines = importer.readFixedLengthFile(FileUtils.readFileToByteArray(file),
+                LENGTHS);
+        for (int i = 0; i < lines.size(); i++) {
+            blackhole.consume(importer.processRow(i, lines.get(i), PersonDTO.class));
+        }
+    }
+
+    @Benchmark
+    public int readStreaming(final Blackhole blackhole) throws IOException {
+        return importer.readFixedLengthFile(
+                new ByteArrayInputStream(FileUtils.readFileToByteArray(file)), LENGTHS,
+                new RowHandler<String[]>() {
+
+                    @Override
+                    public void handle(int rowNum, String[] row) {
+                        blackhole.consume(importer.processRow(rowNum, row, PersonDTO.class));
+                    }
+                });
+    }
+
+    @Benchmark
+    public int readMapped(final Blackhole blackhole) {
+        return mappedImporter.readFixedLengthFile(file, LENGTHS,
+                new RowHandler<FixedLengthRecord>() {
+
+                    @Override
+                    public void handle(int rowNum, FixedLengthRecord row) {
+                        blackhole.consume(mappedImporter.processRow(rowNum, row,
+                                PersonDTO.class));
+                    }
+                });
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(
+                FixedLengthImporterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.importer.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.ocs.dynamo.exception.OCSImportException;
+import com.ocs.dynamo.importer.RowHandler;
+import com.ocs.dynamo.importer.impl.PersonDTO.Gender;
+
+public class MappedFixedLengthImporterTest {
+
+    private static final List<Integer> LENGTHS = Lists.newArrayList(10, 10, 10, 10, 10, 10, 10);
+
+    private BaseFixedLengthImporter importer = new BaseFixedLengthImporter();
+
+    @Test
+    public void testReadFile() {
+        final MappedFixedLengthImporter mapped = new MappedFixedLengthImporter();
+        final List<PersonDTO> dtos = Lists.newArrayList();
+        int rows = mapped.readFixedLengthFile(getFile(), LENGTHS,
+                new RowHandler<FixedLengthRecord>() {
+
+                    @Override
+                    public void handle(int rowNum, FixedLengthRecord row) {
+                        dtos.add(mapped.processRow(rowNum, row, PersonDTO.class));
+                    }
+                });
+        Assert.assertEquals(7, rows);
+
+        PersonDTO dto = dtos.get(0);
+        Assert.assertEquals("Bas", dto.getName());
+        Assert.assertEquals(1, dto.getNumber().intValue());
+        Assert.assertEquals(2.4, dto.getFactor().doubleValue(), 0.001);
+        Assert.assertEquals("abc", dto.getRandom());
+        Assert.assertEquals(Gender.M, dto.getGender());
+        Assert.assertEquals(1.50, dto.getPercentage().doubleValue(), 0.001);
+
+        // check that default values are set
+        dto = dtos.get(1);
+        Assert.assertEquals("Unknown", dto.getName());
+        Assert.assertEquals(2, dto.getNumber().intValue());
+        Assert.assertEquals(1.0, dto.getFactor().doubleValue(), 0.001);
+
+        // check negative values
+        dto = dtos.get(2);
+        Assert.assertEquals("Endy", dto.getName());
+        Assert.assertEquals(-3, dto.getNumber().intValue());
+    }
+
+    /**
+     * Check that the records are the same as those of the string based importer, also when the
+     * file is mapped in several (small) windows
+     */
+    @Test
+    public void testReadFile_Windows() throws IOException {
+        final List<String[]> lines = importer.readFixedLengthFile(
+                FileUtils.readFileToByteArray(getFile()), LENGTHS);
+
+        MappedFixedLengthImporter mapped = new MappedFixedLengthImporter(100);
+        int rows = mapped.readFixedLengthFile(getFile(), LENGTHS,
+                new RowHandler<FixedLengthRecord>() {
+
+                    @Override
+                    public void handle(int rowNum, FixedLengthRecord row) {
+                        Assert.assertEquals(rowNum, row.getRecordNumber());
+                        Assert.assertArrayEquals(lines.get(rowNum), row.toArray());
+                    }
+                });
+        Assert.assertEquals(lines.size(), rows);
+    }
+
+    @Test(expected = OCSImportException.class)
+    public void testReadFile_RecordTooLarge() {
+        new MappedFixedLengthImporter(20).readFixedLengthFile(getFile(), LENGTHS,
+                new RowHandler<FixedLengthRecord>() {
+
+                    @Override
+                    public void handle(int rowNum, FixedLengthRecord row) {
+                        // not used
+                    }
+                });
+    }
+
+    @Test
+    public void testRecord() {
+        FixedLengthRecord record = new FixedLengthRecord(new int[] { 5, 5, 10, 5 });
+        byte[] bytes = "  12 -0042  3.14159 abc".getBytes(StandardCharsets.ISO_8859_1);
+        record.reset(ByteBuffer.wrap(bytes), 0, bytes.length, 3);
+
+        Assert.assertEquals(3, record.getRecordNumber());
+        Assert.assertEquals(4, record.getFieldCount());
+        Assert.assertEquals(12, record.getInt(0).intValue());
+        Assert.assertEquals(-42L, record.getLong(1).longValue());
+        Assert.assertEquals(3.14159, record.getDouble(2).doubleValue(), 0.0000001);
+        Assert.assertEquals(new BigDecimal("3.14159"), record.getDecimal(2));
+        Assert.assertEquals("abc", record.getString(3));
+        Assert.assertEquals("3.14159", record.getField(2).toString());
+    }
+
+    @Test
+    public void testParseDouble() {
+        Assert.assertNull(FixedLengthRecord.parseDouble(""));
+        Assert.assertEquals(2.4, FixedLengthRecord.parseDouble("2.40").doubleValue(), 0.0);
+        Assert.assertEquals(-0.1, FixedLengthRecord.parseDouble("-.1").doubleValue(), 0.0);
+        Assert.assertEquals(1.5E10, FixedLengthRecord.parseDouble("1.5E10").doubleValue(), 0.0);
+        Assert.assertEquals(Double.valueOf("12345678901234567890.5"),
+                FixedLengthRecord.parseDouble("12345678901234567890.5"));
+    }
+
+    @Test(expected = OCSImportException.class)
+    public void testParseDouble_Error() {
+        FixedLengthRecord.parseDouble("1,5");
+    }
+
+    private File getFile() {
+        return new File("src/test/resources/importertest.fixed");
+    }
+}
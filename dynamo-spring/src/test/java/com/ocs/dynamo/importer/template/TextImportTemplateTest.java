@@ -0,0 +1,117 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.importer.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import com.ocs.dynamo.importer.impl.BaseCsvImporter;
+import com.ocs.dynamo.importer.impl.PersonDTO;
+import com.ocs.dynamo.service.MessageService;
+import com.ocs.dynamo.test.BaseMockitoTest;
+import com.ocs.dynamo.test.MockUtil;
+
+public class TextImportTemplateTest extends BaseMockitoTest {
+
+    private static final int ROWS = 2000;
+
+    @Mock
+    private MessageService messageService;
+
+    private BaseCsvImporter importer = new BaseCsvImporter();
+
+    private List<String[]> lines = new ArrayList<>();
+
+    private ForkJoinPool pool = new ForkJoinPool(4);
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        MockUtil.mockMessageService(messageService);
+        lines.add(new String[] { "name", "number" });
+        for (int i = 1; i < ROWS; i++) {
+            // every 10th row is invalid, and names repeat after 700 rows
+            String number = i % 10 == 0 ? "abc" : Integer.toString(i);
+            lines.add(new String[] { "P" + (i % 700), number, "1.0", "x", "M", "1", "true" });
+        }
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testExecuteParallel() {
+        List<String> errors = new ArrayList<>();
+        List<PersonDTO> sequential = createTemplate(errors).execute();
+
+        List<String> parallelErrors = new ArrayList<>();
+        TextImportTemplate<String, PersonDTO> template = createTemplate(parallelErrors);
+        AtomicInteger counter = new AtomicInteger();
+        template.setCounter(counter);
+        template.setPool(pool);
+        List<PersonDTO> parallel = template.execute();
+
+        Assert.assertEquals(ROWS - 1, counter.get());
+
+        // same results in the same order
+        Assert.assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            Assert.assertEquals(sequential.get(i).getRowNum(), parallel.get(i).getRowNum());
+        }
+        // every 10th row cannot be converted, every valid row after row 700 is a duplicate
+        List<String> expected = new ArrayList<>();
+        for (int i = 1; i < ROWS; i++) {
+            if (i % 10 == 0) {
+                expected.add(String.format("Row %d: abc cannot be converted to a number", i + 1));
+            } else if (i >= 700) {
+                expected.add("ocs.duplicate.row");
+            }
+        }
+        Assert.assertEquals(expected, errors);
+        Assert.assertEquals(expected, parallelErrors);
+
+        // the first occurrence of every name is kept
+        Assert.assertEquals(1, parallel.get(0).getRowNum());
+        Assert.assertEquals(699, parallel.get(parallel.size() - 1).getRowNum());
+    }
+
+    private TextImportTemplate<String, PersonDTO> createTemplate(List<String> errors) {
+        return new TextImportTemplate<String, PersonDTO>(messageService, lines, errors, true) {
+
+            @Override
+            protected boolean isAppropriateRow(String[] line) {
+                return true;
+            }
+
+            @Override
+            protected PersonDTO process(int rowNum, String[] row) {
+                return importer.processRow(rowNum, row, PersonDTO.class);
+            }
+
+            @Override
+            protected String getKeyFromRow(PersonDTO t) {
+                return t.getName();
+            }
+        };
+    }
+}
@@ -37,6 +37,8 @@ import com.ocs.dynamo.dao.SortOrder.Direction;
 import com.ocs.dynamo.dao.SortOrders;
 import com.ocs.dynamo.dao.query.FetchJoinInformation;
 import com.ocs.dynamo.domain.TestEntity;
+import com.ocs.dynamo.domain.model.EntityModel;
+import com.ocs.dynamo.domain.model.EntityModelFactory;
 import com.ocs.dynamo.exception.OCSValidationException;
 import com.ocs.dynamo.filter.Compare;
 import com.ocs.dynamo.filter.Filter;
@@ -67,6 +69,12 @@ public class BaseServiceImplTest extends BaseMockitoTest {
     @Mock
     private MessageService messageService;
 
+    @Mock
+    private EntityModelFactory entityModelFactory;
+
+    @Mock
+    private EntityModel<TestEntity> entityModel;
+
     private TestService service = new TestService();
 
     @Before
@@ -88,6 +96,33 @@ public class BaseServiceImplTest extends BaseMockitoTest {
         Assert.assertNotNull(result);
     }
 
+    @Test
+    public void testFindById_Cached() {
+        Mockito.when(entityModelFactory.getModel(TestEntity.class)).thenReturn(entityModel);
+        Mockito.when(entityModel.getCacheSize()).thenReturn(10);
+
+        TestEntity obj = new TestEntity("name1", 14L);
+        obj.setId(ID);
+        Mockito.when(dao.findById(ID)).thenReturn(obj);
+
+        Assert.assertSame(obj, service.findById(ID));
+
+        // the cached entity is returned as a detached copy
+        TestEntity cached = service.findById(ID);
+        Assert.assertNotSame(obj, cached);
+        Assert.assertEquals(obj, cached);
+        Assert.assertEquals("name1", cached.getName());
+        Assert.assertNotSame(cached, service.findById(ID));
+        Mockito.verify(dao, Mockito.times(1)).findById(ID);
+        Assert.assertEquals(2.0 / 3, service.getCacheHitRatio(), 0.001);
+
+        // saving an entity clears the cache
+        MockUtil.mockSave(dao, TestEntity.class);
+        service.save(obj);
+        service.findById(ID);
+        Mockito.verify(dao, Mockito.times(2)).findById(ID);
+    }
+
     @Test
     public void testSave() {
         TestEntity obj = new TestEntity("name1", 14L);
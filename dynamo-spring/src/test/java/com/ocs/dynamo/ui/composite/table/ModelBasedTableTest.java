@@ -20,6 +20,7 @@ import junitx.util.PrivateAccessor;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 
@@ -28,10 +29,14 @@ import com.ocs.dynamo.domain.TestEntity;
 import com.ocs.dynamo.domain.model.EntityModel;
 import com.ocs.dynamo.domain.model.EntityModelFactory;
 import com.ocs.dynamo.domain.model.impl.EntityModelFactoryImpl;
+import com.ocs.dynamo.filter.Filter;
 import com.ocs.dynamo.service.MessageService;
 import com.ocs.dynamo.service.TestEntityService;
 import com.ocs.dynamo.test.BaseMockitoTest;
 import com.ocs.dynamo.test.MockUtil;
+import com.ocs.dynamo.ui.container.QueryType;
+import com.ocs.dynamo.ui.container.ServiceContainer;
+import com.ocs.dynamo.ui.container.ServiceQueryDefinition;
 import com.vaadin.data.sort.SortOrder;
 import com.vaadin.data.util.BeanItemContainer;
 import com.vaadin.ui.Table;
@@ -92,4 +97,26 @@ public class ModelBasedTableTest extends BaseMockitoTest {
         Assert.assertEquals(1, wrapper.getTable().getContainerDataSource().size());
     }
 
+    @Test
+    public void testCaption_Capped() {
+        EntityModel<TestEntity> model = entityModelFactory.getModel(TestEntity.class);
+        ServiceQueryDefinition<Integer, TestEntity> definition = new ServiceQueryDefinition<>(
+                service, false, 10, QueryType.PAGING, null);
+        definition.setEntityModel(model);
+        definition.setMaxCount(5);
+        Mockito.when(service.countCapped(Matchers.any(Filter.class), Matchers.eq(5))).thenReturn(
+                6L);
+
+        ServiceContainer<Integer, TestEntity> container = new ServiceContainer<>(definition);
+        container.addContainerProperties(model);
+        ModelBasedTable<Integer, TestEntity> table = new ModelBasedTable<>(container, model,
+                entityModelFactory, messageService);
+        table.updateTableCaption();
+
+        Assert.assertEquals(5, container.size());
+        Assert.assertTrue(container.isCapped());
+        Assert.assertEquals(model.getDisplayNamePlural() + " ocs.showing.results.capped",
+                table.getCaption());
+    }
+
 }
@@ -0,0 +1,173 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.composite.table.export;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.Lists;
+import com.ocs.dynamo.service.MessageService;
+import com.ocs.dynamo.test.MockUtil;
+import com.ocs.dynamo.ui.composite.table.Person;
+import com.vaadin.data.util.BeanItemContainer;
+import com.vaadin.ui.Table;
+import com.vaadin.ui.UI;
+
+/**
+ * Compares the in-memory Excel export to the streaming export. Next to the timings, the peak heap
+ * usage of every export is reported as the peakHeapMb counter. The main method also runs the GC
+ * profiler (-prof gc), which reports the memory that is allocated per export. Run the main method
+ * (with the test classpath) to execute it
+ * 
+ * @author bas.rutten
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class ExcelExportBenchmark {
+
+    private static final int MB = 1024 * 1024;
+
+    private static final List<String> COLUMN_IDS = Lists.newArrayList("name", "age", "weight",
+            "percentage");
+
+    @Param({ "100000" })
+    private int rows;
+
+    @Param({ "false", "true" })
+    private boolean streaming;
+
+    private TableExportActionHandler handler;
+
+    private Table table;
+
+    @Setup
+    public void setup() {
+        MessageService messageService = Mockito.mock(MessageService.class);
+        MockUtil.mockMessageService(messageService);
+        handler = new TableExportActionHandler(Mockito.mock(UI.class), messageService,
+                COLUMN_IDS, "Benchmark", true, null);
+
+        BeanItemContainer<Person> container = new BeanItemContainer<>(Person.class);
+        for (int i = 0; i < rows; i++) {
+            container.addBean(new Person(i, "Person " + i, i % 100, BigDecimal.valueOf(i % 150),
+                    BigDecimal.valueOf(i % 100)));
+        }
+        table = new Table();
+        table.setContainerDataSource(container);
+    }
+
+    /**
+     * Measures the peak heap usage of an export, relative to the heap usage after a garbage
+     * collection right before the export. Since an export is a single shot, every iteration
+     * reports the peak of exactly one export
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapCounters {
+
+        /**
+         * The peak heap usage of the export in MB
+         */
+        public long peakHeapMb;
+
+        private long baseline;
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            peakHeapMb = 0;
+        }
+
+        @Setup(Level.Invocation)
+        public void resetPeak() {
+            System.gc();
+            baseline = 0;
+            for (MemoryPoolMXBean pool : getHeapPools()) {
+                baseline += pool.getUsage().getUsed();
+                pool.resetPeakUsage();
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void recordPeak() {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : getHeapPools()) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+            peakHeapMb = Math.max(peakHeapMb, (peak - baseline) / MB);
+        }
+    }
+
+    @Benchmark
+    public Workbook export(HeapCounters counters) throws IOException {
+        Workbook workbook = streaming ? new SXSSFWorkbook(new XSSFWorkbook(), 100, true)
+                : new XSSFWorkbook();
+        TableExportActionHandler.ModelExcelExport export = handler.new ModelExcelExport(table,
+                workbook);
+        export.convertTable();
+        workbook.write(new NullOutputStream());
+        if (streaming) {
+            ((SXSSFWorkbook) workbook).dispose();
+        }
+        return workbook;
+    }
+
+    private static List<MemoryPoolMXBean> getHeapPools() {
+        List<MemoryPoolMXBean> result = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (MemoryType.HEAP == pool.getType()) {
+                result.add(pool);
+            }
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ExcelExportBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+}
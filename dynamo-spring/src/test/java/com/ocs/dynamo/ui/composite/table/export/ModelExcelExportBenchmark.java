@@ -0,0 +1,143 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.composite.table.export;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.Lists;
+import com.ocs.dynamo.domain.TestEntity;
+import com.ocs.dynamo.domain.TestEntity.TestEnum;
+import com.ocs.dynamo.domain.model.EntityModel;
+import com.ocs.dynamo.domain.model.impl.EntityModelFactoryImpl;
+import com.ocs.dynamo.service.MessageService;
+import com.ocs.dynamo.test.MockUtil;
+import com.ocs.dynamo.utils.DateUtils;
+import com.vaadin.data.util.BeanItemContainer;
+import com.vaadin.ui.Table;
+import com.vaadin.ui.UI;
+
+import junitx.util.PrivateAccessor;
+
+/**
+ * Measures the time it takes to convert a model based table of 100.000 rows and 20 columns. The
+ * columns cover the numeric, date, week, enum, boolean and text attributes of the test entity
+ * (some of them twice), so every cell passes through the column writers. Only the conversion is
+ * measured - the rows are streamed so the workbook does not dominate the measurement. Run the
+ * main method (with the test classpath) to execute it
+ * 
+ * @author bas.rutten
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class ModelExcelExportBenchmark {
+
+    private static final List<String> COLUMN_IDS = Lists.newArrayList("id", "name", "age",
+            "discount", "rate", "birthDate", "birthWeek", "someEnum", "someBoolean", "someString",
+            "someInt", "someTextArea", "someBoolean2", "someTime", "url", "name", "age",
+            "birthDate", "rate", "someString");
+
+    @Param({ "100000" })
+    private int rows;
+
+    private TableExportActionHandler handler;
+
+    private Table table;
+
+    private SXSSFWorkbook workbook;
+
+    @Setup
+    public void setup() throws NoSuchFieldException {
+        MessageService messageService = Mockito.mock(MessageService.class);
+        MockUtil.mockMessageService(messageService);
+        EntityModelFactoryImpl entityModelFactory = new EntityModelFactoryImpl();
+        PrivateAccessor.setField(entityModelFactory, "messageService", messageService);
+
+        List<EntityModel<?>> models = new ArrayList<>();
+        models.add(entityModelFactory.getModel(TestEntity.class));
+        handler = new TableExportActionHandler(Mockito.mock(UI.class), entityModelFactory, models,
+                messageService, "Benchmark", COLUMN_IDS, false, null);
+
+        BeanItemContainer<TestEntity> container = new BeanItemContainer<>(TestEntity.class);
+        for (int i = 0; i < rows; i++) {
+            TestEntity entity = new TestEntity("Person<br/>" + i, (long) (i % 100));
+            entity.setId(i);
+            entity.setDiscount(BigDecimal.valueOf(i % 150));
+            entity.setRate(BigDecimal.valueOf(i % 100));
+            entity.setBirthDate(DateUtils.createDate("01012000"));
+            entity.setBirthWeek(DateUtils.createDate("01012000"));
+            entity.setSomeEnum(TestEnum.values()[i % TestEnum.values().length]);
+            entity.setSomeBoolean(i % 2 == 0);
+            entity.setSomeBoolean2(i % 3 == 0);
+            entity.setSomeString("String " + i);
+            entity.setSomeInt(i);
+            entity.setSomeTextArea("Text<br/>area " + i);
+            entity.setSomeTime(DateUtils.createDate("01012000"));
+            entity.setUrl("http://www.opencirclesolutions.nl/" + i);
+            container.addBean(entity);
+        }
+        table = new Table();
+        table.setContainerDataSource(container);
+    }
+
+    @Setup(Level.Invocation)
+    public void createWorkbook() {
+        workbook = new SXSSFWorkbook(new XSSFWorkbook(), 100, true);
+    }
+
+    @TearDown(Level.Invocation)
+    public void disposeWorkbook() {
+        workbook.dispose();
+    }
+
+    @Benchmark
+    public Workbook convert() {
+        TableExportActionHandler.ModelExcelExport export = handler.new ModelExcelExport(table,
+                workbook);
+        export.convertTable();
+        return workbook;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ModelExcelExportBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
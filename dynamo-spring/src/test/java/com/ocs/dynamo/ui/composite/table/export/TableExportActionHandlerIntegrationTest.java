@@ -0,0 +1,191 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.composite.table.export;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.ocs.dynamo.dao.query.FetchJoinInformation;
+import com.ocs.dynamo.domain.TestEntity;
+import com.ocs.dynamo.domain.model.EntityModel;
+import com.ocs.dynamo.domain.model.EntityModelFactory;
+import com.ocs.dynamo.importer.impl.BaseXlsImporter;
+import com.ocs.dynamo.service.MessageService;
+import com.ocs.dynamo.service.TestEntityService;
+import com.ocs.dynamo.test.BaseIntegrationTest;
+import com.ocs.dynamo.ui.ServiceLocator;
+import com.ocs.dynamo.ui.composite.table.ModelBasedTable;
+import com.ocs.dynamo.ui.container.QueryType;
+import com.ocs.dynamo.ui.container.ServiceContainer;
+import com.vaadin.addon.tableexport.TemporaryFileDownloadResource;
+import com.vaadin.data.sort.SortOrder;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.server.Page;
+import com.vaadin.shared.data.sort.SortDirection;
+import com.vaadin.ui.UI;
+
+import junitx.util.PrivateAccessor;
+
+/**
+ * The export reads the entities in a transaction of its own, so the test data is committed rather
+ * than saved in a transaction that is rolled back
+ */
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class TableExportActionHandlerIntegrationTest extends BaseIntegrationTest {
+
+    @Inject
+    private TestEntityService testEntityService;
+
+    @Inject
+    private EntityModelFactory entityModelFactory;
+
+    @Inject
+    private MessageService messageService;
+
+    private BaseXlsImporter importer = new BaseXlsImporter();
+
+    private UI ui = Mockito.mock(UI.class);
+
+    private Page page = Mockito.mock(Page.class);
+
+    @Before
+    public void setup() throws NoSuchFieldException {
+        PrivateAccessor.setField(ServiceLocator.class, "ctx", this.applicationContext);
+        Mockito.when(ui.getPage()).thenReturn(page);
+
+        TestEntity bob = new TestEntity("Bob", 45L);
+        bob.setSomeInt(4);
+        testEntityService.save(bob);
+
+        TestEntity harry = new TestEntity("Harry", 18L);
+        harry.setSomeInt(5);
+        testEntityService.save(harry);
+
+        TestEntity jim = new TestEntity("Jim", 30L);
+        jim.setSomeInt(6);
+        testEntityService.save(jim);
+    }
+
+    /**
+     * Test that the rows of a service container are exported using the filter and the sort order
+     * of the container
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testExportServiceContainer() throws IOException {
+        EntityModel<TestEntity> model = entityModelFactory.getModel(TestEntity.class);
+        ServiceContainer<Integer, TestEntity> container = new ServiceContainer<>(testEntityService,
+                model, false, 20, QueryType.PAGING, new FetchJoinInformation[0]);
+        container.search(new Compare.Greater("age", 20L));
+        container.sort(new SortOrder("name", SortDirection.DESCENDING));
+
+        ModelBasedTable<Integer, TestEntity> table = new ModelBasedTable<>(container, model,
+                entityModelFactory, messageService);
+
+        List<EntityModel<?>> models = Lists.newArrayList();
+        models.add(model);
+        TableExportActionHandler handler = new TableExportActionHandler(ui, entityModelFactory,
+                models, messageService, "Report", Lists.newArrayList("name", "someInt"), true,
+                null);
+        handler.handleAction(handler.getActions(null, null)[0], table, null);
+
+        Workbook wb = importer.createWorkbook(captureSave());
+        Sheet sheet = wb.getSheetAt(0);
+
+        Assert.assertEquals("Jim", sheet.getRow(2).getCell(0).getStringCellValue());
+        Assert.assertEquals(6, sheet.getRow(2).getCell(1).getNumericCellValue(), 0.001);
+        Assert.assertEquals("Bob", sheet.getRow(3).getCell(0).getStringCellValue());
+        Assert.assertEquals(4, sheet.getRow(3).getCell(1).getNumericCellValue(), 0.001);
+
+        // totals row
+        Assert.assertEquals(10, sheet.getRow(4).getCell(1).getNumericCellValue(), 0.001);
+    }
+
+    /**
+     * Test that a background export only uses the filter and the sort order that were in effect
+     * when the export was started, even when the container changes while the job waits
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testExportJob_Description() throws IOException {
+        EntityModel<TestEntity> model = entityModelFactory.getModel(TestEntity.class);
+        ServiceContainer<Integer, TestEntity> container = new ServiceContainer<>(testEntityService,
+                model, false, 20, QueryType.PAGING, new FetchJoinInformation[0]);
+        container.search(new Compare.Greater("age", 20L));
+        container.sort(new SortOrder("name", SortDirection.DESCENDING));
+
+        ModelBasedTable<Integer, TestEntity> table = new ModelBasedTable<>(container, model,
+                entityModelFactory, messageService);
+
+        List<EntityModel<?>> models = Lists.newArrayList();
+        models.add(model);
+        TableExportActionHandler handler = new TableExportActionHandler(ui, entityModelFactory,
+                models, messageService, "Report", Lists.newArrayList("name", "someInt"), false,
+                null);
+        ExportDescription<?, ?> description = handler.createDescription(table);
+        Assert.assertNotNull(description);
+        Assert.assertEquals(2, description.getSize());
+
+        ExportJob job = new ExportJob(handler.new ModelExcelExport(description,
+                new XSSFWorkbook()), null, "export.xlsx", description.getSize());
+
+        // the user changes the table before the job starts
+        container.search(new Compare.Less("age", 20L));
+        container.sort(new SortOrder("name", SortDirection.ASCENDING));
+
+        job.run();
+        Assert.assertEquals(ExportJob.Status.DONE, job.getStatus());
+        try {
+            Workbook wb = importer.createWorkbook(FileUtils.readFileToByteArray(job.getFile()));
+            Sheet sheet = wb.getSheetAt(0);
+            Assert.assertEquals("Jim", sheet.getRow(2).getCell(0).getStringCellValue());
+            Assert.assertEquals("Bob", sheet.getRow(3).getCell(0).getStringCellValue());
+            Assert.assertNull(sheet.getRow(4));
+        } finally {
+            job.discard();
+        }
+    }
+
+    @After
+    public void cleanup() {
+        testEntityService.delete(testEntityService.findAll());
+    }
+
+    private byte[] captureSave() throws IOException {
+        ArgumentCaptor<TemporaryFileDownloadResource> captor = ArgumentCaptor
+                .forClass(TemporaryFileDownloadResource.class);
+        Mockito.verify(page).open(captor.capture(), Matchers.anyString(), Matchers.anyBoolean());
+        return IOUtils.toByteArray(captor.getValue().getStreamSource().getStream());
+    }
+}
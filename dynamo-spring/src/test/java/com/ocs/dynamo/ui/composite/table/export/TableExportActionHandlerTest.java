@@ -15,6 +15,8 @@ package com.ocs.dynamo.ui.composite.table.export;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.ocs.dynamo.constants.DynamoConstants;
+import com.ocs.dynamo.domain.TestEntity;
 import com.ocs.dynamo.domain.model.AttributeModel;
 import com.ocs.dynamo.domain.model.EntityModel;
 import com.ocs.dynamo.domain.model.EntityModelFactory;
@@ -27,16 +29,32 @@ import com.ocs.dynamo.ui.composite.table.CustomTreeTable;
 import com.ocs.dynamo.ui.composite.table.Department;
 import com.ocs.dynamo.ui.composite.table.ModelBasedTable;
 import com.ocs.dynamo.ui.composite.table.Person;
+import com.ocs.dynamo.ui.composite.table.TableUtils;
+import com.ocs.dynamo.ui.composite.table.export.ExportJob.ExportJobListener;
+import com.ocs.dynamo.utils.DateUtils;
+import com.vaadin.addon.tableexport.ExportableFormattedProperty;
 import com.vaadin.addon.tableexport.TemporaryFileDownloadResource;
+import com.vaadin.data.Property;
 import com.vaadin.data.util.BeanItemContainer;
+import com.vaadin.event.Action;
 import com.vaadin.server.Page;
+import com.vaadin.server.SessionDestroyEvent;
+import com.vaadin.server.SessionDestroyListener;
+import com.vaadin.server.StreamResource;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
 import com.vaadin.ui.Grid;
 import com.vaadin.ui.Table;
 import com.vaadin.ui.TreeTable;
 import com.vaadin.ui.UI;
 import junitx.util.PrivateAccessor;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -44,10 +62,15 @@ import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 public class TableExportActionHandlerTest extends BaseMockitoTest {
 
@@ -226,6 +249,76 @@ public class TableExportActionHandlerTest extends BaseMockitoTest {
 
     }
 
+    /**
+     * Test that a streamed export contains the same values, and that the totals are computed
+     * even though the rows are no longer available when the totals row is written
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testExportStreaming() throws IOException {
+        List<EntityModel<?>> models = new ArrayList<>();
+        models.add(entityModelFactory.getModel(Person.class));
+
+        handler = new TableExportActionHandler(ui, entityModelFactory, models, messageService,
+                REPORT_TITLE, columnIds, true, null);
+        handler.setStreamingThreshold(0);
+
+        handler.handleAction(handler.getActions(null, null)[0], getTable(), null);
+
+        byte[] bytes = captureSave();
+        Workbook wb = importer.createWorkbook(bytes);
+
+        Assert.assertEquals("Bas, Bob", wb.getSheetAt(0).getRow(2).getCell(0).getStringCellValue());
+        Assert.assertEquals("Patrick", wb.getSheetAt(0).getRow(3).getCell(0).getStringCellValue());
+
+        Assert.assertEquals(35, wb.getSheetAt(0).getRow(2).getCell(1).getNumericCellValue(), 0.001);
+        Assert.assertEquals(44, wb.getSheetAt(0).getRow(3).getCell(1).getNumericCellValue(), 0.001);
+
+        // percentage
+        Assert.assertEquals(0.12, wb.getSheetAt(0).getRow(2).getCell(3).getNumericCellValue(),
+                0.001);
+
+        // totals must be summed up
+        Cell total = wb.getSheetAt(0).getRow(4).getCell(1);
+        Assert.assertEquals(Cell.CELL_TYPE_FORMULA, total.getCellType());
+        Assert.assertEquals(79, total.getNumericCellValue(), 0.001);
+        Assert.assertEquals(153.0, wb.getSheetAt(0).getRow(4).getCell(2).getNumericCellValue(),
+                0.001);
+    }
+
+    /**
+     * Test that the final formatting of a streamed sheet does not need the rows that have already
+     * been flushed to disk
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testExportStreaming_FinalSheetFormat() throws IOException {
+        List<EntityModel<?>> models = new ArrayList<>();
+        models.add(entityModelFactory.getModel(Person.class));
+
+        handler = new TableExportActionHandler(ui, entityModelFactory, models, messageService,
+                REPORT_TITLE, columnIds, true, null);
+
+        // keep only a single row in memory, so that all data rows are flushed
+        SXSSFWorkbook workbook = new SXSSFWorkbook(new XSSFWorkbook(), 1, true);
+        handler.new ModelExcelExport(getTable(), workbook).convertTable();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        workbook.write(out);
+        workbook.dispose();
+
+        XSSFWorkbook wb = (XSSFWorkbook) importer.createWorkbook(out.toByteArray());
+        Assert.assertTrue(wb.getForceFormulaRecalculation());
+        Assert.assertEquals(1, wb.getNumberOfSheets());
+        Assert.assertEquals(0, wb.getActiveSheetIndex());
+
+        Cell total = wb.getSheetAt(0).getRow(4).getCell(1);
+        Assert.assertEquals(Cell.CELL_TYPE_FORMULA, total.getCellType());
+        Assert.assertEquals(79, total.getNumericCellValue(), 0.001);
+    }
+
     @Test
     public void testExportWithCustomCellStyle() throws IOException {
 
@@ -304,6 +397,297 @@ public class TableExportActionHandlerTest extends BaseMockitoTest {
 
     }
 
+    /**
+     * Test that an export job that is submitted to the export service writes the file in the
+     * background and notifies its listener
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testExportJob() throws Exception {
+        handler = new TableExportActionHandler(ui, messageService, columnIds, REPORT_TITLE, false,
+                null);
+
+        ExportJob job = new ExportJob(handler.new ModelExcelExport(getTable(), new XSSFWorkbook()),
+                null, "export.xlsx", 2);
+        ExportJobListener listener = Mockito.mock(ExportJobListener.class);
+        job.setListener(listener);
+        Assert.assertEquals(ExportJob.Status.QUEUED, job.getStatus());
+
+        TableExportService service = new TableExportService();
+        try {
+            service.submit(job).get();
+        } finally {
+            service.shutdown();
+        }
+
+        Assert.assertEquals(ExportJob.Status.DONE, job.getStatus());
+        Assert.assertEquals(2, job.getRowsWritten());
+        Mockito.verify(listener).finished(job);
+
+        File file = job.getFile();
+        Assert.assertTrue(file.exists());
+        Workbook wb = importer.createWorkbook(FileUtils.readFileToByteArray(file));
+        Assert.assertEquals("Bas, Bob", wb.getSheetAt(0).getRow(2).getCell(0).getStringCellValue());
+        Assert.assertEquals("Patrick", wb.getSheetAt(0).getRow(3).getCell(0).getStringCellValue());
+
+        // discarding the job removes the file
+        job.discard();
+        Assert.assertFalse(file.exists());
+        Assert.assertNull(job.getFile());
+    }
+
+    /**
+     * Test that the file of a finished job is removed when the session that started the job ends
+     */
+    @Test
+    public void testExportJobDiscardedOnSessionDestroy() {
+        handler = new TableExportActionHandler(ui, messageService, columnIds, REPORT_TITLE, false,
+                null);
+
+        ExportJob job = new ExportJob(handler.new ModelExcelExport(getTable(), new XSSFWorkbook()),
+                null, "export.xlsx", 2);
+        job.run();
+        File file = job.getFile();
+        Assert.assertTrue(file.exists());
+
+        VaadinService vaadinService = Mockito.mock(VaadinService.class);
+        VaadinSession session = Mockito.mock(VaadinSession.class);
+        Mockito.when(session.getService()).thenReturn(vaadinService);
+        job.discardOnDestroy(session);
+
+        ArgumentCaptor<SessionDestroyListener> captor = ArgumentCaptor
+                .forClass(SessionDestroyListener.class);
+        Mockito.verify(vaadinService).addSessionDestroyListener(captor.capture());
+
+        // another session ending does not affect the job
+        captor.getValue().sessionDestroy(
+                new SessionDestroyEvent(vaadinService, Mockito.mock(VaadinSession.class)));
+        Assert.assertTrue(file.exists());
+
+        captor.getValue().sessionDestroy(new SessionDestroyEvent(vaadinService, session));
+        Assert.assertFalse(file.exists());
+        Assert.assertNull(job.getFile());
+        Mockito.verify(vaadinService).removeSessionDestroyListener(captor.getValue());
+    }
+
+    /**
+     * Test that a job that is cancelled before it starts does not write anything
+     */
+    @Test
+    public void testExportJobCancelled() {
+        handler = new TableExportActionHandler(ui, messageService, columnIds, REPORT_TITLE, false,
+                null);
+
+        ExportJob job = new ExportJob(handler.new ModelExcelExport(getTable(), new XSSFWorkbook()),
+                null, "export.xlsx", 2);
+        job.cancel();
+        job.run();
+
+        Assert.assertEquals(ExportJob.Status.CANCELLED, job.getStatus());
+        Assert.assertEquals(0, job.getRowsWritten());
+        Assert.assertNull(job.getFile());
+    }
+
+    /**
+     * Test that the formatters that are cached per column produce the same values as the table
+     * formatting
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testExportDateAndWeekColumns() throws IOException {
+        EntityModel<TestEntity> model = entityModelFactory.getModel(TestEntity.class);
+        List<EntityModel<?>> models = new ArrayList<>();
+        models.add(model);
+
+        handler = new TableExportActionHandler(ui, entityModelFactory, models, messageService,
+                REPORT_TITLE, Lists.newArrayList("name", "birthDate", "birthWeek"), false, null);
+
+        Date date = DateUtils.createDate("01022015");
+        BeanItemContainer<TestEntity> container = new BeanItemContainer<>(TestEntity.class);
+        for (String name : new String[] { "Bob", "Kevin" }) {
+            TestEntity entity = new TestEntity(name, 11L);
+            entity.setBirthDate(date);
+            entity.setBirthWeek(date);
+            container.addBean(entity);
+        }
+        Table table = new Table();
+        table.setContainerDataSource(container);
+
+        handler.handleAction(handler.getActions(null, null)[0], table, null);
+
+        Workbook wb = importer.createWorkbook(captureSave());
+        for (int row = 2; row < 4; row++) {
+            Assert.assertEquals(TableUtils.formatPropertyValue(entityModelFactory, model,
+                    messageService, "birthDate", date), wb.getSheetAt(0).getRow(row).getCell(1)
+                    .getStringCellValue());
+            Assert.assertEquals(TableUtils.formatPropertyValue(entityModelFactory, model,
+                    messageService, "birthWeek", date), wb.getSheetAt(0).getRow(row).getCell(2)
+                    .getStringCellValue());
+        }
+    }
+
+    @Test
+    public void testExportCsv() throws IOException {
+        handler = new TableExportActionHandler(ui, messageService, columnIds, REPORT_TITLE, false,
+                null);
+        handler.addExportFormat(new CsvExportFormat());
+
+        Action[] actions = handler.getActions(null, getTable());
+        Assert.assertEquals(2, actions.length);
+        Assert.assertEquals("ocs.export.csv", actions[1].getCaption());
+
+        handler.handleAction(actions[1], getTable(), null);
+
+        String[] lines = new String(captureStream(), DynamoConstants.UTF_8).split("\n");
+        Assert.assertEquals(3, lines.length);
+        Assert.assertEquals("\"Bas, Bob\";\"35\";\"76.0\";\"12\"", lines[1]);
+        Assert.assertEquals("\"Patrick\";\"44\";\"77.0\";\"15\"", lines[2]);
+    }
+
+    @Test
+    public void testExportCsvGzip() throws IOException {
+        handler = new TableExportActionHandler(ui, messageService, columnIds, REPORT_TITLE, false,
+                null);
+        handler.addExportFormat(new GzipCsvExportFormat());
+
+        handler.handleAction(handler.getActions(null, null)[1], getTable(), null);
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(captureStream()))) {
+            String[] lines = IOUtils.toString(in, DynamoConstants.UTF_8).split("\n");
+            Assert.assertEquals(3, lines.length);
+            Assert.assertEquals("\"Bas, Bob\";\"35\";\"76.0\";\"12\"", lines[1]);
+        }
+    }
+
+    /**
+     * Test that a text based export formats dates and weeks in the same way as the Excel export
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testExportCsvDateAndWeekColumns() throws IOException {
+        EntityModel<TestEntity> model = entityModelFactory.getModel(TestEntity.class);
+        List<EntityModel<?>> models = new ArrayList<>();
+        models.add(model);
+
+        handler = new TableExportActionHandler(ui, entityModelFactory, models, messageService,
+                REPORT_TITLE, Lists.newArrayList("name", "birthDate", "birthWeek"), false, null);
+        handler.addExportFormat(new CsvExportFormat());
+
+        Date date = DateUtils.createDate("01022015");
+        BeanItemContainer<TestEntity> container = new BeanItemContainer<>(TestEntity.class);
+        TestEntity entity = new TestEntity("Bob", 11L);
+        entity.setBirthDate(date);
+        entity.setBirthWeek(date);
+        container.addBean(entity);
+        Table table = new Table();
+        table.setContainerDataSource(container);
+
+        handler.handleAction(handler.getActions(null, table)[1], table, null);
+
+        String[] lines = new String(captureStream(), DynamoConstants.UTF_8).split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals("\"Bob\";\""
+                + TableUtils.formatPropertyValue(entityModelFactory, model, messageService,
+                        "birthDate", date)
+                + "\";\""
+                + TableUtils.formatPropertyValue(entityModelFactory, model, messageService,
+                        "birthWeek", date) + "\"", lines[1]);
+    }
+
+    /**
+     * Test that a text based export uses the values that are formatted by the table when this is
+     * requested
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testExportCsvFormattedValues() throws IOException {
+        handler = new TableExportActionHandler(ui, messageService, shortColumnIds, REPORT_TITLE,
+                false, null);
+        handler.addExportFormat(new CsvExportFormat());
+        handler.setUseTableFormatPropertyValue(true);
+
+        Table table = new FormattedTable();
+        table.setContainerDataSource(getTable().getContainerDataSource());
+        table.setVisibleColumns("name", "age");
+
+        handler.handleAction(handler.getActions(null, table)[1], table, null);
+
+        String[] lines = new String(captureStream(), DynamoConstants.UTF_8).split("\n");
+        Assert.assertEquals(3, lines.length);
+        Assert.assertEquals("\"Bas, Bob\";\"35 years\"", lines[1]);
+        Assert.assertEquals("\"Patrick\";\"44 years\"", lines[2]);
+    }
+
+    /**
+     * Test that a value for which the attribute model has no representation results in an empty
+     * cell in Excel, and in the plain value in a text based export
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testExportNoRepresentation() throws IOException {
+        EntityModel<TestEntity> model = entityModelFactory.getModel(TestEntity.class);
+        List<EntityModel<?>> models = new ArrayList<>();
+        models.add(model);
+
+        handler = new TableExportActionHandler(ui, entityModelFactory, models, messageService,
+                REPORT_TITLE, Lists.newArrayList("name", "someBoolean", "someBoolean2"), false,
+                null);
+        handler.addExportFormat(new CsvExportFormat());
+
+        BeanItemContainer<TestEntity> container = new BeanItemContainer<>(TestEntity.class);
+        TestEntity entity = new TestEntity("Bob", 11L);
+        entity.setSomeBoolean(true);
+        entity.setSomeBoolean2(true);
+        container.addBean(entity);
+        Table table = new Table();
+        table.setContainerDataSource(container);
+
+        handler.handleAction(handler.getActions(null, table)[0], table, null);
+        Workbook wb = importer.createWorkbook(captureSave());
+        Row row = wb.getSheetAt(0).getRow(2);
+        Cell cell = row.getCell(1);
+        Assert.assertTrue(cell == null || Cell.CELL_TYPE_BLANK == cell.getCellType());
+        Assert.assertEquals("On", row.getCell(2).getStringCellValue());
+
+        Mockito.reset(page);
+        handler.handleAction(handler.getActions(null, table)[1], table, null);
+        String[] lines = new String(captureStream(), DynamoConstants.UTF_8).split("\n");
+        Assert.assertEquals("\"Bob\";\"true\";\"On\"", lines[1]);
+    }
+
+    /**
+     * Text formats are not offered for tree tables
+     */
+    @Test
+    public void testNoCsvExportForTreeTable() {
+        handler = new TableExportActionHandler(ui, messageService, shortColumnIds, REPORT_TITLE,
+                false, null);
+        handler.addExportFormat(new CsvExportFormat());
+
+        Assert.assertEquals(1, handler.getActions(null, getTreeTable()).length);
+    }
+
+    /**
+     * A table that formats the ages of persons
+     */
+    @SuppressWarnings("serial")
+    private static class FormattedTable extends Table implements ExportableFormattedProperty {
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public String getFormattedPropertyValue(Object rowId, Object colId, Property property) {
+            if ("age".equals(colId)) {
+                return property.getValue() + " years";
+            }
+            return property.getValue() == null ? null : property.getValue().toString();
+        }
+    }
+
     private Table getTable() {
         BeanItemContainer<Person> container = new BeanItemContainer<>(Person.class);
 
@@ -432,6 +816,24 @@ public class TableExportActionHandlerTest extends BaseMockitoTest {
         return grid;
     }
 
+    /**
+     * Captures the resource that is opened for a text based export, and writes it to a byte array
+     * 
+     * @return
+     * @throws IOException
+     */
+    @SuppressWarnings({ "deprecation" })
+    private byte[] captureStream() throws IOException {
+        ArgumentCaptor<StreamResource> captor = ArgumentCaptor.forClass(StreamResource.class);
+        Mockito.verify(page).open(captor.capture(), Matchers.anyString(), Matchers.anyBoolean());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VaadinResponse response = Mockito.mock(VaadinResponse.class);
+        Mockito.when(response.getOutputStream()).thenReturn(out);
+        captor.getValue().getStream().writeResponse(Mockito.mock(VaadinRequest.class), response);
+        return out.toByteArray();
+    }
+
     @SuppressWarnings({ "deprecation" })
     private byte[] captureSave() throws IOException {
 
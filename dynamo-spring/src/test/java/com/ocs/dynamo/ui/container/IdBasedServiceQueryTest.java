@@ -0,0 +1,73 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.container;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+
+import com.google.common.collect.Lists;
+import com.ocs.dynamo.dao.SortOrder;
+import com.ocs.dynamo.dao.SortOrders;
+import com.ocs.dynamo.dao.query.FetchJoinInformation;
+import com.ocs.dynamo.domain.TestEntity;
+import com.ocs.dynamo.domain.model.EntityModelFactory;
+import com.ocs.dynamo.domain.model.impl.EntityModelFactoryImpl;
+import com.ocs.dynamo.filter.Filter;
+import com.ocs.dynamo.service.TestEntityService;
+import com.ocs.dynamo.test.BaseMockitoTest;
+
+public class IdBasedServiceQueryTest extends BaseMockitoTest {
+
+    private EntityModelFactory entityModelFactory = new EntityModelFactoryImpl();
+
+    @Mock
+    private TestEntityService service;
+
+    private ServiceQueryDefinition<Integer, TestEntity> definition;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        Mockito.when(service.getEntityClass()).thenReturn(TestEntity.class);
+        definition = new ServiceQueryDefinition<>(service, false, 10, QueryType.ID_BASED, null);
+        definition.setEntityModel(entityModelFactory.getModel(TestEntity.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testNumericIds() {
+        Mockito.when(service.findNumericIds(Matchers.any(Filter.class),
+                Matchers.<SortOrder> anyVararg())).thenReturn(new long[] { 7L, 3L, 5L });
+
+        IdBasedServiceQuery<Integer, TestEntity> query = new IdBasedServiceQuery<>(definition,
+                null);
+        Assert.assertEquals(3, query.size());
+
+        // the boxed list of IDs is never retrieved
+        Mockito.verify(service, Mockito.never()).findIds(Matchers.any(Filter.class),
+                Matchers.<SortOrder> anyVararg());
+
+        query.loadBeans(1, 2);
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(service).fetchByIds(captor.capture(), Matchers.any(SortOrders.class),
+                Matchers.<FetchJoinInformation> anyVararg());
+        Assert.assertEquals(Lists.newArrayList(3, 5), captor.getValue());
+    }
+}
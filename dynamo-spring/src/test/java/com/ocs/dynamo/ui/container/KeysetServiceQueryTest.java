@@ -0,0 +1,134 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.container;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.ocs.dynamo.dao.KeysetPageable;
+import com.ocs.dynamo.dao.OffsetPageable;
+import com.ocs.dynamo.dao.Pageable;
+import com.ocs.dynamo.dao.SortOrder;
+import com.ocs.dynamo.dao.query.FetchJoinInformation;
+import com.ocs.dynamo.domain.TestEntity;
+import com.ocs.dynamo.domain.model.EntityModelFactory;
+import com.ocs.dynamo.domain.model.impl.EntityModelFactoryImpl;
+import com.ocs.dynamo.filter.Filter;
+import com.ocs.dynamo.service.TestEntityService;
+import com.ocs.dynamo.test.BaseMockitoTest;
+
+public class KeysetServiceQueryTest extends BaseMockitoTest {
+
+    private static final SortOrder[] BY_NAME = new SortOrder[] { new SortOrder("name") };
+
+    private EntityModelFactory entityModelFactory = new EntityModelFactoryImpl();
+
+    @Mock
+    private TestEntityService service;
+
+    private ServiceQueryDefinition<Integer, TestEntity> definition;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        Mockito.when(service.getEntityClass()).thenReturn(TestEntity.class);
+        definition = new ServiceQueryDefinition<>(service, false, 10, QueryType.PAGING, null);
+        definition.setEntityModel(entityModelFactory.getModel(TestEntity.class));
+    }
+
+    /**
+     * The page that follows a page is retrieved by means of the sort values of its last row
+     */
+    @Test
+    public void testLoadPage_Keyset() {
+        Mockito.when(
+                service.fetch(Matchers.any(Filter.class), Matchers.any(Pageable.class),
+                        Matchers.<FetchJoinInformation> anyVararg())).thenAnswer(
+                new NameAnswer(false));
+
+        KeysetServiceQuery<Integer, TestEntity> query = new KeysetServiceQuery<>(definition, null);
+        query.loadPage(null, BY_NAME, 0, 10);
+        query.loadPage(null, BY_NAME, 10, 10);
+
+        List<Pageable> pageables = capturePageables(2);
+        Assert.assertTrue(pageables.get(1) instanceof KeysetPageable);
+        Assert.assertArrayEquals(new Object[] { "Name 9", 9 },
+                ((KeysetPageable) pageables.get(1)).getLastValues());
+    }
+
+    /**
+     * When a sort value of the last row is null, the next page is retrieved by offset since no
+     * row compares to a null value
+     */
+    @Test
+    public void testLoadPage_NullSortValue() {
+        Mockito.when(
+                service.fetch(Matchers.any(Filter.class), Matchers.any(Pageable.class),
+                        Matchers.<FetchJoinInformation> anyVararg())).thenAnswer(
+                new NameAnswer(true));
+
+        KeysetServiceQuery<Integer, TestEntity> query = new KeysetServiceQuery<>(definition, null);
+        query.loadPage(null, BY_NAME, 0, 10);
+        query.loadPage(null, BY_NAME, 10, 10);
+
+        List<Pageable> pageables = capturePageables(2);
+        Assert.assertTrue(pageables.get(1) instanceof OffsetPageable);
+        Assert.assertEquals(10, pageables.get(1).getOffset());
+        Assert.assertEquals(10, pageables.get(1).getPageSize());
+    }
+
+    private List<Pageable> capturePageables(int times) {
+        ArgumentCaptor<Pageable> captor = ArgumentCaptor.forClass(Pageable.class);
+        Mockito.verify(service, Mockito.times(times)).fetch(Matchers.any(Filter.class),
+                captor.capture(), Matchers.<FetchJoinInformation> anyVararg());
+        return captor.getAllValues();
+    }
+
+    /**
+     * Returns a page of entities whose IDs are equal to their row index, optionally without a
+     * name for the last entity
+     */
+    private static class NameAnswer implements Answer<List<TestEntity>> {
+
+        private final boolean lastNameNull;
+
+        NameAnswer(boolean lastNameNull) {
+            this.lastNameNull = lastNameNull;
+        }
+
+        @Override
+        public List<TestEntity> answer(InvocationOnMock invocation) {
+            Pageable pageable = (Pageable) invocation.getArguments()[1];
+            List<TestEntity> page = new ArrayList<>();
+            for (int i = 0; i < pageable.getPageSize(); i++) {
+                int id = pageable.getOffset() + i;
+                boolean last = i == pageable.getPageSize() - 1;
+                TestEntity entity = new TestEntity(lastNameNull && last ? null : "Name " + id,
+                        11L);
+                entity.setId(id);
+                page.add(entity);
+            }
+            return page;
+        }
+    }
+}
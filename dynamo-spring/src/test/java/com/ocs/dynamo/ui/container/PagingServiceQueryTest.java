@@ -0,0 +1,218 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.ui.container;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.ocs.dynamo.dao.Pageable;
+import com.ocs.dynamo.dao.query.FetchJoinInformation;
+import com.ocs.dynamo.domain.TestEntity;
+import com.ocs.dynamo.domain.model.EntityModelFactory;
+import com.ocs.dynamo.domain.model.impl.EntityModelFactoryImpl;
+import com.ocs.dynamo.filter.Filter;
+import com.ocs.dynamo.service.TestEntityService;
+import com.ocs.dynamo.test.BaseMockitoTest;
+
+public class PagingServiceQueryTest extends BaseMockitoTest {
+
+    private EntityModelFactory entityModelFactory = new EntityModelFactoryImpl();
+
+    @Mock
+    private TestEntityService service;
+
+    private ServiceQueryDefinition<Integer, TestEntity> definition;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        Mockito.when(service.getEntityClass()).thenReturn(TestEntity.class);
+        definition = new ServiceQueryDefinition<>(service, false, 10, QueryType.PAGING, null);
+        definition.setEntityModel(entityModelFactory.getModel(TestEntity.class));
+    }
+
+    @Test
+    public void testSize() {
+        Mockito.when(service.count(Matchers.any(Filter.class), Matchers.eq(false))).thenReturn(
+                12L);
+
+        PagingServiceQuery<Integer, TestEntity> query = new PagingServiceQuery<>(definition, null);
+        Assert.assertEquals(12, query.size());
+        Assert.assertFalse(query.isCapped());
+        Assert.assertEquals(12L, query.getTotalCount());
+
+        // the total count is known, so no second count query is needed
+        Mockito.verify(service, Mockito.times(1)).count(Matchers.any(Filter.class),
+                Matchers.eq(false));
+    }
+
+    @Test
+    public void testSize_Capped() {
+        definition.setMaxCount(5);
+        Mockito.when(service.countCapped(Matchers.any(Filter.class), Matchers.eq(5))).thenReturn(
+                6L);
+        Mockito.when(service.count(Matchers.any(Filter.class), Matchers.eq(false))).thenReturn(
+                12L);
+
+        PagingServiceQuery<Integer, TestEntity> query = new PagingServiceQuery<>(definition, null);
+        Assert.assertEquals(5, query.size());
+        Assert.assertTrue(query.isCapped());
+        Assert.assertTrue(definition.isCapped());
+        Mockito.verify(service, Mockito.never()).count(Matchers.any(Filter.class),
+                Matchers.eq(false));
+
+        // the exact count is only determined on request
+        Assert.assertEquals(12L, query.getTotalCount());
+    }
+
+    @Test
+    public void testSize_NotCapped() {
+        definition.setMaxCount(5);
+        Mockito.when(service.countCapped(Matchers.any(Filter.class), Matchers.eq(5))).thenReturn(
+                5L);
+
+        PagingServiceQuery<Integer, TestEntity> query = new PagingServiceQuery<>(definition, null);
+        Assert.assertEquals(5, query.size());
+        Assert.assertFalse(query.isCapped());
+        Assert.assertFalse(definition.isCapped());
+        Assert.assertEquals(5L, query.getTotalCount());
+    }
+
+    @Test
+    public void testLoadBeans_Window() {
+        Mockito.when(
+                service.fetch(Matchers.any(Filter.class), Matchers.any(Pageable.class),
+                        Matchers.<FetchJoinInformation> anyVararg())).thenAnswer(new PageAnswer());
+
+        PagingServiceQuery<Integer, TestEntity> query = new PagingServiceQuery<>(definition, null);
+
+        // a window that is not aligned with a batch retrieves exactly the requested rows
+        List<TestEntity> result = query.loadBeans(15, 7);
+        Assert.assertEquals(7, result.size());
+        Assert.assertEquals(15, result.get(0).getId().intValue());
+        Assert.assertEquals(21, result.get(6).getId().intValue());
+
+        ArgumentCaptor<Pageable> captor = ArgumentCaptor.forClass(Pageable.class);
+        Mockito.verify(service).fetch(Matchers.any(Filter.class), captor.capture(),
+                Matchers.<FetchJoinInformation> anyVararg());
+        Assert.assertEquals(15, captor.getValue().getOffset());
+        Assert.assertEquals(7, captor.getValue().getPageSize());
+
+        // the first window
+        result = query.loadBeans(0, 10);
+        Assert.assertEquals(0, result.get(0).getId().intValue());
+        Assert.assertEquals(9, result.get(9).getId().intValue());
+    }
+
+    @Test
+    public void testLoadBeans_Prefetch() throws Exception {
+        Mockito.when(
+                service.fetch(Matchers.any(Filter.class), Matchers.any(Pageable.class),
+                        Matchers.<FetchJoinInformation> anyVararg())).thenAnswer(new PageAnswer());
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.initialize();
+        try {
+            definition.setPrefetchBatches(2);
+            definition.setPrefetchExecutor(executor);
+            PagingServiceQuery<Integer, TestEntity> query = new PagingServiceQuery<>(definition,
+                    null);
+
+            query.loadBeans(0, 10);
+
+            // the next two batches are retrieved in the background
+            Mockito.verify(service, Mockito.timeout(5000)).fetch(Matchers.any(Filter.class),
+                    Matchers.argThat(new OffsetMatcher(10)),
+                    Matchers.<FetchJoinInformation> anyVararg());
+            Mockito.verify(service, Mockito.timeout(5000)).fetch(Matchers.any(Filter.class),
+                    Matchers.argThat(new OffsetMatcher(20)),
+                    Matchers.<FetchJoinInformation> anyVararg());
+
+            // the prefetched batch is used instead of querying again
+            List<TestEntity> result = query.loadBeans(10, 10);
+            Assert.assertEquals(10, result.get(0).getId().intValue());
+            Mockito.verify(service, Mockito.timeout(5000)).fetch(Matchers.any(Filter.class),
+                    Matchers.argThat(new OffsetMatcher(30)),
+                    Matchers.<FetchJoinInformation> anyVararg());
+            Mockito.verify(service, Mockito.times(1)).fetch(Matchers.any(Filter.class),
+                    Matchers.argThat(new OffsetMatcher(10)),
+                    Matchers.<FetchJoinInformation> anyVararg());
+            Mockito.verify(service, Mockito.times(1)).fetch(Matchers.any(Filter.class),
+                    Matchers.argThat(new OffsetMatcher(20)),
+                    Matchers.<FetchJoinInformation> anyVararg());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoadBeans_NoPrefetchWithoutExecutor() {
+        Mockito.when(
+                service.fetch(Matchers.any(Filter.class), Matchers.any(Pageable.class),
+                        Matchers.<FetchJoinInformation> anyVararg())).thenAnswer(new PageAnswer());
+
+        definition.setPrefetchBatches(2);
+        PagingServiceQuery<Integer, TestEntity> query = new PagingServiceQuery<>(definition, null);
+        query.loadBeans(0, 10);
+
+        Mockito.verify(service, Mockito.times(1)).fetch(Matchers.any(Filter.class),
+                Matchers.any(Pageable.class), Matchers.<FetchJoinInformation> anyVararg());
+    }
+
+    /**
+     * Returns a page of entities whose IDs are equal to their row index
+     */
+    private static class PageAnswer implements Answer<List<TestEntity>> {
+
+        @Override
+        public List<TestEntity> answer(InvocationOnMock invocation) {
+            Pageable pageable = (Pageable) invocation.getArguments()[1];
+            List<TestEntity> page = new ArrayList<>();
+            for (int i = 0; i < pageable.getPageSize(); i++) {
+                TestEntity entity = new TestEntity();
+                entity.setId(pageable.getOffset() + i);
+                page.add(entity);
+            }
+            return page;
+        }
+    }
+
+    /**
+     * Matches a pageable that starts at a certain offset
+     */
+    private static class OffsetMatcher extends ArgumentMatcher<Pageable> {
+
+        private final int offset;
+
+        OffsetMatcher(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean matches(Object argument) {
+            return argument instanceof Pageable && ((Pageable) argument).getOffset() == offset;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.ocs.dynamo.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.reflect.MethodUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.ocs.dynamo.domain.TestEntity;
+import com.ocs.dynamo.domain.TestEntity2;
+
+/**
+ * Compares the cached property accessors that are used by ClassUtils to the plain reflection
+ * based lookup that was used before. Run the main method (with the test classpath) to execute it
+ * 
+ * @author bas.rutten
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClassUtilsBenchmark {
+
+    private TestEntity entity;
+
+    private TestEntity2 entity2;
+
+    @Setup
+    public void setup() {
+        entity = new TestEntity();
+        entity.setAge(12L);
+        entity.setName("Bob");
+        entity2 = new TestEntity2();
+        entity2.setTestEntity(entity);
+    }
+
+    @Benchmark
+    public Object getFieldValue() {
+        return ClassUtils.getFieldValue(entity, "name");
+    }
+
+    @Benchmark
+    public Object getFieldValueReflection() throws NoSuchMethodException, IllegalAccessException,
+            InvocationTargetException {
+        return reflectiveGet(entity, "name");
+    }
+
+    @Benchmark
+    public Object getNestedFieldValue() {
+        return ClassUtils.getFieldValue(entity2, "testEntity.age");
+    }
+
+    @Benchmark
+    public Object getNestedFieldValueReflection() throws NoSuchMethodException,
+            IllegalAccessException, InvocationTargetException {
+        return reflectiveGet(entity2, "testEntity.age");
+    }
+
+    @Benchmark
+    public TestEntity setFieldValue() {
+        ClassUtils.setFieldValue(entity, "age", 13L);
+        return entity;
+    }
+
+    @Benchmark
+    public TestEntity setFieldValueReflection() throws NoSuchMethodException,
+            IllegalAccessException, InvocationTargetException {
+        MethodUtils.invokeMethod(entity, "setAge", new Object[] { 13L });
+        return entity;
+    }
+
+    /**
+     * The reflection based lookup as it was done by ClassUtils before property accessors were
+     * cached
+     */
+    private static Object reflectiveGet(Object obj, String fieldName)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        int p = fieldName.indexOf(".");
+        if (p >= 0) {
+            Object first = MethodUtils.invokeMethod(obj,
+                    "get" + StringUtils.capitalize(fieldName.substring(0, p)), new Object[] {});
+            return reflectiveGet(first, fieldName.substring(p + 1));
+        } else if (ClassUtils.hasMethod(obj, "get" + StringUtils.capitalize(fieldName))) {
+            return MethodUtils.invokeMethod(obj, "get" + StringUtils.capitalize(fieldName),
+                    new Object[] {});
+        }
+        return MethodUtils.invokeMethod(obj, "is" + StringUtils.capitalize(fieldName),
+                new Object[] {});
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ClassUtilsBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -13,6 +13,7 @@
  */
 package com.ocs.dynamo.utils;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.List;
@@ -208,6 +209,28 @@ public class ClassUtilsTest {
         Assert.assertEquals("Bert", attribute.displayName());
     }
 
+    @Test
+    public void testGetAnnotation_Cached() {
+        Size size = ClassUtils.getAnnotation(TestObject.class, "fieldTwo", Size.class);
+        Assert.assertNotNull(size);
+        Assert.assertSame(size, ClassUtils.getAnnotation(TestObject.class, "fieldTwo", Size.class));
+
+        // negative results
+        Assert.assertNull(ClassUtils.getAnnotation(TestObject.class, "fieldTwo", Attribute.class));
+        Assert.assertNull(ClassUtils.getAnnotation(TestObject.class, "bogus", Size.class));
+        Assert.assertNull(ClassUtils.getAnnotation(TestObject.class, "bogus", Size.class));
+    }
+
+    @Test
+    public void testGetAnnotations() {
+        Map<Class<? extends Annotation>, Annotation> annotations = ClassUtils.getAnnotations(
+                TestObject.class, "fieldThree");
+        Assert.assertEquals(1, annotations.size());
+        Assert.assertEquals("Bert", ((Attribute) annotations.get(Attribute.class)).displayName());
+
+        Assert.assertTrue(ClassUtils.getAnnotations(TestObject.class, "bogus").isEmpty());
+    }
+
     @Test
     public void testGetBytes() {
         TestEntity entity = new TestEntity();
@@ -287,6 +310,19 @@ public class ClassUtilsTest {
         Assert.assertEquals(12L, ClassUtils.getFieldValue(entity2, "testEntity.age"));
     }
 
+    @Test
+    public void testGetFieldValueRecursive_Null() {
+        TestEntity2 entity2 = new TestEntity2();
+        Assert.assertNull(ClassUtils.getFieldValue(entity2, "testEntity.age"));
+    }
+
+    @Test
+    public void testGetFieldValue_Boolean() {
+        TestEntity entity = new TestEntity();
+        entity.setSomeBoolean(Boolean.TRUE);
+        Assert.assertEquals(Boolean.TRUE, ClassUtils.getFieldValue(entity, "someBoolean"));
+    }
+
     @Test
     public void testGetGetterMethod() {
 
@@ -360,6 +396,21 @@ public class ClassUtilsTest {
         ClassUtils.setFieldValue(entity, "age2", 12L);
     }
 
+    @Test
+    public void testSetFieldValue_Null() {
+        TestEntity entity = new TestEntity();
+        entity.setAge(12L);
+        ClassUtils.setFieldValue(entity, "age", null);
+
+        Assert.assertNull(entity.getAge());
+    }
+
+    @Test(expected = OCSRuntimeException.class)
+    public void testSetFieldValue_WrongType() {
+        TestEntity entity = new TestEntity();
+        ClassUtils.setFieldValue(entity, "age", "12");
+    }
+
     @Test
     public void testSetFieldValueRecursive() {
         TestEntity entity = new TestEntity();
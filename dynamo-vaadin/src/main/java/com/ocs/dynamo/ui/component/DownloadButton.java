@@ -48,11 +48,7 @@ public abstract class DownloadButton extends Button {
 
             @Override
             public InputStream getStream() {
-                byte[] content = doCreateContent();
-                if (content != null) {
-                    return new ByteArrayInputStream(content);
-                }
-                return null;
+                return doCreateStream();
             }
 
         }, doCreateFileName());
@@ -69,6 +65,20 @@ public abstract class DownloadButton extends Button {
      */
     protected abstract byte[] doCreateContent();
 
+    /**
+     * Creates the stream from which the file is downloaded. By default this wraps the result of
+     * doCreateContent - overwrite to stream large files without loading them into memory
+     * 
+     * @return
+     */
+    protected InputStream doCreateStream() {
+        byte[] content = doCreateContent();
+        if (content != null) {
+            return new ByteArrayInputStream(content);
+        }
+        return null;
+    }
+
     /**
      * Creates the file name
      * 